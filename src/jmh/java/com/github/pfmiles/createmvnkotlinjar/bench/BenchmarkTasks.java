@@ -0,0 +1,18 @@
+package com.github.pfmiles.createmvnkotlinjar.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 基准测试中被等待的任务，工作量很小，使测得的主要是等待/通知机制本身的开销
+ *
+ * @author pf-miles
+ */
+final class BenchmarkTasks {
+    static final Callable<Integer> WORK = () -> ThreadLocalRandom.current().nextInt();
+    static final Supplier<Integer> WORK_SUPPLIER = () -> ThreadLocalRandom.current().nextInt();
+
+    private BenchmarkTasks() {
+    }
+}
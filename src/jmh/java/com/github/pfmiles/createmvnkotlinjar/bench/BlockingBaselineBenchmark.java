@@ -0,0 +1,82 @@
+package com.github.pfmiles.createmvnkotlinjar.bench;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FuturesMultiplexerBenchmark的对照组: 同样每次操作等待itemCount个由worker线程池完成的future，
+ * 分别采用"一个线程blocking get()一个future"和纯CompletableFuture组合的方式
+ *
+ * @author pf-miles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingBaselineBenchmark {
+    @Param({"1000", "10000"})
+    public int itemCount;
+
+    private ExecutorService workers;
+    private ExecutorService waiters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        waiters = Executors.newCachedThreadPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Runner.shutdownThreadPool(workers, 1);
+        Runner.shutdownThreadPool(waiters, 1);
+    }
+
+    @Benchmark
+    public Object threadPerFutureGet() {
+        CompletableFuture<?>[] rets = new CompletableFuture[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            FutureTask<Integer> task = new FutureTask<>(BenchmarkTasks.WORK);
+            workers.execute(task);
+            CompletableFuture<Integer> ret = new CompletableFuture<>();
+            waiters.execute(() -> {
+                try {
+                    ret.complete(task.get());
+                } catch (Exception e) {
+                    ret.completeExceptionally(e);
+                }
+            });
+            rets[i] = ret;
+        }
+        return CompletableFuture.allOf(rets).join();
+    }
+
+    @Benchmark
+    public Object completableFutureComposition() {
+        CompletableFuture<?>[] rets = new CompletableFuture[itemCount];
+        for (int i = 0; i < itemCount; i++)
+            rets[i] = CompletableFuture.supplyAsync(BenchmarkTasks.WORK_SUPPLIER, workers)
+                    .thenApply(v -> v);
+        return CompletableFuture.allOf(rets).join();
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.pfmiles.createmvnkotlinjar.bench;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexer;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个future的完成延迟基准: 从future完成到等待方拿到结果的耗时分布，SampleTime模式下JMH会输出p50/p90/p99等分位数
+ *
+ * @author pf-miles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionLatencyBenchmark {
+    @Param({"1", "10", "100"})
+    public long eventLoopInterval;
+
+    private FuturesMultiplexer multiplexer;
+    private ExecutorService waiters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(eventLoopInterval);
+        config.setShardCount(1);
+        multiplexer = new FuturesMultiplexer(config);
+        waiters = Executors.newCachedThreadPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        multiplexer.destroy();
+        Runner.shutdownThreadPool(waiters, 1);
+    }
+
+    @Benchmark
+    public Integer multiplexerPolled() throws ExecutionException, InterruptedException {
+        FutureTask<Integer> task = new FutureTask<>(BenchmarkTasks.WORK);
+        CompletableFuture<Integer> ret = multiplexer.submitFuture(task,
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(60));
+        task.run();
+        return ret.get();
+    }
+
+    @Benchmark
+    public Integer multiplexerPushed() throws ExecutionException, InterruptedException {
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        CompletableFuture<Integer> ret = multiplexer.submitFuture(source,
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(60));
+        source.complete(BenchmarkTasks.WORK_SUPPLIER.get());
+        return ret.get();
+    }
+
+    @Benchmark
+    public Integer threadPerFutureGet() throws ExecutionException, InterruptedException {
+        FutureTask<Integer> task = new FutureTask<>(BenchmarkTasks.WORK);
+        CompletableFuture<Integer> ret = new CompletableFuture<>();
+        waiters.execute(() -> {
+            try {
+                ret.complete(task.get());
+            } catch (Exception e) {
+                ret.completeExceptionally(e);
+            }
+        });
+        task.run();
+        return ret.get();
+    }
+
+    @Benchmark
+    public Integer completableFuture() throws ExecutionException, InterruptedException {
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        CompletableFuture<Integer> ret = source.thenApplyAsync(v -> v, waiters);
+        source.complete(BenchmarkTasks.WORK_SUPPLIER.get());
+        return ret.get();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.pfmiles.createmvnkotlinjar.bench;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexer;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FuturesMultiplexer吞吐量基准: 每次操作提交itemCount个由worker线程池完成的future，并等待其全部经由multiplexer完成；
+ * 分别以需要轮询的FutureTask和能够主动通知完成的CompletableFuture测试，与BlockingBaselineBenchmark中的对照组比较
+ * 加上"-prof gc"可得到每次操作的内存分配量
+ *
+ * @author pf-miles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuturesMultiplexerBenchmark {
+    @Param({"1", "10", "100"})
+    public long eventLoopInterval;
+
+    @Param({"1000", "10000"})
+    public int itemCount;
+
+    private FuturesMultiplexer multiplexer;
+    private ExecutorService workers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(eventLoopInterval);
+        multiplexer = new FuturesMultiplexer(config);
+        workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        multiplexer.destroy();
+        Runner.shutdownThreadPool(workers, 1);
+    }
+
+    @Benchmark
+    public Object polledFutures() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        CompletableFuture<?>[] rets = new CompletableFuture[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            FutureTask<Integer> task = new FutureTask<>(BenchmarkTasks.WORK);
+            workers.execute(task);
+            rets[i] = multiplexer.submitFuture(task, deadline);
+        }
+        return CompletableFuture.allOf(rets).join();
+    }
+
+    @Benchmark
+    public Object pushedFutures() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        CompletableFuture<?>[] rets = new CompletableFuture[itemCount];
+        for (int i = 0; i < itemCount; i++)
+            rets[i] = multiplexer.submitFuture(
+                    CompletableFuture.supplyAsync(BenchmarkTasks.WORK_SUPPLIER, workers), deadline);
+        return CompletableFuture.allOf(rets).join();
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.pfmiles.createmvnkotlinjar.bench;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexer;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexerConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轮询过程的内存分配基准: multiplexer中注册itemCount个永不完成、需要轮询的future，每次操作等待一个轮询间隔，
+ * 通过ThreadMXBean统计polling线程自身的分配字节数，以bytesPerPoll、bytesPerItemPoll两个辅助计数器输出；
+ * bytesPerPoll不随itemCount增长(bytesPerItemPoll趋近于0)即说明轮询过程中没有为每个item分配对象
+ *
+ * @author pf-miles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PollingAllocationBenchmark {
+    private static final String POLLING_THREAD_NAME = "FuturesMultiplexer-polling-thread";
+
+    @Param({"10"})
+    public long eventLoopInterval;
+
+    @Param({"1000", "100000"})
+    public int itemCount;
+
+    private FuturesMultiplexer multiplexer;
+    private long pollingThreadId;
+    // 本轮迭代开始时polling线程的累计分配字节数及累计轮询次数
+    private long startBytes;
+    private long startPolls;
+
+    /**
+     * polling线程在本轮迭代中的分配量
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Allocation {
+        // 平均每次轮询的分配字节数
+        public double bytesPerPoll;
+        // 平均每次轮询中每个item摊到的分配字节数
+        public double bytesPerItemPoll;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(eventLoopInterval);
+        config.setShardCount(1);
+        multiplexer = new FuturesMultiplexer(config);
+        long deadline = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < itemCount; i++)
+            multiplexer.submitFuture(new FutureTask<>(BenchmarkTasks.WORK), deadline);
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (POLLING_THREAD_NAME.equals(t.getName()))
+                pollingThreadId = t.getId();
+        }
+        if (pollingThreadId == 0)
+            throw new IllegalStateException("Polling thread not found.");
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        startBytes = allocatedBytes();
+        startPolls = polls();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    @Benchmark
+    public void pollingTick(Allocation allocation) throws InterruptedException {
+        Thread.sleep(eventLoopInterval);
+        long polls = Math.max(1, polls() - startPolls);
+        allocation.bytesPerPoll = (double) (allocatedBytes() - startBytes) / polls;
+        allocation.bytesPerItemPoll = allocation.bytesPerPoll / itemCount;
+    }
+
+    private long polls() {
+        return multiplexer.getMetrics().snapshot().getPollDuration().getCount();
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(pollingThreadId);
+    }
+}
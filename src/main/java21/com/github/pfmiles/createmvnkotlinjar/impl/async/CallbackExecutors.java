@@ -0,0 +1,26 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 回调执行器创建的JDK 21+实现，打包在multi-release jar的META-INF/versions/21下: 每个回调任务在一个新的虚拟线程中执行，
+ * 回调中的阻塞操作(JDBC、文件IO等)只会挂起虚拟线程而不会占用平台线程
+ *
+ * @author pf-miles
+ */
+final class CallbackExecutors {
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * 创建以虚拟线程执行回调的执行器
+     *
+     * @param namePrefix 虚拟线程名前缀
+     * @return 虚拟线程执行器
+     */
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
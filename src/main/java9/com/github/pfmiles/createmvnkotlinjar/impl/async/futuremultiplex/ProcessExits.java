@@ -0,0 +1,31 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+/**
+ * 子进程退出通知的JDK 9+实现，打包在multi-release jar的META-INF/versions/9下: 以Process.onExit()注册回调，进程退出时立即通知multiplexer，无需轮询isAlive()
+ * JDK自带的Process实现由统一的process reaper线程感知退出，不会为每个子进程额外占用线程；
+ * 不支持toHandle()的自定义Process实现，其onExit()默认以阻塞等待的方式实现，因此对其仍回退为轮询
+ *
+ * @author pf-miles
+ */
+final class ProcessExits {
+
+    private ProcessExits() {
+    }
+
+    /**
+     * 尝试为子进程注册退出回调
+     *
+     * @param process 子进程
+     * @param onExit  退出回调，在process reaper线程中被调用
+     * @return 是否注册成功
+     */
+    static boolean listen(Process process, Runnable onExit) {
+        try {
+            process.toHandle();
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+        process.onExit().whenComplete((p, e) -> onExit.run());
+        return true;
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.pfmiles.createmvnkotlinjar
 
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessOutputCapture
 import org.apache.commons.io.IOUtils
 import java.io.File
 
@@ -204,24 +205,17 @@ object ShadedJarProjImpl {
                     -DinteractiveMode=false
                     $outDir
             """.trimIndent().replace('\n', ' ').trim()
-        Runtime.getRuntime().exec(cmd).let {
-            val printStdOut = Thread({
-                it.inputStream.bufferedReader(Charsets.UTF_8).use { it.forEachLine(::println) }
-            }, "mvn-cmd-stdout-printer")
-            printStdOut.start()
-            val printStdErr = Thread({
-                it.errorStream.bufferedReader(Charsets.UTF_8).use { it.forEachLine(::println) }
-            }, "mvn-cmd-stderr-printer")
-            printStdErr.start()
-            try {
-                check(it.waitFor() == 0) {
-                    "Create maven kotlin jar project error, please refer to the output message for more info."
-                }
-            } finally {
-                IOUtils.closeQuietly(it.getInputStream())
-                IOUtils.closeQuietly(it.getOutputStream())
-                IOUtils.closeQuietly(it.getErrorStream())
+        val process = Runtime.getRuntime().exec(cmd)
+        // stdout/stderr are pumped to the console by the shared process output pump, no reader threads per stream
+        try {
+            val result = ProcessOutputCapture(8192, System.out, System.out, Charsets.UTF_8).waitFor(process)
+            check(result.exitCode == 0) {
+                "Create maven kotlin jar project error, please refer to the output message for more info."
             }
+        } finally {
+            IOUtils.closeQuietly(process.getInputStream())
+            IOUtils.closeQuietly(process.getOutputStream())
+            IOUtils.closeQuietly(process.getErrorStream())
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.github.pfmiles.createmvnkotlinjar.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重复尝试(条件检查、重试等)之间的退避策略: 固定间隔或指数增长，并可叠加随机抖动以错开大量同时开始的尝试
+ * 本类不可变，线程安全
+ *
+ * @author pf-miles
+ */
+public final class Backoff {
+    // 首次退避时长ms
+    private final long initialDelay;
+    // 退避时长上限ms
+    private final long maxDelay;
+    // 每次尝试后退避时长的增长倍数，1表示固定间隔
+    private final double multiplier;
+    // 抖动比例[0, 1]，实际退避时长在[d * (1 - jitter), d]间均匀分布，1即为full jitter
+    private final double jitter;
+
+    private Backoff(long initialDelay, long maxDelay, double multiplier, double jitter) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * 固定间隔的退避
+     *
+     * @param interval 每次退避的时长ms
+     * @return 退避策略
+     */
+    public static Backoff fixed(long interval) {
+        Preconditions.checkArgument(interval > 0, "Backoff interval must be greater than 0.");
+        return new Backoff(interval, interval, 1, 0);
+    }
+
+    /**
+     * 指数增长的退避: 第n次(从0开始)退避时长为initialDelay * multiplier^n，不超过maxDelay
+     *
+     * @param initialDelay 首次退避时长ms
+     * @param maxDelay     退避时长上限ms
+     * @param multiplier   增长倍数，不小于1
+     * @return 退避策略
+     */
+    public static Backoff exponential(long initialDelay, long maxDelay, double multiplier) {
+        Preconditions.checkArgument(initialDelay > 0 && maxDelay >= initialDelay,
+                "Illegal backoff delays, must be 0 < initialDelay <= maxDelay.");
+        Preconditions.checkArgument(multiplier >= 1, "Backoff multiplier must not be less than 1.");
+        return new Backoff(initialDelay, maxDelay, multiplier, 0);
+    }
+
+    /**
+     * 在当前策略上叠加随机抖动
+     *
+     * @param jitter 抖动比例[0, 1]，实际退避时长在[d * (1 - jitter), d]间均匀分布
+     * @return 新的退避策略
+     */
+    public Backoff withJitter(double jitter) {
+        Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "Backoff jitter must be in [0, 1].");
+        return new Backoff(initialDelay, maxDelay, multiplier, jitter);
+    }
+
+    /**
+     * 计算第attempt次(从0开始)尝试失败后的退避时长
+     *
+     * @param attempt 已失败的尝试序号，从0开始
+     * @return 退避时长ms
+     */
+    public long delayOf(int attempt) {
+        double d = Math.min(maxDelay, initialDelay * Math.pow(multiplier, Math.max(0, attempt)));
+        if (jitter > 0)
+            d -= d * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.max(0, (long) d);
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+}
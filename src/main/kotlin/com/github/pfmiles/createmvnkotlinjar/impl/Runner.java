@@ -1,13 +1,17 @@
 package com.github.pfmiles.createmvnkotlinjar.impl;
 
+import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -19,9 +23,22 @@ public class Runner {
      */
     private static final Logger tryLogger = LoggerFactory.getLogger("try-run");
 
-    private static final AtomicLong interSeq = new AtomicLong();
-    private static final ExecutorService interrupters = Executors.newCachedThreadPool(
-            r -> new Thread(r, "timed-waiting-interrupter-" + interSeq.getAndIncrement()));
+    // 所有定时等待共享的定时器，每个定时等待只是其中的一个时间轮条目，而不再占用一个sleep中的线程
+    private static final WheelTimer timer = new WheelTimer("runner-shared-timer");
+
+    private static final AtomicLong condSeq = new AtomicLong();
+    // 异步条件等待默认使用的条件检查线程池，由所有异步条件等待共享，空闲时线程自动回收
+    private static final ThreadPoolExecutor condCheckers = new ThreadPoolExecutor(
+            Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "runner-cond-checker-" + condSeq.getAndIncrement());
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        condCheckers.allowCoreThreadTimeOut(true);
+    }
 
     /**
      * Try execute.
@@ -47,27 +64,23 @@ public class Runner {
      * @throws TimeoutException 超时抛出
      */
     public static <R> R timedWaiting(Callable<R> logic, final long toWait) throws TimeoutException {
-        // 创建一个interrupter,在规定的时间后中断本线程；本线程若先于interrupter执行结束则先中断interrupter线程
+        // 在共享定时器中注册一个interrupter,在规定的时间后中断本线程；本线程若先于interrupter执行结束则取消之
         Thread main = Thread.currentThread();
         String mainThreadName = main.getName();
         if (tryLogger.isDebugEnabled()) {
             tryLogger.debug("timeWaiting submit, time out in {}", toWait);
         }
-        Future<?> interFuture = interrupters.submit(() -> {
-            try {
-                Thread.sleep(toWait);
-                tryLogger.error("timeout {}! interrupt main thread {}", toWait, mainThreadName);
-                main.interrupt();
-            } catch (InterruptedException e) {
-                // interrupter interrupted, normal end, do nothing
-            }
-        });
+        WheelTimer.Timeout interrupter = timer.schedule(() -> {
+            // 先中断再记日志，不让日志输出拖慢中断及共享定时线程上的其它任务
+            main.interrupt();
+            tryLogger.error("timeout {}! interrupt main thread {}", toWait, mainThreadName);
+        }, toWait, TimeUnit.MILLISECONDS);
         try {
             R ret = logic.call();
-            interFuture.cancel(true);
+            interrupter.cancel();
             return ret;
         } catch (Exception e) {
-            interFuture.cancel(true);
+            interrupter.cancel();
             // may timeout
             if (ExceptionUtils.isCausedByInterrupt(e)) {
                 throw new TimeoutException(
@@ -109,6 +122,149 @@ public class Runner {
         untilCondMet(condition, 0, waitMillis, checkInterval);
     }
 
+    /**
+     * 异步等待条件满足(condition返回true)，不占用调用线程，也不为每个等待占用一个线程:
+     * 每次检查由共享定时器按退避策略调度，在共享的条件检查线程池中执行
+     * condition返回false或null将按backoff退避后继续检查，直到超时；condition抛错则以该错误结束
+     *
+     * @param condition  条件逻辑
+     * @param initDelay  初始等待，ms
+     * @param waitMillis 最长等待时间，ms，超时后以TimeoutException结束
+     * @param backoff    两次检查之间的退避策略
+     * @return 条件满足时完成的completableFuture，取消它即停止后续的检查
+     */
+    public static CompletableFuture<Void> untilCondMetAsync(Supplier<Boolean> condition, long initDelay,
+                                                            long waitMillis, Backoff backoff) {
+        return untilCondMetAsync(condition, initDelay, waitMillis, backoff, condCheckers);
+    }
+
+    /**
+     * 异步等待条件满足，并指定执行条件检查的executor
+     *
+     * @param condition         条件逻辑
+     * @param initDelay         初始等待，ms
+     * @param waitMillis        最长等待时间，ms，超时后以TimeoutException结束
+     * @param backoff           两次检查之间的退避策略
+     * @param conditionExecutor 执行条件检查的executor，对于极轻量的条件可传入Runnable::run直接在共享定时线程中检查
+     * @return 条件满足时完成的completableFuture，取消它即停止后续的检查
+     * @see #untilCondMetAsync(Supplier, long, long, Backoff)
+     */
+    public static CompletableFuture<Void> untilCondMetAsync(Supplier<Boolean> condition, long initDelay,
+                                                            long waitMillis, Backoff backoff,
+                                                            Executor conditionExecutor) {
+        Preconditions.checkArgument(condition != null && backoff != null && conditionExecutor != null);
+        Preconditions.checkArgument(initDelay >= 0 && waitMillis > 0,
+                "Illegal delays, must be initDelay >= 0 and waitMillis > 0.");
+        CondWaiter waiter = new CondWaiter(condition, waitMillis, backoff, conditionExecutor);
+        waiter.result.whenComplete((r, e) -> {
+            // 被调用方取消(或已结束)时撤销尚未到期的下一次检查
+            WheelTimer.Timeout next = waiter.next;
+            if (next != null)
+                next.cancel();
+        });
+        waiter.schedule(initDelay);
+        return waiter.result;
+    }
+
+    /**
+     * 异步等待条件满足，不做初始等待，立即进行第一次检查；条件检查在共享的条件检查线程池中执行
+     *
+     * @param condition  条件逻辑，返回false或null将按backoff退避后继续检查
+     * @param waitMillis 最长等待时间，ms，超时后以TimeoutException结束
+     * @param backoff    两次检查之间的退避策略，如Backoff.fixed(间隔)或Backoff.exponential(初始间隔, 最大间隔, 倍数)
+     * @return 条件满足时以null正常完成的completableFuture，超时以TimeoutException、condition抛错则以该错误异常结束；取消它即停止后续的检查
+     * @see #untilCondMetAsync(Supplier, long, long, Backoff)
+     */
+    public static CompletableFuture<Void> untilCondMetAsync(Supplier<Boolean> condition, long waitMillis,
+                                                            Backoff backoff) {
+        return untilCondMetAsync(condition, 0, waitMillis, backoff);
+    }
+
+    /**
+     * 在指定时长之后完成的completableFuture，由共享定时器计时，不占用线程；其依赖的后续逻辑默认在共享定时线程中执行，较重的逻辑应以*Async方式指定executor
+     *
+     * @param millis 时长，ms
+     * @return 到时完成的completableFuture，取消它即撤销定时
+     */
+    public static CompletableFuture<Void> delay(long millis) {
+        Preconditions.checkArgument(millis >= 0, "Delay cannot be negative.");
+        CompletableFuture<Void> ret = new CompletableFuture<>();
+        WheelTimer.Timeout timeout = timer.schedule(() -> ret.complete(null), millis, TimeUnit.MILLISECONDS);
+        ret.whenComplete((r, e) -> timeout.cancel());
+        return ret;
+    }
+
+    /**
+     * 共享的异步执行线程池，即异步条件等待默认使用的条件检查线程池: 队列无界、空闲时线程自动回收
+     * 共享定时器所完成的future(如delay)上的后续逻辑可以*Async方式在此执行，以免占用唯一的共享定时线程、拖慢其它定时条目
+     *
+     * @return 共享的异步执行线程池
+     */
+    public static Executor sharedExecutor() {
+        return condCheckers;
+    }
+
+    // 一个异步条件等待的状态: 检查 -> 未满足则按退避策略在共享定时器中登记下一次检查，直到满足、抛错、超时或被取消
+    private static final class CondWaiter {
+        private final Supplier<Boolean> condition;
+        private final long waitMillis;
+        private final long deadlineNanos;
+        private final Backoff backoff;
+        private final Executor executor;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        // 已失败的检查次数，只在检查逻辑中访问，各次检查之间有先后顺序
+        private int attempts;
+        // 已登记的下一次检查
+        private volatile WheelTimer.Timeout next;
+
+        private CondWaiter(Supplier<Boolean> condition, long waitMillis, Backoff backoff, Executor executor) {
+            this.condition = condition;
+            this.waitMillis = waitMillis;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            this.backoff = backoff;
+            this.executor = executor;
+        }
+
+        private void schedule(long delayMillis) {
+            if (result.isDone())
+                return;
+            next = timer.schedule(() -> {
+                try {
+                    executor.execute(this::check);
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            // 登记与取消并发时，确保不遗留已无用的定时条目
+            if (result.isDone())
+                next.cancel();
+        }
+
+        private void check() {
+            if (result.isDone())
+                return;
+            Boolean ok;
+            try {
+                ok = condition.get();
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            if (ok != null && ok) {
+                result.complete(null);
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remaining <= 0) {
+                result.completeExceptionally(new TimeoutException(
+                        String.format("Condition not met in %sms.", waitMillis)));
+                return;
+            }
+            // 最后一次检查恰在deadline时进行
+            schedule(Math.min(backoff.delayOf(attempts++), remaining));
+        }
+    }
+
     /**
      * 关闭线程池
      *
@@ -0,0 +1,87 @@
+package com.github.pfmiles.createmvnkotlinjar.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶: 令牌以固定速率补充，桶中最多积攒capacity个令牌，以此限制平均速率并允许有限的突发
+ * 允许先消耗后结算: consume可使令牌数为负(欠账)，欠账还清之前available不为正，调用方据此暂停，适合"先传输、再按实际传输量计费"的场景
+ * 本类线程安全
+ *
+ * @author pf-miles
+ */
+public final class TokenBucket {
+    // 每秒补充的令牌数
+    private final long ratePerSecond;
+    // 桶容量，即最大突发量
+    private final long capacity;
+    private long tokens;
+    // 上次补充令牌的时刻(System.nanoTime)
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param capacity      桶容量，初始时桶是满的
+     */
+    public TokenBucket(long ratePerSecond, long capacity) {
+        Preconditions.checkArgument(ratePerSecond > 0 && capacity > 0,
+                "ratePerSecond and capacity must be greater than 0.");
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return 当前可用的令牌数，欠账时为负
+     */
+    public synchronized long available() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * 消耗n个令牌，令牌不足时记为欠账
+     *
+     * @param n 令牌数
+     */
+    public synchronized void consume(long n) {
+        Preconditions.checkArgument(n >= 0, "Tokens to consume cannot be negative.");
+        refill();
+        tokens -= n;
+    }
+
+    /**
+     * @param n 需要的令牌数，不大于capacity
+     * @return 距离可用令牌达到n还需等待的时长ns，已达到时为0
+     */
+    public synchronized long nanosUntil(long n) {
+        Preconditions.checkArgument(n <= capacity, "Cannot wait for more tokens than the capacity.");
+        refill();
+        long lack = n - tokens;
+        if (lack <= 0)
+            return 0;
+        return (long) Math.ceil((double) lack * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefill;
+        long add = (long) ((double) elapsed * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        if (add <= 0)
+            return;
+        tokens = Math.min(capacity, tokens + add);
+        // 只推进与补充量相当的时长，避免低速率时小数部分被反复舍弃
+        lastRefill = tokens == capacity ? now
+                : lastRefill + (long) ((double) add * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.pfmiles.createmvnkotlinjar.impl;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.TimingWheel;
+import com.google.common.base.Preconditions;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于哈希时间轮的共享定时器: 单个daemon线程负责所有定时任务，每个定时任务只是时间轮中的一个条目，而不是一个sleep中的线程；
+ * 注册、取消和到期处理均为O(1)，无到期任务时定时线程park到最近的到期时刻，新注册的任务更早到期时才唤醒它
+ * 定时任务在定时线程中执行，应足够轻量(如中断某线程、完成某future)，较重的逻辑应转交给其它线程池
+ * 本类线程安全
+ *
+ * @author pf-miles
+ */
+public class WheelTimer {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int TICKS_PER_WHEEL = 1024;
+    // 无任务时定时线程最长的park时长
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int PENDING = 0;
+    private static final int FIRED = 1;
+    private static final int CANCELLED = 2;
+
+    /**
+     * 一个已注册的定时任务
+     */
+    public static final class Timeout extends TimingWheel.Entry {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final WheelTimer timer;
+
+        private Timeout(WheelTimer timer, Runnable task, long deadlineNanos) {
+            this.timer = timer;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 取消该定时任务
+         *
+         * @return 是否取消成功，任务已执行或已被取消时返回false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+            // 从时间轮中摘除的工作交给定时线程，避免被取消的任务堆积到到期时刻
+            timer.cancellations.offer(this);
+            return true;
+        }
+
+        /**
+         * @return 是否已执行
+         */
+        public boolean isFired() {
+            return state.get() == FIRED;
+        }
+
+        /**
+         * @return 是否已被取消
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    private final TimingWheel<Timeout> wheel;
+    private final Queue<Timeout> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+    // 定时线程计划醒来的时刻(System.nanoTime)，新任务早于此时刻到期时才需要唤醒
+    private volatile long plannedWakeup;
+    private volatile boolean stopped;
+
+    /**
+     * 创建定时器并启动其daemon定时线程
+     *
+     * @param threadName 定时线程的名字
+     */
+    public WheelTimer(String threadName) {
+        long now = System.nanoTime();
+        this.wheel = new TimingWheel<>(TICK_NANOS, TICKS_PER_WHEEL, now);
+        this.plannedWakeup = now;
+        this.workerThread = new Thread(this::run, threadName);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 注册一个定时任务
+     *
+     * @param task  到期时在定时线程中执行的逻辑，应足够轻量
+     * @param delay 延迟时长
+     * @param unit  延迟时长的单位
+     * @return 定时任务句柄，可用于取消
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Preconditions.checkArgument(task != null, "Task cannot be null.");
+        Preconditions.checkArgument(unit != null, "Time unit cannot be null.");
+        Preconditions.checkState(!stopped, "Timer has been stopped.");
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        registrations.offer(timeout);
+        if (timeout.deadlineNanos - plannedWakeup < 0)
+            LockSupport.unpark(workerThread);
+        return timeout;
+    }
+
+    /**
+     * 停止定时器，尚未到期的任务将不再被执行
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(workerThread);
+    }
+
+    /**
+     * @return 尚未到期也未被取消的定时任务数(近似值)
+     */
+    public int pendingTimeouts() {
+        return wheel.size() + registrations.size();
+    }
+
+    private void run() {
+        while (!stopped) {
+            for (Timeout t = cancellations.poll(); t != null; t = cancellations.poll())
+                wheel.remove(t);
+            for (Timeout t = registrations.poll(); t != null; t = registrations.poll()) {
+                if (t.state.get() == PENDING)
+                    wheel.add(t, t.deadlineNanos);
+            }
+            long now = System.nanoTime();
+            wheel.advance(now, WheelTimer::fire);
+            long next = wheel.nextExpirationTime(now, now + MAX_PARK_NANOS);
+            plannedWakeup = next;
+            // 设置plannedWakeup之后再检查一次，避免与并发的schedule错过唤醒
+            if (registrations.isEmpty() && cancellations.isEmpty() && next - System.nanoTime() > 0)
+                LockSupport.parkNanos(this, next - System.nanoTime());
+        }
+        wheel.clear();
+        registrations.clear();
+        cancellations.clear();
+    }
+
+    private static void fire(Timeout timeout) {
+        if (timeout.state.compareAndSet(PENDING, FIRED))
+            Runner.tryExec(timeout.task);
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+/**
+ * FuturesMultiplexer中正在处理的items数达到上限(maxInFlight)时，对新提交item的处理策略
+ *
+ * @author pf-miles
+ */
+public enum AdmissionPolicy {
+    /**
+     * 阻塞提交线程直到有item完成腾出名额，或等待超过admissionTimeout后抛出RejectedExecutionException
+     */
+    BLOCK,
+    /**
+     * 立即抛出RejectedExecutionException
+     */
+    FAIL_FAST,
+    /**
+     * 不抛错，立即以RejectedExecutionException回调whenError，对于返回CompletableFuture的提交方法即返回一个已失败的future；被拒绝的item将被dispose
+     */
+    FAILED_FUTURE
+}
@@ -0,0 +1,21 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+
+/**
+ * 一批items共享的超时时间轮条目，整批items只占用一个条目，到期时对其中尚未完成的items逐个做超时处理
+ *
+ * @author pf-miles
+ */
+class BatchDeadline extends TimingWheel.Entry {
+    final BlockingItem<?>[] items;
+    // 整批items共同的超时时刻(System.nanoTime)
+    final long deadline;
+    // 整批items均已完成，不再需要超时条目
+    volatile boolean cancelled;
+
+    BatchDeadline(BlockingItem<?>[] items, long deadline) {
+        this.items = items;
+        this.deadline = deadline;
+    }
+}
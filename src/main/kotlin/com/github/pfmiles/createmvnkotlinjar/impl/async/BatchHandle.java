@@ -0,0 +1,141 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 通过FuturesMultiplexer.submitAll批量提交的一批futures的聚合句柄，提供all-of、any-of、first-N等聚合完成方式，以及按完成顺序的逐个结果流
+ *
+ * @param <T> future的返回值类型
+ * @author pf-miles
+ */
+public class BatchHandle<T> {
+    // 各元素对应的completableFuture，与提交顺序一致
+    private final List<CompletableFuture<T>> elements;
+    // 按完成顺序排列的已完成元素，只追加不删除，在其自身的锁保护下访问
+    private final List<CompletableFuture<T>> completed;
+
+    BatchHandle(CompletableFuture<T>[] elements) {
+        this.elements = Collections.unmodifiableList(Arrays.asList(elements));
+        this.completed = new ArrayList<>(elements.length);
+        for (CompletableFuture<T> e : elements) {
+            e.whenComplete((r, ex) -> {
+                synchronized (completed) {
+                    completed.add(e);
+                    completed.notifyAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return 各元素对应的completableFuture，与提交顺序一致
+     */
+    public List<CompletableFuture<T>> getElements() {
+        return elements;
+    }
+
+    /**
+     * @return 批次中的元素个数
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * 全部元素正常完成时，以提交顺序返回所有结果；任一元素抛错或超时则立即以该错误失败
+     *
+     * @return 全部结果
+     */
+    public CompletableFuture<List<T>> allOf() {
+        CompletableFuture<List<T>> ret = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(elements.size());
+        if (elements.isEmpty())
+            ret.complete(Collections.emptyList());
+        for (CompletableFuture<T> e : elements) {
+            e.whenComplete((r, ex) -> {
+                if (ex != null) {
+                    ret.completeExceptionally(ex);
+                } else if (remaining.decrementAndGet() == 0) {
+                    List<T> results = new ArrayList<>(elements.size());
+                    for (CompletableFuture<T> el : elements)
+                        results.add(el.join());
+                    ret.complete(results);
+                }
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * 返回最先正常完成的元素的结果；所有元素都抛错或超时才失败
+     *
+     * @return 最先得到的结果
+     */
+    public CompletableFuture<T> anyOf() {
+        return firstN(1).thenApply(l -> l.get(0));
+    }
+
+    /**
+     * 以完成顺序返回最先正常完成的n个元素的结果；当剩余元素已不足以凑满n个时立即失败
+     *
+     * @param n 需要的结果个数
+     * @return 最先得到的n个结果
+     */
+    public CompletableFuture<List<T>> firstN(int n) {
+        if (n <= 0 || n > elements.size())
+            throw new IllegalArgumentException(String.format(
+                    "n must be in [1, %s], but got: %s.", elements.size(), n));
+        CompletableFuture<List<T>> ret = new CompletableFuture<>();
+        List<T> results = new ArrayList<>(n);
+        AtomicInteger failures = new AtomicInteger();
+        int maxFailures = elements.size() - n;
+        for (CompletableFuture<T> e : elements) {
+            e.whenComplete((r, ex) -> {
+                if (ex != null) {
+                    if (failures.incrementAndGet() > maxFailures)
+                        ret.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                                ? ex.getCause() : ex);
+                    return;
+                }
+                synchronized (results) {
+                    if (results.size() < n) {
+                        results.add(r);
+                        if (results.size() == n)
+                            ret.complete(new ArrayList<>(results));
+                    }
+                }
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * 按完成顺序逐个返回已完成的元素(含抛错、超时的元素)，流的长度即批次大小；从流中取下一个元素时若尚无新完成的元素则阻塞等待；
+     * 每次调用都得到一个从头开始的独立的流，可多次调用
+     *
+     * @return 按完成顺序排列的元素流
+     */
+    public Stream<CompletableFuture<T>> completionStream() {
+        AtomicInteger next = new AtomicInteger();
+        return Stream.generate(() -> {
+            int idx = next.getAndIncrement();
+            synchronized (completed) {
+                try {
+                    while (completed.size() <= idx)
+                        completed.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+                return completed.get(idx);
+            }
+        }).limit(elements.size());
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 回调执行器的创建: Java 8基线版本不支持虚拟线程，总是返回null；
+ * 在JDK 21+上运行时，将由multi-release jar中META-INF/versions/21下的同名类取代，返回每个任务一个虚拟线程的执行器
+ *
+ * @author pf-miles
+ */
+final class CallbackExecutors {
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * 创建以虚拟线程执行回调的执行器
+     *
+     * @param namePrefix 虚拟线程名前缀
+     * @return 虚拟线程执行器，当前运行时不支持虚拟线程时返回null
+     */
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return null;
+    }
+}
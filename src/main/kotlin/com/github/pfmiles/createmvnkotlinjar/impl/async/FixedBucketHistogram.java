@@ -0,0 +1,117 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定bucket的直方图，bucket边界为2的幂: 第i个bucket记录(2^(i-1), 2^i]范围内的值，最后一个bucket记录所有更大的值
+ * 记录操作只是一次数组下标计算加一次原子自增，不分配内存，适合在event loop等热点路径上使用；分位数以所在bucket的上界近似
+ * 计数是累计的，两个快照相减(Snapshot.since)即得到这段时间内记录的值的分布
+ *
+ * @author pf-miles
+ */
+public class FixedBucketHistogram {
+    // 2^0 ~ 2^40, 足够覆盖以us计的任何时长
+    private static final int BUCKETS = 42;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 记录一个值，负值按0记录
+     *
+     * @param value 值
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        int idx = value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+        counts.incrementAndGet(Math.min(idx, BUCKETS - 1));
+        sum.add(value);
+    }
+
+    /**
+     * @return 当前累计的计数快照
+     */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        return new Snapshot(c, total, sum.sum());
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * 计算自earlier以来新记录的值的分布
+         *
+         * @param earlier 同一直方图更早的快照
+         * @return 两个快照之间记录的值的分布
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] c = new long[counts.length];
+            for (int i = 0; i < c.length; i++)
+                c[i] = counts[i] - earlier.counts[i];
+            return new Snapshot(c, count - earlier.count, sum - earlier.sum);
+        }
+
+        /**
+         * @return 记录的值总数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 平均值，无记录时为0
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 近似分位数
+         *
+         * @param quantile 分位，取值[0, 1]
+         * @return 分位数所在bucket的上界，无记录时为0
+         */
+        public long getQuantile(double quantile) {
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0)
+                    return i == counts.length - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return 最大值所在bucket的上界，无记录时为0
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0)
+                    return i == counts.length - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+            return 0;
+        }
+    }
+}
@@ -2,26 +2,36 @@ package com.github.pfmiles.createmvnkotlinjar.impl.async;
 
 import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
 import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.CapturedProcessItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ChannelItem;
 import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.FutureItem;
 import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessOutputCapture;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessResult;
 import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.SelectableChannel;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.CancellationException;
+import java.util.HashSet;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
@@ -30,102 +40,191 @@ import java.util.function.Consumer;
  * 该工具采用内部单线程event loop轮询的方式对所有被管理的futures进行轮询，监控其完成状态，从而取代"一个线程wait一个future"的blocking模式，节省线程资源
  * 内部event loop的间隔时间可根据业务需要进行调整, 对于实时性要求高的业务(即future的执行时间普遍较短，如几十毫秒级)，eventLoopInterval可设置较小的值(最小到1);
  * 对于实时性要求不高的业务(如future的执行时间普遍较长: 秒级甚至更多)，则可设置稍大的eventLoopInterval值以减少空轮询频率, 不过建议eventLoopInterval最大不要超过1000
+ * 分片、自适应轮询间隔、回调的执行方式及准入控制等可通过FuturesMultiplexerConfig配置
  *
  * @author pf-miles
  * <p>
  * 2022-09-27 14:17
  */
 public class FuturesMultiplexer {
-    private static final Logger logger = LoggerFactory
-            .getLogger(FuturesMultiplexer.class);
+    private static final Logger logger = LoggerFactory.getLogger(FuturesMultiplexer.class);
 
-    private final long eventLoopInterval;
+    private static final String POLLING_THREAD_NAME = "FuturesMultiplexer-polling-thread";
 
-    // 当前正在运行的future, Pair<taskFuture, expireDate>
-    private final Set<BlockingItem<?>> futures = Collections
-            .newSetFromMap(new ConcurrentHashMap<>());
+    /**
+     * 在event loop线程中直接执行回调的executor，省去回调线程池的入队及线程唤醒，只适用于极轻量、不阻塞的回调(如完成一个completableFuture)；
+     * 各submit方法所返回的completableFuture默认即以此方式完成
+     */
+    public static final Executor DIRECT_EXECUTOR = Runnable::run;
 
-    private final ScheduledExecutorService pollingThread = Executors
-            .newSingleThreadScheduledExecutor(r -> new Thread(r, "FuturesMultiplexer-polling-thread"));
+    // 各分片, items按hash分配到各分片
+    private final MultiplexerShard[] shards;
 
     private static final AtomicLong seq = new AtomicLong();
-    private final ExecutorService callbackExePool = Executors.newCachedThreadPool(
-            r -> new Thread(r, "FuturesMultiplexer-callback-exe-thread-" + seq.getAndIncrement()));
+    // 批量提交时轮流选择分片
+    private final AtomicInteger batchSeq = new AtomicInteger();
+    private static final String CALLBACK_THREAD_NAME = "FuturesMultiplexer-callback-exe-thread-";
+    // 执行回调的线程池: 按配置创建的有界平台线程池或虚拟线程执行器，以FuturesMultiplexer(long)创建时为不限线程数的cached线程池
+    private final ExecutorService callbackExePool;
+
+    // 处理中items数的名额，null表示不限制
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AdmissionPolicy admissionPolicy;
+    private final long admissionTimeout;
+
+    private final MultiplexerMetrics metrics;
+    // 运行指标在JMX中注册的名字，null表示未注册
+    private final ObjectName jmxName;
 
     /**
-     * 创建一个futures multiplexer，并指定其轮询时间间隔
+     * 创建一个单分片的futures multiplexer，并指定其轮询时间间隔；回调在不限线程数的cached线程池中执行，不会被拒绝，其余配置取FuturesMultiplexerConfig的默认值
+     * 需要有界的回调线程池、准入控制等时应使用FuturesMultiplexer(FuturesMultiplexerConfig)
      *
      * @param eventLoopInterval 内部event loop的轮询时间间隔ms, 根据业务需要进行设置; 对于实时性要求高的业务(即future的执行时间普遍较短，如几十毫秒级)，eventLoopInterval可设置较小的值(最小到1);
      *                          对于实时性要求不高的业务(如future的执行时间普遍较长: 秒级甚至更多)，则可设置稍大的eventLoopInterval值以减少空轮询频率, 不过建议eventLoopInterval最大不要超过1000
      */
     public FuturesMultiplexer(long eventLoopInterval) {
-        Preconditions.checkArgument(eventLoopInterval > 0);
-        this.eventLoopInterval = eventLoopInterval;
-        pollingLoop();
+        this(singleShardConfig(eventLoopInterval), true);
+    }
+
+    /**
+     * 根据配置创建futures multiplexer；当分片数大于1时，将启动多个polling线程，每个线程只负责按hash分配到自身的那部分items，
+     * 使得大量(百万级)items的轮询不再受限于单个cpu核
+     *
+     * @param config multiplexer配置
+     */
+    public FuturesMultiplexer(FuturesMultiplexerConfig config) {
+        this(config, false);
     }
 
-    public void pollingLoop() {
+    // unboundedCallbacks: 以不限线程数的cached线程池执行回调，此时config中回调线程池的配置不生效
+    private FuturesMultiplexer(FuturesMultiplexerConfig config, boolean unboundedCallbacks) {
+        Preconditions.checkArgument(config != null, "Config cannot be null.");
+        Preconditions.checkArgument(config.getEventLoopInterval() > 0,
+                "eventLoopInterval must be greater than 0.");
+        Preconditions.checkArgument(config.getShardCount() > 0, "shardCount must be greater than 0.");
+        if (config.isAdaptiveInterval()) {
+            Preconditions.checkArgument(config.getMinEventLoopInterval() > 0
+                            && config.getMaxEventLoopInterval() >= config.getMinEventLoopInterval(),
+                    "Illegal adaptive interval bounds, must be 0 < minEventLoopInterval <= maxEventLoopInterval.");
+        }
+        Preconditions.checkArgument(config.getCallbackThreads() > 0,
+                "callbackThreads must be greater than 0.");
+        Preconditions.checkArgument(config.getCallbackQueueCapacity() > 0,
+                "callbackQueueCapacity must be greater than 0.");
+        Preconditions.checkArgument(config.getCallbackRejectionHandler() != null,
+                "callbackRejectionHandler cannot be null.");
+        Preconditions.checkArgument(config.getMaxInFlight() >= 0, "maxInFlight cannot be negative.");
+        Preconditions.checkArgument(config.getAdmissionPolicy() != null, "admissionPolicy cannot be null.");
+        this.callbackExePool = unboundedCallbacks ? Executors.newCachedThreadPool(
+                r -> new Thread(r, CALLBACK_THREAD_NAME + seq.getAndIncrement())) : createCallbackExePool(config);
+        this.inFlight = config.getMaxInFlight() > 0 ? new Semaphore(config.getMaxInFlight()) : null;
+        this.maxInFlight = config.getMaxInFlight();
+        this.admissionPolicy = config.getAdmissionPolicy();
+        this.admissionTimeout = config.getAdmissionTimeout();
+        this.metrics = new MultiplexerMetrics(this::size, this::getCallbackQueueDepth);
+        this.shards = new MultiplexerShard[config.getShardCount()];
+        for (int i = 0; i < this.shards.length; i++) {
+            String name = this.shards.length == 1 ? POLLING_THREAD_NAME : POLLING_THREAD_NAME + "-" + i;
+            this.shards[i] = new MultiplexerShard(name, config, callbackExePool, inFlight, metrics);
+        }
+        this.jmxName = registerMBean(config.getJmxName(), this.metrics);
+    }
+
+    private static ExecutorService createCallbackExePool(FuturesMultiplexerConfig config) {
+        if (config.isVirtualThreadCallbacks()) {
+            ExecutorService virtual = CallbackExecutors.newVirtualThreadExecutor(CALLBACK_THREAD_NAME);
+            if (virtual != null)
+                return virtual;
+            logger.warn("Virtual threads are not supported by the current runtime: {}, fall back to platform callback threads.",
+                    System.getProperty("java.version"));
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(config.getCallbackThreads(),
+                config.getCallbackThreads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getCallbackQueueCapacity()),
+                r -> new Thread(r, CALLBACK_THREAD_NAME + seq.getAndIncrement()),
+                config.getCallbackRejectionHandler());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return 回调是否正以虚拟线程执行
+     */
+    public boolean isVirtualThreadCallbacks() {
+        return !(callbackExePool instanceof ThreadPoolExecutor);
+    }
+
+    private static ObjectName registerMBean(String name, MultiplexerMetrics metrics) {
+        if (name == null)
+            return null;
         try {
-            if (!futures.isEmpty()) {
-                Iterator<BlockingItem<?>> iter = futures.iterator();
-                // 遍历处理：done、error和timeout状态的item分别处置并从futures中删除
-                while (iter.hasNext()) {
-                    BlockingItem item = iter.next();
-                    if (item.isDone()) {
-                        try {
-                            // 完成: 包含抛错或正常完成两种情况
-                            Object rst;
-                            try {
-                                rst = item.getResult();
-                            } catch (CancellationException | ExecutionException ee) {
-                                // 业务上的取消或抛错
-                                if (item.getWhenError() != null) {
-                                    callbackExePool.submit(() -> {
-                                        item.getWhenError().accept(ee);
-                                    });
-                                }
-                                continue;
-                            }
-                            // 正常返回了值
-                            if (item.getWhenDone() != null) {
-                                callbackExePool.submit(() -> {
-                                    item.getWhenDone().accept(rst);
-                                });
-                            }
-                        } finally {
-                            iter.remove();
-                            Runner.tryExec(item::dispose);
-                        }
-                    } else if (System.currentTimeMillis() > item.getExpire().getTime()) {
-                        // 超时
-                        item.cancel(true);
-                        if (item.getWhenTimeout() != null) {
-                            callbackExePool.submit(() -> {
-                                item.getWhenTimeout().run();
-                            });
-                        }
-                        iter.remove();
-                        Runner.tryExec(item::dispose);
-                    }
-                }
-            }
-        } catch (Throwable e) {
-            if (e instanceof InterruptedException) {
-                logger.info("FuturesMultiplexer-polling-thread interrupted, stopped polling.", e);
-                return; // exit polling when interrupted
-            }
-            // polling loop never die except interrupt
-            logger.error(
-                    "FuturesMultiplexer polling thread throws exception, ignored and continue polling.",
-                    e);
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            return objectName;
+        } catch (Exception e) {
+            logger.warn("Failed to register FuturesMultiplexer metrics to JMX as: {}, ignored.", name, e);
+            return null;
         }
-        pollingThread.schedule(this::pollingLoop, this.eventLoopInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取运行指标，可调用其snapshot()或snapshot(previous)获取指标快照
+     *
+     * @return 运行指标
+     */
+    public MultiplexerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static FuturesMultiplexerConfig singleShardConfig(long eventLoopInterval) {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(eventLoopInterval);
+        config.setShardCount(1);
+        return config;
+    }
+
+    private MultiplexerShard shardOf(BlockingItem<?> item) {
+        if (shards.length == 1)
+            return shards[0];
+        int h = item.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 获取各分片当前实际生效的轮询间隔，非自适应模式下即为eventLoopInterval
+     *
+     * @return 各分片当前的轮询间隔ms
+     */
+    public long[] getEffectiveIntervals() {
+        long[] ret = new long[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            ret[i] = shards[i].getEffectiveInterval();
+        return ret;
+    }
+
+    /**
+     * @return 当前注册在multiplexer中尚未完成的items数
+     */
+    public int size() {
+        int size = 0;
+        for (MultiplexerShard shard : shards)
+            size += shard.size();
+        return size;
     }
 
     /**
      * 将future注册进multiplexer, 并在其完成、抛错或超时时异步地执行相应后续逻辑；
      * 注意: 最好不要在后续逻辑中使用ThreadLocal变量，因为到时候执行后续逻辑的线程并非这时的提交线程，除非你能自己处理好这些ThreadLocal值的传递
-     * 不建议在后续callback中做太重的工作
+     * 不建议在后续callback中做太重的工作，除非开启了virtualThreadCallbacks
      *
      * @param <T>         future的返回值类型
      * @param future      future
@@ -136,11 +235,43 @@ public class FuturesMultiplexer {
      */
     public <T> void submitFuture(Future<T> future, Date expire, Consumer<T> whenDone,
                                  Consumer<Throwable> whenError, Runnable whenTimeout) {
+        this.submitFuture(future, deadlineOf(expire), whenDone, whenError, whenTimeout);
+    }
+
+    /**
+     * 将future注册进multiplexer, 并在其完成、抛错或超时时异步地执行相应后续逻辑；超时时刻以System.nanoTime表示，不受系统时钟调整影响
+     *
+     * @param <T>           future的返回值类型
+     * @param future        future
+     * @param deadlineNanos future超时时刻(System.nanoTime)，超过此时刻后future将被视为超时，将被取消
+     * @param whenDone      当future正常执行结束后的处理逻辑，能拿到future正常返回的返回值
+     * @param whenError     当future正常执行结束但抛错后的处理逻辑，能拿到所抛出的错误
+     * @param whenTimeout   当future执行超时后的处理逻辑
+     */
+    public <T> void submitFuture(Future<T> future, long deadlineNanos, Consumer<T> whenDone,
+                                 Consumer<Throwable> whenError, Runnable whenTimeout) {
+        this.submitFuture(future, deadlineNanos, whenDone, whenError, whenTimeout, null);
+    }
+
+    /**
+     * 将future注册进multiplexer, 并在其完成、抛错或超时时以指定的executor执行相应后续逻辑
+     *
+     * @param <T>              future的返回值类型
+     * @param future           future
+     * @param deadlineNanos    future超时时刻(System.nanoTime)，超过此时刻后future将被视为超时，将被取消
+     * @param whenDone         当future正常执行结束后的处理逻辑，能拿到future正常返回的返回值
+     * @param whenError        当future正常执行结束但抛错后的处理逻辑，能拿到所抛出的错误
+     * @param whenTimeout      当future执行超时后的处理逻辑
+     * @param callbackExecutor 执行后续逻辑的executor，DIRECT_EXECUTOR表示在event loop线程中直接执行(只适用于极轻量、不阻塞的逻辑)，null表示使用回调线程池
+     */
+    public <T> void submitFuture(Future<T> future, long deadlineNanos, Consumer<T> whenDone,
+                                 Consumer<Throwable> whenError, Runnable whenTimeout, Executor callbackExecutor) {
         Preconditions.checkArgument(future != null);
-        Preconditions.checkArgument(expire != null && expire.after(new Date()),
-                "Illegal expire date, must be a time after now.");
+        checkDeadline(deadlineNanos);
 
-        this.submit(new FutureItem<>(future, expire, whenDone, whenError, whenTimeout));
+        FutureItem<T> item = new FutureItem<>(future, deadlineNanos, whenDone, whenError, whenTimeout);
+        item.setCallbackExecutor(callbackExecutor);
+        this.submit(item);
     }
 
     /**
@@ -152,28 +283,302 @@ public class FuturesMultiplexer {
      * @return 原始future转换而成的completableFuture
      */
     public <T> CompletableFuture<T> submitFuture(Future<T> future, Date expire) {
+        return this.submitFuture(future, deadlineOf(expire));
+    }
+
+    /**
+     * 将future注册进multiplexer, 将其转换为completableFuture后返回，以便在后续代码中实现CPS风格的异步处理；
+     * completableFuture直接在event loop线程中被完成，其后以非Async方式注册的后续逻辑也将在该线程中执行，较重的后续逻辑应使用*Async方法
+     * 调用方取消所返回的completableFuture时，原始future将被立即取消、dispose并从multiplexer中移除(其余返回completableFuture的submit方法亦然)
+     *
+     * @param future        原始future
+     * @param deadlineNanos future超时时刻(System.nanoTime)，超过此时刻后future将被视为超时，将被取消
+     * @param <T>           future的返回值类型
+     * @return 原始future转换而成的completableFuture
+     */
+    public <T> CompletableFuture<T> submitFuture(Future<T> future, long deadlineNanos) {
+        return this.submitFuture(future, deadlineNanos, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * 将future注册进multiplexer, 将其转换为completableFuture后返回，并指定完成该completableFuture所用的executor，
+     * 适用于其后以非Async方式注册了较重后续逻辑、不宜在event loop线程中执行的场景
+     *
+     * @param future           原始future
+     * @param deadlineNanos    future超时时刻(System.nanoTime)，超过此时刻后future将被视为超时，将被取消
+     * @param callbackExecutor 完成completableFuture所用的executor，DIRECT_EXECUTOR表示在event loop线程中直接完成，null表示使用回调线程池
+     * @param <T>              future的返回值类型
+     * @return 原始future转换而成的completableFuture
+     */
+    public <T> CompletableFuture<T> submitFuture(Future<T> future, long deadlineNanos, Executor callbackExecutor) {
+        Preconditions.checkArgument(future != null);
+        checkDeadline(deadlineNanos);
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        FutureItem<T> item = new FutureItem<>(future, deadlineNanos, ret::complete,
+                ret::completeExceptionally, timeoutAction(ret, "Future", deadlineNanos));
+        item.setCallbackExecutor(callbackExecutor);
+        this.submit(item);
+        propagateCancellation(ret, shardOf(item), item);
+        return ret;
+    }
+
+    /**
+     * 将future注册进multiplexer, 并额外指定一个完成信号，适用于本身不支持注册回调、但能在其它地方得知其完成时机的future(如CloseableHttpAsyncClient.execute返回的BasicFuture，可在FutureCallback中完成该信号)；
+     * multiplexer将在completionSignal完成时立即处理该future，而不必轮询
+     *
+     * @param future           原始future
+     * @param completionSignal 完成信号，必须在future完成(含抛错、取消)之时或之后完成
+     * @param expire           future超时时间，超过此时间后future将被视为超时，将被取消
+     * @param <T>              future的返回值类型
+     * @return 原始future转换而成的completableFuture
+     */
+    public <T> CompletableFuture<T> submitFuture(Future<T> future, CompletionStage<?> completionSignal,
+                                                 Date expire) {
+        return this.submitFuture(future, completionSignal, deadlineOf(expire));
+    }
+
+    /**
+     * 将future注册进multiplexer, 并额外指定一个完成信号，超时时刻以System.nanoTime表示
+     *
+     * @param future           原始future
+     * @param completionSignal 完成信号，必须在future完成(含抛错、取消)之时或之后完成
+     * @param deadlineNanos    future超时时刻(System.nanoTime)，超过此时刻后future将被视为超时，将被取消
+     * @param <T>              future的返回值类型
+     * @return 原始future转换而成的completableFuture
+     * @see #submitFuture(Future, CompletionStage, Date)
+     */
+    public <T> CompletableFuture<T> submitFuture(Future<T> future, CompletionStage<?> completionSignal,
+                                                 long deadlineNanos) {
+        Preconditions.checkArgument(future != null && completionSignal != null);
+        checkDeadline(deadlineNanos);
         CompletableFuture<T> ret = new CompletableFuture<>();
-        this.submitFuture(future, expire, ret::complete, ret::completeExceptionally,
-                () -> ret.completeExceptionally(new TimeoutException(
-                        String.format("Future execution exceeds the expiration moment: %s.", expire))));
+        FutureItem<T> item = new FutureItem<>(future, completionSignal, deadlineNanos, ret::complete,
+                ret::completeExceptionally, timeoutAction(ret, "Future", deadlineNanos));
+        item.setCallbackExecutor(DIRECT_EXECUTOR);
+        this.submit(item);
+        propagateCancellation(ret, shardOf(item), item);
         return ret;
     }
 
     /**
-     * 往multiplexer中注册进一个blocking item
+     * 取消一个已注册的item: 立即取消其所代表的任务、执行dispose清理，并将其从multiplexer中移除，之后不会再触发其任何回调
+     *
+     * @param item 通过submit注册的blocking item
+     * @return 该item此前是否仍在multiplexer中，已完成、超时或已被取消的item返回false
+     */
+    public boolean cancel(BlockingItem<?> item) {
+        Preconditions.checkArgument(item != null, "Blocking item cannot be null.");
+        // 批量提交的items不按hash分片，逐个分片尝试
+        if (shardOf(item).cancel(item))
+            return true;
+        for (MultiplexerShard shard : shards) {
+            if (shard.cancel(item))
+                return true;
+        }
+        return false;
+    }
+
+    // 返回给调用方的completableFuture被取消时，将取消传递给对应的item，使其所代表的http请求、子进程等立即停止并释放资源
+    private static void propagateCancellation(CompletableFuture<?> ret, MultiplexerShard shard,
+                                              BlockingItem<?> item) {
+        ret.whenComplete((r, e) -> {
+            if (ret.isCancelled())
+                shard.cancel(item);
+        });
+    }
+
+    // 将Date形式的超时时间换算为System.nanoTime时刻
+    private static long deadlineOf(Date expire) {
+        Preconditions.checkArgument(expire != null, "Expire date cannot be null.");
+        return BlockingItem.toDeadlineNanos(expire);
+    }
+
+    static void checkDeadline(long deadlineNanos) {
+        Preconditions.checkArgument(deadlineNanos - System.nanoTime() > 0,
+                "Illegal deadline, must be a time after now.");
+    }
+
+    // 超时时以TimeoutException结束completableFuture，异常信息中带上提交时的超时时长
+    static Runnable timeoutAction(CompletableFuture<?> ret, String kind, long deadlineNanos) {
+        long timeoutMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        return () -> ret.completeExceptionally(new TimeoutException(
+                String.format("%s execution exceeds the deadline, timeout: %sms.", kind, timeoutMs)));
+    }
+
+    /**
+     * 往multiplexer中注册进一个blocking item；同一个item在完成、超时或被取消之前不能被重复提交
      *
      * @param item blocking item
      * @param <T>  blocking item所代表的的任务完成后的返回值类型
+     * @throws IllegalStateException item已提交且仍在multiplexer中
      */
     public <T> void submit(BlockingItem<T> item) {
         Preconditions.checkArgument(item != null, "Submitted blocking item cannot be null.");
-        futures.add(item);
+        if (inFlight != null && !admit(item))
+            return;
+        shardOf(item).submit(item);
+        metrics.onSubmitted();
+    }
+
+    /**
+     * 往multiplexer中注册进一个blocking item，并指定执行其回调的executor
+     *
+     * @param item             blocking item
+     * @param callbackExecutor 执行回调的executor，DIRECT_EXECUTOR表示在event loop线程中直接执行(只适用于极轻量、不阻塞的逻辑)，null表示使用回调线程池
+     * @param <T>              blocking item所代表的的任务完成后的返回值类型
+     */
+    public <T> void submit(BlockingItem<T> item, Executor callbackExecutor) {
+        Preconditions.checkArgument(item != null, "Submitted blocking item cannot be null.");
+        item.setCallbackExecutor(callbackExecutor);
+        this.submit(item);
+    }
+
+    /**
+     * 批量将一批futures注册进multiplexer，返回这批futures的聚合句柄
+     *
+     * @param futures 原始futures
+     * @param expire  整批futures共同的超时时间，超过此时间后尚未完成的future将被视为超时，将被取消
+     * @param <T>     future的返回值类型
+     * @return 这批futures的聚合句柄，其元素顺序与futures的迭代顺序一致
+     * @see #submitAll(Collection, long)
+     */
+    public <T> BatchHandle<T> submitAll(Collection<? extends Future<T>> futures, Date expire) {
+        return this.submitAll(futures, deadlineOf(expire));
+    }
+
+    /**
+     * 批量将一批futures注册进multiplexer，返回这批futures的聚合句柄；整批futures一次性获取处理中名额，并登记到同一个分片，
+     * 共享同一个超时条目，相比逐个调用submitFuture减少了准入和超时登记的开销；超时时尚未完成的futures将被取消，其对应元素以TimeoutException失败
+     * 注意: 开启maxInFlight时，整批futures需要一次性获得全部名额，批次大小超过maxInFlight时将直接被拒绝
+     *
+     * @param futures       原始futures
+     * @param deadlineNanos 整批futures共同的超时时刻(System.nanoTime)，超过此时刻后尚未完成的future将被视为超时，将被取消
+     * @param <T>           future的返回值类型
+     * @return 这批futures的聚合句柄，其元素顺序与futures的迭代顺序一致
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BatchHandle<T> submitAll(Collection<? extends Future<T>> futures, long deadlineNanos) {
+        Preconditions.checkArgument(futures != null && !futures.isEmpty(), "Futures cannot be null or empty.");
+        checkDeadline(deadlineNanos);
+        int n = futures.size();
+        CompletableFuture<T>[] rets = new CompletableFuture[n];
+        BlockingItem<?>[] items = new BlockingItem[n];
+        int i = 0;
+        for (Future<T> future : futures) {
+            Preconditions.checkArgument(future != null, "Futures cannot contain null elements.");
+            CompletableFuture<T> ret = new CompletableFuture<>();
+            rets[i] = ret;
+            FutureItem<T> item = new FutureItem<>(future, deadlineNanos, ret::complete, ret::completeExceptionally,
+                    timeoutAction(ret, "Future", deadlineNanos));
+            item.setCallbackExecutor(DIRECT_EXECUTOR);
+            items[i++] = item;
+        }
+        if (n > 1)
+            Preconditions.checkArgument(new HashSet<>(Arrays.asList(items)).size() == n,
+                    "Futures cannot contain duplicate elements.");
+        BatchHandle<T> handle = new BatchHandle<>(rets);
+        if (inFlight != null && !acquire(n)) {
+            RejectedExecutionException rejected = rejection(n);
+            if (admissionPolicy != AdmissionPolicy.FAILED_FUTURE)
+                throw rejected;
+            for (int j = 0; j < n; j++) {
+                Runner.tryExec(items[j]::dispose);
+                rets[j].completeExceptionally(rejected);
+            }
+            return handle;
+        }
+        metrics.onSubmitted(n);
+        MultiplexerShard shard = shards[Math.floorMod(batchSeq.getAndIncrement(), shards.length)];
+        BatchDeadline deadline = new BatchDeadline(items, deadlineNanos);
+        shard.submitBatch(deadline);
+        for (int j = 0; j < n; j++)
+            propagateCancellation(rets[j], shard, items[j]);
+        // 整批完成后提前撤销共享的超时条目
+        CompletableFuture.allOf(rets).whenComplete((r, e) -> shard.cancelBatchDeadline(deadline));
+        return handle;
+    }
+
+    /**
+     * 开启一个结构化并发作用域，policy为ALL_SUCCEED或FIRST_SUCCESS
+     *
+     * @param policy        完成策略，QUORUM需使用指定quorum的重载
+     * @param deadlineNanos 整组items的超时上限(System.nanoTime)
+     * @param <T>           items的返回值类型
+     * @return 新的scope
+     */
+    public <T> MultiplexerScope<T> openScope(ScopePolicy policy, long deadlineNanos) {
+        Preconditions.checkArgument(policy != ScopePolicy.QUORUM, "Quorum must be specified for QUORUM policy.");
+        return openScope(policy, 1, deadlineNanos);
+    }
+
+    /**
+     * 开启一个结构化并发作用域: fork到其中的items按policy判定整体结果，结果确定后其余items立即被取消并从multiplexer中移除
+     *
+     * @param policy        完成策略
+     * @param quorum        QUORUM模式下判定成功所需的正常完成items数，其余模式下忽略
+     * @param deadlineNanos 整组items的超时上限(System.nanoTime)
+     * @param <T>           items的返回值类型
+     * @return 新的scope
+     */
+    public <T> MultiplexerScope<T> openScope(ScopePolicy policy, int quorum, long deadlineNanos) {
+        Preconditions.checkArgument(policy != null, "Scope policy cannot be null.");
+        Preconditions.checkArgument(policy != ScopePolicy.QUORUM || quorum > 0, "Quorum must be positive.");
+        checkDeadline(deadlineNanos);
+        return new MultiplexerScope<>(this, policy, policy == ScopePolicy.FIRST_SUCCESS ? 1 : quorum, deadlineNanos);
+    }
+
+    // 准入控制: 获取处理中名额，获取失败时按admissionPolicy处理并返回false
+    private boolean admit(BlockingItem<?> item) {
+        if (acquire(1))
+            return true;
+        RejectedExecutionException rejected = rejection(1);
+        if (admissionPolicy == AdmissionPolicy.FAILED_FUTURE) {
+            Runner.tryExec(item::dispose);
+            if (item.getWhenError() != null)
+                item.getWhenError().accept(rejected);
+            return false;
+        }
+        throw rejected;
+    }
+
+    // 按admissionPolicy获取permits个处理中名额，超过maxInFlight的请求永远无法满足，直接失败
+    private boolean acquire(int permits) {
+        if (permits > maxInFlight)
+            return false;
+        if (admissionPolicy == AdmissionPolicy.BLOCK) {
+            try {
+                if (admissionTimeout > 0)
+                    return inFlight.tryAcquire(permits, admissionTimeout, TimeUnit.MILLISECONDS);
+                inFlight.acquire(permits);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(
+                        "Interrupted while waiting for an in-flight slot of FuturesMultiplexer.", e);
+            }
+        }
+        return inFlight.tryAcquire(permits);
+    }
+
+    private RejectedExecutionException rejection(int permits) {
+        metrics.onRejected(permits);
+        return new RejectedExecutionException(String.format(
+                "FuturesMultiplexer is overloaded, in-flight items reaches the limit: %s.", maxInFlight));
+    }
+
+    /**
+     * @return 回调任务等待队列中当前排队的任务数，虚拟线程模式下回调不排队，总是为0
+     */
+    public int getCallbackQueueDepth() {
+        if (callbackExePool instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) callbackExePool).getQueue().size();
+        return 0;
     }
 
     /**
      * 将Process注册进multiplexer, 并在其完成、抛错或超时时异步地执行相应后续逻辑；
      * 注意: 最好不要在后续逻辑中使用ThreadLocal变量，因为到时候执行后续逻辑的线程并非这时的提交线程，除非你能自己处理好这些ThreadLocal值的传递
-     * 不建议在后续callback中做太重的工作
+     * 不建议在后续callback中做太重的工作，除非开启了virtualThreadCallbacks
      *
      * @param process     process
      * @param expire      process超时时间，超过此时间后process将被视为超时，将被取消
@@ -183,11 +588,24 @@ public class FuturesMultiplexer {
      */
     public void submitProcess(Process process, Date expire, Consumer<Integer> whenDone,
                               Consumer<Throwable> whenError, Runnable whenTimeout) {
+        this.submitProcess(process, deadlineOf(expire), whenDone, whenError, whenTimeout);
+    }
+
+    /**
+     * 将Process注册进multiplexer, 并在其完成、抛错或超时时异步地执行相应后续逻辑；超时时刻以System.nanoTime表示，不受系统时钟调整影响
+     *
+     * @param process       process
+     * @param deadlineNanos process超时时刻(System.nanoTime)，超过此时刻后process将被视为超时，将被取消
+     * @param whenDone      当process正常执行结束后的处理逻辑，能拿到process的exit code
+     * @param whenError     当process正常执行结束但抛错后的处理逻辑，能拿到所抛出的错误
+     * @param whenTimeout   当process执行超时后的处理逻辑
+     */
+    public void submitProcess(Process process, long deadlineNanos, Consumer<Integer> whenDone,
+                              Consumer<Throwable> whenError, Runnable whenTimeout) {
         Preconditions.checkArgument(process != null);
-        Preconditions.checkArgument(expire != null && expire.after(new Date()),
-                "Illegal expire date, must be a time after now.");
+        checkDeadline(deadlineNanos);
 
-        this.submit(new ProcessItem(process, expire, whenDone, whenError, whenTimeout));
+        this.submit(new ProcessItem(process, deadlineNanos, whenDone, whenError, whenTimeout));
     }
 
     /**
@@ -198,18 +616,122 @@ public class FuturesMultiplexer {
      * @return 原始process转换而成的completableFuture
      */
     public CompletableFuture<Integer> submitProcess(Process process, Date expire) {
+        return this.submitProcess(process, deadlineOf(expire));
+    }
+
+    /**
+     * 将process注册进multiplexer, 将其转换为completableFuture后返回，以便在后续代码中实现CPS风格的异步处理
+     *
+     * @param process       原始process
+     * @param deadlineNanos process超时时刻(System.nanoTime)，超过此时刻后process将被视为超时，将被取消
+     * @return 原始process转换而成的completableFuture
+     */
+    public CompletableFuture<Integer> submitProcess(Process process, long deadlineNanos) {
+        Preconditions.checkArgument(process != null);
+        checkDeadline(deadlineNanos);
         CompletableFuture<Integer> ret = new CompletableFuture<>();
-        this.submitProcess(process, expire, ret::complete, ret::completeExceptionally,
-                () -> ret.completeExceptionally(new TimeoutException(
-                        String.format("Process execution exceeds the expiration moment: %s.", expire))));
+        ProcessItem item = new ProcessItem(process, deadlineNanos, ret::complete, ret::completeExceptionally,
+                timeoutAction(ret, "Process", deadlineNanos));
+        item.setCallbackExecutor(DIRECT_EXECUTOR);
+        this.submit(item);
+        propagateCancellation(ret, shardOf(item), item);
+        return ret;
+    }
+
+    /**
+     * 将process注册进multiplexer并捕获其输出: 其stdout、stderr由所有子进程共享的搬运线程持续搬运到capture中(转发至sink并保留尾部)，
+     * 无需为每个子进程启动专门的读取线程；并在其完成、抛错或超时时异步地执行相应后续逻辑
+     *
+     * @param process       process，其输出流不应再被其它地方读取
+     * @param capture       输出捕获方式，每个子进程须使用单独的capture
+     * @param deadlineNanos process超时时刻(System.nanoTime)，超过此时刻后process将被视为超时，将被取消
+     * @param whenDone      当process正常执行结束后的处理逻辑，能拿到exit code及输出尾部
+     * @param whenError     当process正常执行结束但抛错后的处理逻辑，能拿到所抛出的错误
+     * @param whenTimeout   当process执行超时后的处理逻辑，此时仍可从capture中获取已捕获的输出尾部
+     */
+    public void submitProcess(Process process, ProcessOutputCapture capture, long deadlineNanos,
+                              Consumer<ProcessResult> whenDone, Consumer<Throwable> whenError,
+                              Runnable whenTimeout) {
+        Preconditions.checkArgument(process != null);
+        checkDeadline(deadlineNanos);
+
+        this.submit(new CapturedProcessItem(process, capture, deadlineNanos, whenDone, whenError, whenTimeout));
+    }
+
+    /**
+     * 将process注册进multiplexer并捕获其输出，将其转换为completableFuture后返回，以便在后续代码中实现CPS风格的异步处理
+     *
+     * @param process       原始process，其输出流不应再被其它地方读取
+     * @param capture       输出捕获方式，每个子进程须使用单独的capture
+     * @param deadlineNanos process超时时刻(System.nanoTime)，超过此时刻后process将被视为超时，将被取消
+     * @return 以exit code及输出尾部完成的completableFuture
+     * @see #submitProcess(Process, ProcessOutputCapture, long, Consumer, Consumer, Runnable)
+     */
+    public CompletableFuture<ProcessResult> submitProcess(Process process, ProcessOutputCapture capture,
+                                                          long deadlineNanos) {
+        Preconditions.checkArgument(process != null);
+        checkDeadline(deadlineNanos);
+        CompletableFuture<ProcessResult> ret = new CompletableFuture<>();
+        CapturedProcessItem item = new CapturedProcessItem(process, capture, deadlineNanos, ret::complete,
+                ret::completeExceptionally, timeoutAction(ret, "Process", deadlineNanos));
+        item.setCallbackExecutor(DIRECT_EXECUTOR);
+        this.submit(item);
+        propagateCancellation(ret, shardOf(item), item);
+        return ret;
+    }
+
+    /**
+     * 将nio channel注册进multiplexer，等待其就绪(可读、可写、连接完成等)，并在其就绪、注册出错或超时时异步地执行相应后续逻辑；
+     * channel由multiplexer event loop所拥有的Selector监控，就绪时立即被感知，无需轮询；channel必须已设置为非阻塞模式
+     * 就绪后channel保持打开，可在whenDone中继续对其读写(如需再次等待就绪可重新提交)；超时后channel将被关闭
+     *
+     * @param channel       非阻塞模式的channel，如SocketChannel、Pipe.SourceChannel等
+     * @param interestOps   所等待的就绪操作集，如SelectionKey.OP_READ、SelectionKey.OP_CONNECT
+     * @param deadlineNanos 超时时刻(System.nanoTime)，超过此时刻channel仍未就绪则视为超时
+     * @param whenDone      channel就绪后的处理逻辑，能拿到已就绪的操作集
+     * @param whenError     channel注册到selector出错时的处理逻辑，能拿到所抛出的错误
+     * @param whenTimeout   等待超时后的处理逻辑
+     */
+    public void submitChannel(SelectableChannel channel, int interestOps, long deadlineNanos,
+                              Consumer<Integer> whenDone, Consumer<Throwable> whenError, Runnable whenTimeout) {
+        checkDeadline(deadlineNanos);
+
+        this.submit(new ChannelItem(channel, interestOps, deadlineNanos, whenDone, whenError, whenTimeout));
+    }
+
+    /**
+     * 将nio channel注册进multiplexer等待其就绪，将其转换为completableFuture后返回，以便在后续代码中实现CPS风格的异步处理
+     *
+     * @param channel       非阻塞模式的channel
+     * @param interestOps   所等待的就绪操作集
+     * @param deadlineNanos 超时时刻(System.nanoTime)，超过此时刻channel仍未就绪则视为超时
+     * @return 以已就绪操作集完成的completableFuture
+     * @see #submitChannel(SelectableChannel, int, long, Consumer, Consumer, Runnable)
+     */
+    public CompletableFuture<Integer> submitChannel(SelectableChannel channel, int interestOps, long deadlineNanos) {
+        checkDeadline(deadlineNanos);
+        CompletableFuture<Integer> ret = new CompletableFuture<>();
+        ChannelItem item = new ChannelItem(channel, interestOps, deadlineNanos, ret::complete,
+                ret::completeExceptionally, timeoutAction(ret, "Channel", deadlineNanos));
+        item.setCallbackExecutor(DIRECT_EXECUTOR);
+        this.submit(item);
+        propagateCancellation(ret, shardOf(item), item);
         return ret;
     }
 
     public void destroy() {
-        Runner.shutdownThreadPool(this.pollingThread, 1);
+        for (MultiplexerShard shard : shards)
+            shard.shutdown();
         Runner.shutdownThreadPool(this.callbackExePool, 3);
-        this.futures.forEach(fi -> fi.cancel(true));
-        this.futures.forEach(BlockingItem::dispose);
-        this.futures.clear();
+        if (this.jmxName != null)
+            Runner.tryExec(() -> {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.jmxName);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        for (MultiplexerShard shard : shards)
+            shard.destroyItems();
     }
 }
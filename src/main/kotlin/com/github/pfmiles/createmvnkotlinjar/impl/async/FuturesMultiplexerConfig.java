@@ -0,0 +1,144 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * FuturesMultiplexer的配置参数
+ *
+ * @author pf-miles
+ */
+public class FuturesMultiplexerConfig {
+    // 内部event loop的轮询时间间隔ms，同时也是超时判定的精度
+    private long eventLoopInterval = 100;
+    // 是否开启自适应轮询间隔: 无完成时指数退避，完成频繁时向minEventLoopInterval收紧，且每次唤醒直接跳到最近的deadline
+    private boolean adaptiveInterval;
+    // 自适应模式下的最小轮询间隔ms
+    private long minEventLoopInterval = 1;
+    // 自适应模式下的最大轮询间隔ms
+    private long maxEventLoopInterval = 1000;
+    // 分片数，每个分片拥有独立的polling线程、item集合及超时时间轮，items按hash分配到各分片; 默认为cpu核数
+    private int shardCount = Runtime.getRuntime().availableProcessors();
+    // 执行whenDone/whenError/whenTimeout回调的线程数上限
+    private int callbackThreads = Runtime.getRuntime().availableProcessors() * 2;
+    // 回调任务等待队列的容量
+    private int callbackQueueCapacity = 65536;
+    // 回调线程和等待队列均已满时的处理策略，默认拒绝；被拒绝的回调不会丢弃，其item将在event loop线程中以RejectedExecutionException回调whenError而失败
+    // 不建议使用CallerRunsPolicy等在调用线程执行的策略: 调用线程即分片的event loop线程，较慢的回调将拖住整个分片的轮询和超时处理；
+    // 需要反压时应配置maxInFlight及AdmissionPolicy.BLOCK，使提交线程在处理中的items过多时等待
+    private RejectedExecutionHandler callbackRejectionHandler = new ThreadPoolExecutor.AbortPolicy();
+    // 是否以虚拟线程执行回调(需运行在JDK 21+上，否则回退为有界的平台线程池)，适合回调中有阻塞操作的场景；开启后callbackThreads、callbackQueueCapacity及callbackRejectionHandler不再生效，可配合maxInFlight限制并发
+    private boolean virtualThreadCallbacks;
+    // 同时处理中(已提交尚未完成)的items数上限，0表示不限制
+    private int maxInFlight;
+    // 处理中的items数达到maxInFlight时，对新提交item的处理策略
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.BLOCK;
+    // AdmissionPolicy.BLOCK模式下提交线程最长的等待时间ms，0表示一直等待
+    private long admissionTimeout;
+    // 运行指标注册到JMX时使用的ObjectName，形如"com.github.pfmiles:type=FuturesMultiplexer,name=xxx"，为null则不注册
+    private String jmxName;
+
+    public long getEventLoopInterval() {
+        return eventLoopInterval;
+    }
+
+    public void setEventLoopInterval(long eventLoopInterval) {
+        this.eventLoopInterval = eventLoopInterval;
+    }
+
+    public boolean isAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    public void setAdaptiveInterval(boolean adaptiveInterval) {
+        this.adaptiveInterval = adaptiveInterval;
+    }
+
+    public long getMinEventLoopInterval() {
+        return minEventLoopInterval;
+    }
+
+    public void setMinEventLoopInterval(long minEventLoopInterval) {
+        this.minEventLoopInterval = minEventLoopInterval;
+    }
+
+    public long getMaxEventLoopInterval() {
+        return maxEventLoopInterval;
+    }
+
+    public void setMaxEventLoopInterval(long maxEventLoopInterval) {
+        this.maxEventLoopInterval = maxEventLoopInterval;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public int getCallbackThreads() {
+        return callbackThreads;
+    }
+
+    public void setCallbackThreads(int callbackThreads) {
+        this.callbackThreads = callbackThreads;
+    }
+
+    public int getCallbackQueueCapacity() {
+        return callbackQueueCapacity;
+    }
+
+    public void setCallbackQueueCapacity(int callbackQueueCapacity) {
+        this.callbackQueueCapacity = callbackQueueCapacity;
+    }
+
+    public RejectedExecutionHandler getCallbackRejectionHandler() {
+        return callbackRejectionHandler;
+    }
+
+    public void setCallbackRejectionHandler(RejectedExecutionHandler callbackRejectionHandler) {
+        this.callbackRejectionHandler = callbackRejectionHandler;
+    }
+
+    public boolean isVirtualThreadCallbacks() {
+        return virtualThreadCallbacks;
+    }
+
+    public void setVirtualThreadCallbacks(boolean virtualThreadCallbacks) {
+        this.virtualThreadCallbacks = virtualThreadCallbacks;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    public long getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    public void setAdmissionTimeout(long admissionTimeout) {
+        this.admissionTimeout = admissionTimeout;
+    }
+
+    public String getJmxName() {
+        return jmxName;
+    }
+
+    public void setJmxName(String jmxName) {
+        this.jmxName = jmxName;
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+
+/**
+ * 单个item的超时时间轮条目，每次提交新建一个，由所在分片私有；时间轮的链表指针保存在此条目而非item本身中，
+ * 同一个item即使被误提交到多个multiplexer或分片，各时间轮之间也不会相互破坏
+ *
+ * @author pf-miles
+ */
+final class ItemDeadline extends TimingWheel.Entry {
+    final BlockingItem<?> item;
+
+    ItemDeadline(BlockingItem<?> item) {
+        this.item = item;
+    }
+}
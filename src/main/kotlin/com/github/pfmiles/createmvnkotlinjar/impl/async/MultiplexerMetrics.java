@@ -0,0 +1,227 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * FuturesMultiplexer的运行指标，计数采用LongAdder，耗时分布采用FixedBucketHistogram，记录操作无锁且不分配内存；
+ * 可通过snapshot获取快照，也可在配置了jmxName时通过JMX查看；速率及耗时分布的统计窗口由各使用方自己持有的上一次快照决定，
+ * 多个使用方(包括JMX)之间互不影响
+ *
+ * @author pf-miles
+ */
+public class MultiplexerMetrics implements MultiplexerMetricsMBean {
+    // JMX读取时，快照的最小刷新间隔，也即JMX统计窗口的最小长度
+    private static final long MIN_RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final IntSupplier registeredItems;
+    private final IntSupplier callbackQueueDepth;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    // 单次轮询耗时, us
+    private final FixedBucketHistogram pollDuration = new FixedBucketHistogram();
+    // 轮询实际开始时刻相对于排期时刻的延迟, us
+    private final FixedBucketHistogram pollLag = new FixedBucketHistogram();
+    // 从item完成被感知到其回调开始执行的延迟, us
+    private final FixedBucketHistogram callbackLatency = new FixedBucketHistogram();
+
+    // 创建时的快照，snapshot()以其为起点
+    private final MultiplexerMetricsSnapshot origin;
+    // JMX读取专用的上一次快照
+    private MultiplexerMetricsSnapshot jmxLast;
+
+    MultiplexerMetrics(IntSupplier registeredItems, IntSupplier callbackQueueDepth) {
+        this.registeredItems = registeredItems;
+        this.callbackQueueDepth = callbackQueueDepth;
+        FixedBucketHistogram.Snapshot empty = new FixedBucketHistogram().snapshot();
+        this.origin = new MultiplexerMetricsSnapshot(System.nanoTime(), 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                empty, empty, empty, empty, empty, empty);
+        this.jmxLast = origin;
+    }
+
+    void onSubmitted() {
+        submitted.increment();
+    }
+
+    void onSubmitted(int n) {
+        submitted.add(n);
+    }
+
+    void onCompleted() {
+        completed.increment();
+    }
+
+    void onError() {
+        errors.increment();
+    }
+
+    void onTimeout() {
+        timeouts.increment();
+    }
+
+    void onRejected() {
+        rejected.increment();
+    }
+
+    void onRejected(int n) {
+        rejected.add(n);
+    }
+
+    void onCancelled() {
+        cancelled.increment();
+    }
+
+    void recordPollDuration(long nanos) {
+        pollDuration.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    void recordPollLag(long nanos) {
+        pollLag.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    void recordCallbackLatency(long nanos) {
+        callbackLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * 获取当前指标快照，其中的速率及耗时分布为自创建以来的统计
+     *
+     * @return 指标快照
+     */
+    public MultiplexerMetricsSnapshot snapshot() {
+        return snapshot(origin);
+    }
+
+    /**
+     * 获取当前指标快照，其中的速率及耗时分布只统计自previous以来的部分；周期性采集的使用方每次传入自己的上一次快照，
+     * 即得到各采集周期内的速率及分位数，且不影响其它使用方
+     *
+     * @param previous 该使用方的上一次快照，须取自同一个MultiplexerMetrics
+     * @return 指标快照
+     */
+    public MultiplexerMetricsSnapshot snapshot(MultiplexerMetricsSnapshot previous) {
+        Preconditions.checkArgument(previous != null, "Previous snapshot cannot be null.");
+        long now = System.nanoTime();
+        long completedTotal = completed.sum();
+        long errorsTotal = errors.sum();
+        long timeoutsTotal = timeouts.sum();
+        FixedBucketHistogram.Snapshot pollDurationTotal = pollDuration.snapshot();
+        FixedBucketHistogram.Snapshot pollLagTotal = pollLag.snapshot();
+        FixedBucketHistogram.Snapshot callbackLatencyTotal = callbackLatency.snapshot();
+        double secs = Math.max(1, now - previous.getTimestampNanos()) / 1e9;
+        return new MultiplexerMetricsSnapshot(now,
+                registeredItems.getAsInt(), callbackQueueDepth.getAsInt(), submitted.sum(),
+                completedTotal, errorsTotal, timeoutsTotal, rejected.sum(), cancelled.sum(),
+                (completedTotal - previous.getCompletedTotal()) / secs,
+                (errorsTotal - previous.getErrorsTotal()) / secs,
+                (timeoutsTotal - previous.getTimeoutsTotal()) / secs,
+                pollDurationTotal.since(previous.pollDurationTotal), pollLagTotal.since(previous.pollLagTotal),
+                callbackLatencyTotal.since(previous.callbackLatencyTotal), pollDurationTotal, pollLagTotal,
+                callbackLatencyTotal);
+    }
+
+    // JMX读取使用: JMX自己的上一次快照足够新时直接复用，避免逐个属性读取时把统计窗口切得过碎
+    private synchronized MultiplexerMetricsSnapshot recent() {
+        if (System.nanoTime() - jmxLast.getTimestampNanos() >= MIN_RATE_WINDOW_NANOS)
+            jmxLast = snapshot(jmxLast);
+        return jmxLast;
+    }
+
+    @Override
+    public int getRegisteredItems() {
+        return registeredItems.getAsInt();
+    }
+
+    @Override
+    public int getCallbackQueueDepth() {
+        return callbackQueueDepth.getAsInt();
+    }
+
+    @Override
+    public long getSubmittedTotal() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedTotal() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getErrorsTotal() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getTimeoutsTotal() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getRejectedTotal() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getCancelledTotal() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public double getCompletionsPerSecond() {
+        return recent().getCompletionsPerSecond();
+    }
+
+    @Override
+    public double getErrorsPerSecond() {
+        return recent().getErrorsPerSecond();
+    }
+
+    @Override
+    public double getTimeoutsPerSecond() {
+        return recent().getTimeoutsPerSecond();
+    }
+
+    @Override
+    public long getPollDurationP50Micros() {
+        return recent().getPollDuration().getQuantile(0.5);
+    }
+
+    @Override
+    public long getPollDurationP99Micros() {
+        return recent().getPollDuration().getQuantile(0.99);
+    }
+
+    @Override
+    public long getPollLagP50Micros() {
+        return recent().getPollLag().getQuantile(0.5);
+    }
+
+    @Override
+    public long getPollLagP99Micros() {
+        return recent().getPollLag().getQuantile(0.99);
+    }
+
+    @Override
+    public long getCallbackLatencyP50Micros() {
+        return recent().getCallbackLatency().getQuantile(0.5);
+    }
+
+    @Override
+    public long getCallbackLatencyP99Micros() {
+        return recent().getCallbackLatency().getQuantile(0.99);
+    }
+
+    @Override
+    public long getCallbackLatencyMaxMicros() {
+        return recent().getCallbackLatency().getMax();
+    }
+}
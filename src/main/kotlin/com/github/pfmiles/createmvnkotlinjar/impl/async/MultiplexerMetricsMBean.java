@@ -0,0 +1,45 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+/**
+ * FuturesMultiplexer运行指标的JMX接口，速率类指标为最近一个统计窗口(不短于1秒)内的每秒值，耗时类指标为同一窗口内的分布，以us计；
+ * JMX的统计窗口独立于通过MultiplexerMetrics.snapshot取快照的调用方
+ *
+ * @author pf-miles
+ */
+public interface MultiplexerMetricsMBean {
+    int getRegisteredItems();
+
+    int getCallbackQueueDepth();
+
+    long getSubmittedTotal();
+
+    long getCompletedTotal();
+
+    long getErrorsTotal();
+
+    long getTimeoutsTotal();
+
+    long getRejectedTotal();
+
+    long getCancelledTotal();
+
+    double getCompletionsPerSecond();
+
+    double getErrorsPerSecond();
+
+    double getTimeoutsPerSecond();
+
+    long getPollDurationP50Micros();
+
+    long getPollDurationP99Micros();
+
+    long getPollLagP50Micros();
+
+    long getPollLagP99Micros();
+
+    long getCallbackLatencyP50Micros();
+
+    long getCallbackLatencyP99Micros();
+
+    long getCallbackLatencyMaxMicros();
+}
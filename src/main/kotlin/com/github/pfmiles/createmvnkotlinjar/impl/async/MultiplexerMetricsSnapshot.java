@@ -0,0 +1,140 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+/**
+ * FuturesMultiplexer运行指标的快照，total类指标为累计值，速率类指标及直方图只统计自取快照时所基于的上一次快照以来的部分，
+ * 直方图以us计
+ *
+ * @author pf-miles
+ */
+public class MultiplexerMetricsSnapshot {
+    // 快照时刻, System.nanoTime
+    private final long timestampNanos;
+    // 当前注册在multiplexer中尚未完成的items数
+    private final int registeredItems;
+    // 回调任务等待队列中排队的任务数
+    private final int callbackQueueDepth;
+    private final long submittedTotal;
+    // 正常完成的items数，不含抛错和超时
+    private final long completedTotal;
+    private final long errorsTotal;
+    private final long timeoutsTotal;
+    // 被准入控制拒绝的items数
+    private final long rejectedTotal;
+    // 被调用方主动取消的items数
+    private final long cancelledTotal;
+    private final double completionsPerSecond;
+    private final double errorsPerSecond;
+    private final double timeoutsPerSecond;
+    // 单次轮询耗时
+    private final FixedBucketHistogram.Snapshot pollDuration;
+    // 轮询实际开始时刻相对于排期时刻的延迟
+    private final FixedBucketHistogram.Snapshot pollLag;
+    // 从item完成被感知到其回调开始执行的延迟
+    private final FixedBucketHistogram.Snapshot callbackLatency;
+    // 以上三个直方图的累计值，供之后基于本快照的快照计算窗口
+    final FixedBucketHistogram.Snapshot pollDurationTotal;
+    final FixedBucketHistogram.Snapshot pollLagTotal;
+    final FixedBucketHistogram.Snapshot callbackLatencyTotal;
+
+    MultiplexerMetricsSnapshot(long timestampNanos, int registeredItems, int callbackQueueDepth,
+                               long submittedTotal, long completedTotal, long errorsTotal,
+                               long timeoutsTotal, long rejectedTotal, long cancelledTotal,
+                               double completionsPerSecond,
+                               double errorsPerSecond, double timeoutsPerSecond,
+                               FixedBucketHistogram.Snapshot pollDuration,
+                               FixedBucketHistogram.Snapshot pollLag,
+                               FixedBucketHistogram.Snapshot callbackLatency,
+                               FixedBucketHistogram.Snapshot pollDurationTotal,
+                               FixedBucketHistogram.Snapshot pollLagTotal,
+                               FixedBucketHistogram.Snapshot callbackLatencyTotal) {
+        this.timestampNanos = timestampNanos;
+        this.registeredItems = registeredItems;
+        this.callbackQueueDepth = callbackQueueDepth;
+        this.submittedTotal = submittedTotal;
+        this.completedTotal = completedTotal;
+        this.errorsTotal = errorsTotal;
+        this.timeoutsTotal = timeoutsTotal;
+        this.rejectedTotal = rejectedTotal;
+        this.cancelledTotal = cancelledTotal;
+        this.completionsPerSecond = completionsPerSecond;
+        this.errorsPerSecond = errorsPerSecond;
+        this.timeoutsPerSecond = timeoutsPerSecond;
+        this.pollDuration = pollDuration;
+        this.pollLag = pollLag;
+        this.callbackLatency = callbackLatency;
+        this.pollDurationTotal = pollDurationTotal;
+        this.pollLagTotal = pollLagTotal;
+        this.callbackLatencyTotal = callbackLatencyTotal;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getRegisteredItems() {
+        return registeredItems;
+    }
+
+    public int getCallbackQueueDepth() {
+        return callbackQueueDepth;
+    }
+
+    public long getSubmittedTotal() {
+        return submittedTotal;
+    }
+
+    public long getCompletedTotal() {
+        return completedTotal;
+    }
+
+    public long getErrorsTotal() {
+        return errorsTotal;
+    }
+
+    public long getTimeoutsTotal() {
+        return timeoutsTotal;
+    }
+
+    public long getRejectedTotal() {
+        return rejectedTotal;
+    }
+
+    public long getCancelledTotal() {
+        return cancelledTotal;
+    }
+
+    public double getCompletionsPerSecond() {
+        return completionsPerSecond;
+    }
+
+    public double getErrorsPerSecond() {
+        return errorsPerSecond;
+    }
+
+    public double getTimeoutsPerSecond() {
+        return timeoutsPerSecond;
+    }
+
+    public FixedBucketHistogram.Snapshot getPollDuration() {
+        return pollDuration;
+    }
+
+    public FixedBucketHistogram.Snapshot getPollLag() {
+        return pollLag;
+    }
+
+    public FixedBucketHistogram.Snapshot getCallbackLatency() {
+        return callbackLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "registered: %s, callbackQueue: %s, completions/s: %.1f, errors/s: %.1f, timeouts/s: %.1f, "
+                        + "pollDuration p50/p99: %s/%sus, pollLag p50/p99: %s/%sus, callbackLatency p50/p99: %s/%sus",
+                registeredItems, callbackQueueDepth, completionsPerSecond, errorsPerSecond,
+                timeoutsPerSecond, pollDuration.getQuantile(0.5), pollDuration.getQuantile(0.99),
+                pollLag.getQuantile(0.5), pollLag.getQuantile(0.99), callbackLatency.getQuantile(0.5),
+                callbackLatency.getQuantile(0.99));
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.FutureItem;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+/**
+ * FuturesMultiplexer中的结构化并发作用域: 将一组items归为一个scope，按ScopePolicy(全部成功、首个成功、法定数量成功)判定整体结果；
+ * 结果一旦确定(成功或失败)，scope中其余尚未完成的items立即被取消、dispose并从multiplexer中移除，尽早释放其占用的连接、子进程等资源
+ * scope的deadline为整组items的超时上限，每个item的超时时刻不会晚于它；
+ * 使用方式: 多次fork提交items后调用join获取整体结果，join之后不能再fork；close则取消所有尚未完成的items，适合配合try-with-resources使用
+ * 本类线程安全
+ *
+ * @param <T> items的返回值类型
+ * @author pf-miles
+ */
+public class MultiplexerScope<T> implements AutoCloseable {
+    private final FuturesMultiplexer multiplexer;
+    private final ScopePolicy policy;
+    // 判定成功所需的正常完成items数，ALL_SUCCEED模式下在join时才确定
+    private final int quorum;
+    // 整组items的超时上限(System.nanoTime)
+    private final long deadlineNanos;
+    private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+    // 以下状态均在this锁的保护下访问
+    // 各item对应的completableFuture，与fork顺序一致
+    private final List<CompletableFuture<T>> forks = new ArrayList<>();
+    // 按完成顺序排列的正常结果
+    private final List<T> successes = new ArrayList<>();
+    private int failures;
+    private Throwable lastError;
+    // 已调用join，不再接受fork
+    private boolean sealed;
+    // 整体结果已确定
+    private boolean decided;
+    // 已确定的整体结果，待其余items取消后再发布
+    private List<T> decidedValue;
+    private Throwable decidedError;
+
+    MultiplexerScope(FuturesMultiplexer multiplexer, ScopePolicy policy, int quorum, long deadlineNanos) {
+        this.multiplexer = multiplexer;
+        this.policy = policy;
+        this.quorum = quorum;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 在scope中提交一个future，其超时时刻即scope的deadline
+     *
+     * @param future 原始future
+     * @return 原始future转换而成的completableFuture，scope结果确定时若其尚未完成将被取消
+     */
+    public CompletableFuture<T> fork(Future<T> future) {
+        return fork(future, deadlineNanos);
+    }
+
+    /**
+     * 在scope中提交一个future，并指定其自身的超时时刻，实际超时时刻不晚于scope的deadline
+     *
+     * @param future        原始future
+     * @param deadlineNanos future自身的超时时刻(System.nanoTime)
+     * @return 原始future转换而成的completableFuture，scope结果确定时若其尚未完成将被取消
+     */
+    public CompletableFuture<T> fork(Future<T> future, long deadlineNanos) {
+        Preconditions.checkArgument(future != null);
+        return fork(new FutureItem<>(future, capped(deadlineNanos), null, null, null));
+    }
+
+    /**
+     * 在scope中提交一个blocking item(如ProcessItem、ChannelItem等)；item原有的whenDone、whenError、whenTimeout及callbackExecutor将被scope替换，
+     * 其超时时刻将被限制为不晚于scope的deadline
+     *
+     * @param item blocking item
+     * @return 该item结果的completableFuture，scope结果确定时若其尚未完成将被取消
+     */
+    public CompletableFuture<T> fork(BlockingItem<T> item) {
+        Preconditions.checkArgument(item != null, "Blocking item cannot be null.");
+        item.setDeadlineNanos(capped(item.getDeadlineNanos()));
+        FuturesMultiplexer.checkDeadline(item.getDeadlineNanos());
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        synchronized (this) {
+            Preconditions.checkState(!sealed && !decided, "Scope has been joined or closed, cannot fork any more.");
+            forks.add(ret);
+        }
+        item.setWhenDone(ret::complete);
+        item.setWhenError(ret::completeExceptionally);
+        item.setWhenTimeout(FuturesMultiplexer.timeoutAction(ret, "Scoped item", item.getDeadlineNanos()));
+        item.setCallbackExecutor(FuturesMultiplexer.DIRECT_EXECUTOR);
+        ret.whenComplete((r, e) -> onForkCompleted(r, e));
+        try {
+            multiplexer.submit(item);
+        } catch (RuntimeException e) {
+            // 提交被拒绝(如FAIL_FAST或BLOCK超时)时，已登记的fork按失败结束，以免join永远等待
+            ret.completeExceptionally(e);
+            throw e;
+        }
+        // 被scope或调用方取消时，同时取消multiplexer中的item
+        ret.whenComplete((r, e) -> {
+            if (ret.isCancelled())
+                multiplexer.cancel(item);
+        });
+        return ret;
+    }
+
+    private long capped(long itemDeadlineNanos) {
+        return itemDeadlineNanos - deadlineNanos < 0 ? itemDeadlineNanos : deadlineNanos;
+    }
+
+    /**
+     * 结束fork，获取scope的整体结果；可多次调用，返回同一个结果
+     *
+     * @return 整体结果: ALL_SUCCEED为fork顺序的全部结果，FIRST_SUCCESS为只含首个结果的列表，QUORUM为按完成顺序的前quorum个结果
+     */
+    public CompletableFuture<List<T>> join() {
+        synchronized (this) {
+            if (!sealed) {
+                sealed = true;
+                evaluate();
+            }
+        }
+        cancelRemainingIfDecided();
+        return result;
+    }
+
+    /**
+     * 关闭scope: 不再接受fork，取消所有尚未完成的items；若整体结果尚未确定，则以CancellationException结束
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            sealed = true;
+            if (!decided)
+                decide(null, new CancellationException("Scope closed before decided."));
+        }
+        cancelRemainingIfDecided();
+    }
+
+    private void onForkCompleted(T value, Throwable error) {
+        synchronized (this) {
+            if (decided)
+                return;
+            if (error == null) {
+                successes.add(value);
+            } else {
+                failures++;
+                lastError = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                        : error;
+            }
+            evaluate();
+        }
+        cancelRemainingIfDecided();
+    }
+
+    // 根据当前状态判定整体结果，只在持有this锁时调用
+    private void evaluate() {
+        if (decided)
+            return;
+        int required = policy == ScopePolicy.ALL_SUCCEED ? forks.size() : quorum;
+        if (policy == ScopePolicy.ALL_SUCCEED && failures > 0) {
+            decide(null, lastError);
+        } else if (sealed && policy == ScopePolicy.ALL_SUCCEED && successes.size() == required) {
+            List<T> all = new ArrayList<>(forks.size());
+            for (CompletableFuture<T> f : forks)
+                all.add(f.join());
+            decide(all, null);
+        } else if (policy != ScopePolicy.ALL_SUCCEED && successes.size() >= required) {
+            decide(new ArrayList<>(successes.subList(0, required)), null);
+        } else if (sealed && failures > forks.size() - required) {
+            decide(null, lastError != null ? lastError : new IllegalStateException(String.format(
+                    "Not enough items forked in scope, required: %s, forked: %s.", required, forks.size())));
+        }
+    }
+
+    private void decide(List<T> value, Throwable error) {
+        decided = true;
+        decidedValue = value;
+        decidedError = error;
+    }
+
+    // 结果确定后先取消其余尚未完成的items，再发布整体结果，使调用方拿到结果时其余items均已被取消；
+    // 在锁外执行，避免取消时触发的回调与本scope的锁交织
+    private void cancelRemainingIfDecided() {
+        List<CompletableFuture<T>> remaining;
+        synchronized (this) {
+            if (!decided)
+                return;
+            remaining = new ArrayList<>(forks);
+        }
+        for (CompletableFuture<T> f : remaining) {
+            if (!f.isDone())
+                f.cancel(true);
+        }
+        if (decidedError != null)
+            result.completeExceptionally(decidedError);
+        else
+            result.complete(Collections.unmodifiableList(decidedValue));
+    }
+
+    /**
+     * @return scope的完成策略
+     */
+    public ScopePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return scope的deadline(System.nanoTime)
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+}
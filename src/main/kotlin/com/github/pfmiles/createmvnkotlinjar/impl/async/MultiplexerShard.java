@@ -0,0 +1,498 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ChannelItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * FuturesMultiplexer的一个分片，拥有独立的polling线程、item集合及超时时间轮，负责监控被分配到本分片的所有blocking items
+ * polling线程是一个阻塞在本分片所拥有的Selector上的event loop: 在下一次轮询时刻到来、注册的nio channel就绪或有新任务提交时被唤醒，
+ * 从而使channel类的items得到真正事件驱动的处理，其余items的轮询、完成通知及超时处理也在同一个线程中完成
+ *
+ * @author pf-miles
+ */
+class MultiplexerShard {
+    private static final Logger logger = LoggerFactory.getLogger(MultiplexerShard.class);
+
+    // 超时时间轮一圈的bucket数
+    private static final int WHEEL_SIZE = 512;
+    // 两次轮询之间的最小间隔
+    private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final long eventLoopInterval;
+    // 自适应轮询间隔模式
+    private final boolean adaptiveInterval;
+    private final long minInterval;
+    private final long maxInterval;
+    private final ExecutorService callbackExePool;
+    // 处理中items数的名额，item离开本分片时归还，null表示不限制
+    private final Semaphore inFlight;
+    private final MultiplexerMetrics metrics;
+
+    // 当前正在运行的blocking items及其本次提交的超时条目
+    private final Map<BlockingItem<?>, ItemDeadline> futures = new ConcurrentHashMap<>();
+    // 需要轮询isDone()的items，能够主动通知完成的items不在其中
+    private final Set<BlockingItem<?>> polledItems = Collections
+            .newSetFromMap(new ConcurrentHashMap<>());
+    // 已主动通知完成、等待polling线程处理的items
+    private final Queue<BlockingItem<?>> completions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean completionDrainScheduled = new AtomicBoolean();
+    // 已提交但尚未登记进超时时间轮的items或批次deadline，由polling线程取出登记
+    private final Queue<TimingWheel.Entry> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    // 以eventLoopInterval为tick的超时时间轮，每次轮询只访问deadline已过去的bucket，只在polling线程中访问
+    private final TimingWheel<TimingWheel.Entry> expirations;
+
+    // event loop线程，阻塞在selector上等待channel就绪、新任务或下一次轮询时刻
+    private final Thread pollingThread;
+    private final Selector selector;
+    // 提交给event loop线程执行的任务
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // 自event loop上次进入select以来是否已唤醒过selector，避免重复的wakeup系统调用
+    private final AtomicBoolean selectorWoken = new AtomicBoolean();
+    private volatile boolean closed;
+    // 已请求立即轮询但尚未执行
+    private final AtomicBoolean wakeupScheduled = new AtomicBoolean();
+    // 当前实际生效的轮询间隔ms
+    private volatile long effectiveInterval;
+    // 下一次排期轮询的预定时刻(System.nanoTime)，也用于统计轮询延迟
+    private volatile long nextPollingAt = System.nanoTime();
+    // 自上次轮询以来完成(含超时)的items数，只在polling线程中访问
+    private int completedSinceLastPolling;
+    // 预先创建的超时处理逻辑，避免每轮轮询都新建lambda对象
+    private final Consumer<TimingWheel.Entry> expireTask = this::onExpire;
+
+    MultiplexerShard(String name, FuturesMultiplexerConfig config, ExecutorService callbackExePool,
+                     Semaphore inFlight, MultiplexerMetrics metrics) {
+        this.name = name;
+        this.eventLoopInterval = config.getEventLoopInterval();
+        this.adaptiveInterval = config.isAdaptiveInterval();
+        this.minInterval = config.getMinEventLoopInterval();
+        this.maxInterval = config.getMaxEventLoopInterval();
+        this.effectiveInterval = adaptiveInterval ? minInterval : eventLoopInterval;
+        this.callbackExePool = callbackExePool;
+        this.inFlight = inFlight;
+        this.metrics = metrics;
+        this.expirations = new TimingWheel<>(TimeUnit.MILLISECONDS.toNanos(eventLoopInterval), WHEEL_SIZE,
+                System.nanoTime());
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open selector for " + name + ".", e);
+        }
+        this.pollingThread = new Thread(this::eventLoop, name);
+        this.pollingThread.start();
+    }
+
+    void submit(BlockingItem<?> item) {
+        ItemDeadline entry = new ItemDeadline(item);
+        boolean polled = track(entry);
+        pendingRegistrations.add(entry);
+        wakeupIfNeeded(polled, item.getDeadlineNanos());
+    }
+
+    /**
+     * 批量提交一批items，整批只登记一个共享的超时条目
+     */
+    void submitBatch(BatchDeadline batch) {
+        boolean polled = false;
+        for (BlockingItem<?> item : batch.items)
+            polled |= track(new ItemDeadline(item));
+        pendingRegistrations.add(batch);
+        wakeupIfNeeded(polled, batch.deadline);
+    }
+
+    /**
+     * 提前取消批次的共享超时条目，在整批items均已完成时调用
+     */
+    void cancelBatchDeadline(BatchDeadline batch) {
+        // 撤销可能先于登记执行，以标记防止其之后再被登记
+        batch.cancelled = true;
+        try {
+            execute(() -> expirations.remove(batch));
+        } catch (RejectedExecutionException e) {
+            // multiplexer已销毁
+        }
+    }
+
+    /**
+     * 取消并移除item，可在任意线程调用；与完成、超时处理竞争时只有一方生效
+     *
+     * @return item此前是否仍在本分片中
+     */
+    boolean cancel(BlockingItem<?> item) {
+        ItemDeadline entry = futures.remove(item);
+        if (entry == null)
+            return false;
+        polledItems.remove(item);
+        release();
+        metrics.onCancelled();
+        try {
+            execute(() -> expirations.remove(entry));
+        } catch (RejectedExecutionException e) {
+            // multiplexer已销毁
+        }
+        Runner.tryExec(() -> item.cancel(true));
+        Runner.tryExec(item::dispose);
+        return true;
+    }
+
+    // 将item纳入监控，返回其是否需要轮询；item仍在本分片中时拒绝重复提交
+    private boolean track(ItemDeadline entry) {
+        BlockingItem<?> item = entry.item;
+        if (futures.putIfAbsent(item, entry) != null) {
+            release();
+            throw new IllegalStateException("Blocking item has already been submitted and is still in flight: " + item);
+        }
+        if (item instanceof ChannelItem) {
+            // channel只能在event loop线程中注册到selector
+            ChannelItem channelItem = (ChannelItem) item;
+            try {
+                execute(() -> registerChannel(channelItem));
+            } catch (RejectedExecutionException e) {
+                // multiplexer已销毁
+            }
+            return false;
+        }
+        boolean polled = !item.listen(() -> notifyCompletion(item));
+        if (polled)
+            polledItems.add(item);
+        return polled;
+    }
+
+    private void wakeupIfNeeded(boolean polled, long deadline) {
+        // 自适应模式下轮询可能已退避到较长的间隔，新item需要轮询时收紧间隔，其deadline早于下次轮询时立即唤醒重新排期
+        if (adaptiveInterval) {
+            if (polled && effectiveInterval > minInterval) {
+                effectiveInterval = minInterval;
+                wakeup();
+            } else if (deadline - nextPollingAt < 0) {
+                wakeup();
+            }
+        }
+    }
+
+    long getEffectiveInterval() {
+        return effectiveInterval;
+    }
+
+    // 请求立即执行一次轮询，已有请求在途时不重复请求
+    private void wakeup() {
+        if (wakeupScheduled.compareAndSet(false, true))
+            wakeupSelector();
+    }
+
+    private void wakeupSelector() {
+        if (selectorWoken.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    // 提交任务到event loop线程执行，multiplexer销毁后抛出RejectedExecutionException
+    private void execute(Runnable task) {
+        if (closed)
+            throw new RejectedExecutionException(name + " has been shut down.");
+        tasks.add(task);
+        wakeupSelector();
+    }
+
+    private void eventLoop() {
+        while (!closed) {
+            try {
+                // 先复位唤醒标记再检查是否有待处理的工作，保证在此之后提交的任务一定能唤醒select
+                selectorWoken.set(false);
+                long delay = nextPollingAt - System.nanoTime();
+                int selected;
+                if (delay <= 0 || wakeupScheduled.get() || !tasks.isEmpty())
+                    selected = selector.selectNow();
+                else
+                    selected = selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay + 999_999)));
+                if (selected > 0)
+                    processSelectedKeys();
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll())
+                    task.run();
+                if (wakeupScheduled.get() || System.nanoTime() - nextPollingAt >= 0)
+                    pollingLoop();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Throwable e) {
+                if (e instanceof InterruptedException) {
+                    logger.info("{} interrupted, stopped polling.", name, e);
+                    break; // exit polling when interrupted
+                }
+                // polling loop never die except interrupt
+                logger.error("{} throws exception, ignored and continue polling.", name, e);
+            }
+        }
+    }
+
+    // 处理select到的已就绪channel
+    private void processSelectedKeys() throws InterruptedException {
+        Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+        while (iter.hasNext()) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            ChannelItem item = (ChannelItem) key.attachment();
+            if (!key.isValid())
+                continue;
+            item.ready(key.readyOps());
+            item.setDoneTime(System.nanoTime());
+            complete(item);
+        }
+    }
+
+    private void registerChannel(ChannelItem item) {
+        // 在注册前已完成超时、取消处理的item不再注册
+        if (!futures.containsKey(item))
+            return;
+        item.register(selector);
+        if (item.isDone()) {
+            // 注册失败
+            item.setDoneTime(System.nanoTime());
+            try {
+                complete(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int size() {
+        return futures.size();
+    }
+
+    private boolean anyPending(BatchDeadline batch) {
+        for (BlockingItem<?> item : batch.items)
+            if (futures.containsKey(item))
+                return true;
+        return false;
+    }
+
+    private void pollingLoop() throws InterruptedException {
+        wakeupScheduled.set(false);
+        long start = System.nanoTime();
+        // 被提前唤醒的轮询不计入延迟统计
+        long lag = start - nextPollingAt;
+        if (lag >= 0)
+            metrics.recordPollLag(lag);
+        try {
+            // 登记新提交的items到超时时间轮，已经在上一轮被处理掉的item不再登记
+            for (TimingWheel.Entry entry = pendingRegistrations.poll(); entry != null; entry = pendingRegistrations
+                    .poll()) {
+                if (entry instanceof BatchDeadline) {
+                    BatchDeadline batch = (BatchDeadline) entry;
+                    if (!batch.cancelled && anyPending(batch))
+                        expirations.add(batch, batch.deadline);
+                } else {
+                    ItemDeadline deadline = (ItemDeadline) entry;
+                    if (futures.get(deadline.item) == deadline)
+                        expirations.add(deadline, deadline.item.getDeadlineNanos());
+                }
+            }
+            drainCompletions();
+            if (!polledItems.isEmpty()) {
+                Iterator<BlockingItem<?>> iter = polledItems.iterator();
+                // 遍历处理done状态的item并从futures中删除
+                while (iter.hasNext()) {
+                    BlockingItem<?> item = iter.next();
+                    if (item.isDone()) {
+                        iter.remove();
+                        item.setDoneTime(System.nanoTime());
+                        complete(item);
+                    }
+                }
+            }
+            // 只访问deadline已过去的bucket来处理超时
+            expirations.advance(System.nanoTime(), expireTask);
+        } finally {
+            metrics.recordPollDuration(System.nanoTime() - start);
+            scheduleNextPolling();
+        }
+    }
+
+    private void scheduleNextPolling() {
+        long now = System.nanoTime();
+        long delay = TimeUnit.MILLISECONDS.toNanos(this.eventLoopInterval);
+        if (adaptiveInterval) {
+            // 有完成则收紧间隔，无完成(含空集合)则指数退避
+            long interval = completedSinceLastPolling > 0 ? Math.max(minInterval, effectiveInterval / 2)
+                    : Math.min(maxInterval, effectiveInterval * 2);
+            effectiveInterval = interval;
+            // 直接跳到最近的deadline，不早于其所在tick被处理的时刻
+            delay = Math.max(MIN_DELAY_NANOS, expirations.nextExpirationTime(now,
+                    now + TimeUnit.MILLISECONDS.toNanos(interval)) - now);
+        }
+        completedSinceLastPolling = 0;
+        nextPollingAt = now + delay;
+    }
+
+    // 在polling线程中处理所有已通知完成的items
+    private void drainCompletions() throws InterruptedException {
+        completionDrainScheduled.set(false);
+        for (BlockingItem<?> item = completions.poll(); item != null; item = completions.poll())
+            complete(item);
+    }
+
+    // 完成通知，可能在任意线程被调用：入队后唤醒polling线程处理，已有唤醒在途时不重复唤醒
+    private void notifyCompletion(BlockingItem<?> item) {
+        item.setDoneTime(System.nanoTime());
+        completions.add(item);
+        if (completionDrainScheduled.compareAndSet(false, true)) {
+            try {
+                execute(() -> {
+                    try {
+                        drainCompletions();
+                    } catch (Throwable e) {
+                        logger.error("{} failed to handle completed items.", name, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // multiplexer已销毁
+            }
+        }
+    }
+
+    // 完成: 包含抛错或正常完成两种情况
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void complete(BlockingItem item) throws InterruptedException {
+        ItemDeadline entry = futures.remove(item);
+        if (entry == null)
+            return;
+        release();
+        completedSinceLastPolling++;
+        try {
+            expirations.remove(entry);
+            Object rst;
+            try {
+                rst = item.getResult();
+            } catch (CancellationException | ExecutionException ee) {
+                // 业务上的取消或抛错
+                metrics.onError();
+                if (item.getWhenError() != null) {
+                    dispatch(item, () -> {
+                        item.getWhenError().accept(ee);
+                    });
+                }
+                return;
+            }
+            // 正常返回了值
+            metrics.onCompleted();
+            if (item.getWhenDone() != null) {
+                dispatch(item, () -> {
+                    item.getWhenDone().accept(rst);
+                });
+            }
+        } finally {
+            Runner.tryExec(item::dispose);
+        }
+    }
+
+    private void onExpire(TimingWheel.Entry entry) {
+        if (entry instanceof BatchDeadline) {
+            for (BlockingItem<?> item : ((BatchDeadline) entry).items)
+                expire(item);
+        } else {
+            expire(((ItemDeadline) entry).item);
+        }
+    }
+
+    // 超时
+    private void expire(BlockingItem<?> item) {
+        if (futures.remove(item) == null)
+            return;
+        polledItems.remove(item);
+        release();
+        completedSinceLastPolling++;
+        metrics.onTimeout();
+        item.setDoneTime(System.nanoTime());
+        item.cancel(true);
+        if (item.getWhenTimeout() != null) {
+            dispatch(item, () -> {
+                item.getWhenTimeout().run();
+            });
+        }
+        Runner.tryExec(item::dispose);
+    }
+
+    private void release() {
+        if (inFlight != null)
+            inFlight.release();
+    }
+
+    // 提交回调到item指定的executor(未指定时为回调线程池)；executor拒绝时不丢弃，而是以该RejectedExecutionException
+    // 在event loop线程中回调whenError使item以失败结束，completableFuture适配器、BatchHandle及scope因此总能结束；
+    // DIRECT_EXECUTOR则直接在event loop线程中执行，省去一次入队及线程唤醒，回调抛错只记录日志
+    private void dispatch(BlockingItem<?> item, Runnable callback) {
+        long doneTime = item.getDoneTime();
+        Executor executor = item.getCallbackExecutor();
+        if (executor == FuturesMultiplexer.DIRECT_EXECUTOR) {
+            metrics.recordCallbackLatency(System.nanoTime() - doneTime);
+            Runner.tryExec(callback);
+            return;
+        }
+        try {
+            (executor != null ? executor : callbackExePool).execute(() -> {
+                metrics.recordCallbackLatency(System.nanoTime() - doneTime);
+                callback.run();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("{} callback rejected by the callback executor, failing the item with the rejection.", name, e);
+            Consumer<Throwable> whenError = item.getWhenError();
+            if (whenError != null)
+                Runner.tryExec(() -> whenError.accept(e));
+        }
+    }
+
+    void shutdown() {
+        closed = true;
+        selector.wakeup();
+        try {
+            pollingThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pollingThread.isAlive())
+            pollingThread.interrupt();
+        Runner.tryExec(() -> {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    void destroyItems() {
+        this.futures.keySet().forEach(fi -> fi.cancel(true));
+        this.futures.keySet().forEach(BlockingItem::dispose);
+        if (inFlight != null)
+            inFlight.release(this.futures.size());
+        this.futures.clear();
+        this.polledItems.clear();
+        this.completions.clear();
+        this.pendingRegistrations.clear();
+        this.tasks.clear();
+    }
+}
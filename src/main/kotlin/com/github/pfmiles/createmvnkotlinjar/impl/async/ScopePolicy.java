@@ -0,0 +1,21 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+/**
+ * MultiplexerScope的完成策略，一旦策略得出结论，scope中其余尚未完成的items将被立即取消
+ *
+ * @author pf-miles
+ */
+public enum ScopePolicy {
+    /**
+     * 所有items均正常完成才算成功，以fork顺序返回全部结果；任一item抛错、超时即失败
+     */
+    ALL_SUCCEED,
+    /**
+     * 最先正常完成的item即为结果；所有items都抛错、超时才失败
+     */
+    FIRST_SUCCESS,
+    /**
+     * 最先正常完成的quorum个items即为结果，按完成顺序返回；剩余items已不足以凑满quorum个时失败
+     */
+    QUORUM
+}
@@ -0,0 +1,216 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.google.common.base.Preconditions;
+
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮(hashed timing wheel)，用于索引大量带deadline的条目，注册、取消和到期处理均为O(1)操作
+ * 时间轮由ticksPerWheel个bucket组成，每个bucket代表tickDuration长的一段时间；deadline落在同一bucket但不在本圈的条目以remainingRounds区分
+ * 每次advance只会访问deadline已过去的那些bucket，而不必遍历全部条目
+ * 时刻之间只以差值比较，因此可直接使用可能溢出回绕的System.nanoTime值作为时间基准
+ * 注意: 本类非线程安全，只应在单一线程(如multiplexer的event loop线程)中使用
+ *
+ * @param <E> 时间轮中的条目类型
+ * @author pf-miles
+ */
+public class TimingWheel<E extends TimingWheel.Entry> {
+
+    /**
+     * 时间轮中的条目，链表指针直接内嵌在条目中，注册、取消时无需额外分配内存
+     */
+    public static abstract class Entry {
+        private long deadline;
+        private long remainingRounds;
+        private int bucket = -1;
+        private Entry prev;
+        private Entry next;
+        // 到期处理时串联到期条目用
+        private Entry nextExpired;
+
+        /**
+         * @return 当前是否已注册在某个时间轮中
+         */
+        public final boolean isScheduled() {
+            return bucket != -1;
+        }
+    }
+
+    private final long tickDuration;
+    private final long startTime;
+    private final int mask;
+    private final Entry[] heads;
+    private final Entry[] tails;
+    // 各bucket中将在本圈到期(remainingRounds为0)的条目数，用于快速定位最近的到期时刻
+    private final int[] dueCounts;
+    // 下一个待处理的tick
+    private long tick;
+    private int size;
+
+    /**
+     * 创建时间轮
+     *
+     * @param tickDuration  每个tick的时长，与deadline使用相同的时间单位
+     * @param ticksPerWheel 一圈的bucket数，将被向上取整为2的幂
+     * @param startTime     时间轮的起始时刻，与deadline使用相同的时间单位
+     */
+    public TimingWheel(long tickDuration, int ticksPerWheel, long startTime) {
+        Preconditions.checkArgument(tickDuration > 0, "tickDuration must be greater than 0.");
+        Preconditions.checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30,
+                "ticksPerWheel must be in (0, 2^30].");
+        int n = 1;
+        while (n < ticksPerWheel)
+            n <<= 1;
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        this.mask = n - 1;
+        this.heads = new Entry[n];
+        this.tails = new Entry[n];
+        this.dueCounts = new int[n];
+    }
+
+    /**
+     * 将条目以指定的deadline注册进时间轮，若该条目已注册则先将其取消
+     *
+     * @param item     条目
+     * @param deadline 到期时刻
+     */
+    public void add(E item, long deadline) {
+        Entry entry = item;
+        if (entry.isScheduled())
+            unlink(entry);
+        long calculated = (deadline - startTime) / tickDuration;
+        // 已经过期的条目放入当前tick，在下次advance时立即到期
+        long ticks = Math.max(calculated, tick);
+        entry.deadline = deadline;
+        entry.remainingRounds = (ticks - tick) / heads.length;
+        int idx = (int) (ticks & mask);
+        entry.bucket = idx;
+        entry.next = null;
+        entry.prev = tails[idx];
+        if (tails[idx] == null)
+            heads[idx] = entry;
+        else
+            tails[idx].next = entry;
+        tails[idx] = entry;
+        if (entry.remainingRounds == 0)
+            dueCounts[idx]++;
+        size++;
+    }
+
+    /**
+     * 从时间轮中取消条目，若条目未注册则什么也不做
+     *
+     * @param entry 条目
+     * @return 条目此前是否已注册
+     */
+    public boolean remove(E entry) {
+        return unlink(entry);
+    }
+
+    private boolean unlink(Entry entry) {
+        int idx = entry.bucket;
+        if (idx == -1)
+            return false;
+        if (entry.prev == null)
+            heads[idx] = entry.next;
+        else
+            entry.prev.next = entry.next;
+        if (entry.next == null)
+            tails[idx] = entry.prev;
+        else
+            entry.next.prev = entry.prev;
+        if (entry.remainingRounds <= 0)
+            dueCounts[idx]--;
+        entry.prev = null;
+        entry.next = null;
+        entry.bucket = -1;
+        size--;
+        return true;
+    }
+
+    /**
+     * 将时间轮推进到now，依次处理所有已过去的tick，对其中到期的条目调用onExpire；
+     * 到期条目在onExpire被调用前已从时间轮中移除，onExpire中可以安全地注册或取消其它条目
+     *
+     * @param now      当前时刻
+     * @param onExpire 条目到期处理逻辑
+     * @return 本次到期的条目数
+     */
+    @SuppressWarnings("unchecked")
+    public int advance(long now, Consumer<? super E> onExpire) {
+        int expired = 0;
+        while (now - (startTime + (tick + 1) * tickDuration) >= 0) {
+            // 先将到期条目从bucket中摘下，串成单链表，遍历完成后再逐个回调，避免回调修改正在遍历的bucket
+            int idx = (int) (tick & mask);
+            Entry expiredHead = null;
+            Entry e = heads[idx];
+            while (e != null) {
+                Entry next = e.next;
+                if (e.remainingRounds <= 0 && e.deadline - now <= 0) {
+                    unlink(e);
+                    e.nextExpired = expiredHead;
+                    expiredHead = e;
+                } else if (e.remainingRounds > 0) {
+                    if (--e.remainingRounds == 0)
+                        dueCounts[idx]++;
+                }
+                e = next;
+            }
+            tick++;
+            while (expiredHead != null) {
+                Entry next = expiredHead.nextExpired;
+                expiredHead.nextExpired = null;
+                expired++;
+                onExpire.accept((E) expiredHead);
+                expiredHead = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 查找最近一个含有到期条目的tick将被处理的时刻，即最早需要再次调用advance的时刻；最多查找一圈
+     *
+     * @param now   当前时刻
+     * @param limit 查找上限时刻，超过此时刻不再查找
+     * @return 最近需要advance的时刻，不超过limit
+     */
+    public long nextExpirationTime(long now, long limit) {
+        for (long t = tick; t - tick <= mask; t++) {
+            long processAt = startTime + (t + 1) * tickDuration;
+            if (processAt - limit >= 0)
+                return limit;
+            if (dueCounts[(int) (t & mask)] > 0)
+                return processAt - now > 0 ? processAt : now;
+        }
+        return limit;
+    }
+
+    /**
+     * @return 当前注册在时间轮中的条目数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 清空时间轮
+     */
+    public void clear() {
+        for (int i = 0; i < heads.length; i++) {
+            Entry e = heads[i];
+            while (e != null) {
+                Entry next = e.next;
+                e.prev = null;
+                e.next = null;
+                e.bucket = -1;
+                e = next;
+            }
+            heads[i] = null;
+            tails[i] = null;
+            dueCounts[i] = 0;
+        }
+        size = 0;
+    }
+}
@@ -2,35 +2,73 @@ package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
 
 import java.util.Date;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * 代表一个阻塞的任务，比如java.concurrent.Future或子进程Process等
+ * 超时时刻以单调时钟System.nanoTime的long值表示，不受系统时钟调整影响，且判定超时时无需分配对象；Date形式的超时时间仅作为兼容的适配方式保留
  * 
  * @author pf-miles
  * <p>
  * 2022-09-27 16:01
  */
 public abstract class BlockingItem<T> {
-    private Date                expire;
+    // 超时时刻(System.nanoTime)
+    private long                deadlineNanos;
     private Consumer<T>         whenDone;
     private Consumer<Throwable> whenError;
     private Runnable            whenTimeout;
+    // 执行whenDone/whenError/whenTimeout回调的executor，null表示使用multiplexer的回调线程池
+    private Executor            callbackExecutor;
+    // 完成(含抛错、超时)被multiplexer感知的时刻(System.nanoTime)，由multiplexer设置，用于统计回调延迟
+    private volatile long       doneTime;
 
-    public BlockingItem(Date expire, Consumer<T> whenDone, Consumer<Throwable> whenError,
+    public BlockingItem(long deadlineNanos, Consumer<T> whenDone, Consumer<Throwable> whenError,
                         Runnable whenTimeout) {
-        this.expire = expire;
+        this.deadlineNanos = deadlineNanos;
         this.whenDone = whenDone;
         this.whenError = whenError;
         this.whenTimeout = whenTimeout;
     }
 
+    public BlockingItem(Date expire, Consumer<T> whenDone, Consumer<Throwable> whenError,
+                        Runnable whenTimeout) {
+        this(toDeadlineNanos(expire), whenDone, whenError, whenTimeout);
+    }
+
+    /**
+     * 将以墙上时钟表示的超时时刻换算为System.nanoTime时刻
+     *
+     * @param expire 超时时刻
+     * @return 对应的System.nanoTime时刻
+     */
+    public static long toDeadlineNanos(Date expire) {
+        if (expire == null)
+            throw new IllegalArgumentException("Blocking item must have an expire date.");
+        return System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(expire.getTime() - System.currentTimeMillis());
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public void setDeadlineNanos(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return 以墙上时钟表示的超时时刻，由deadlineNanos换算而来，每次调用都会新建Date对象
+     */
     public Date getExpire() {
-        return expire;
+        return new Date(System.currentTimeMillis()
+                + TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
     }
 
     public void setExpire(Date expire) {
-        this.expire = expire;
+        this.deadlineNanos = toDeadlineNanos(expire);
     }
 
     public Consumer<T> getWhenDone() {
@@ -57,8 +95,36 @@ public abstract class BlockingItem<T> {
         this.whenTimeout = whenTimeout;
     }
 
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public long getDoneTime() {
+        return doneTime;
+    }
+
+    public void setDoneTime(long doneTime) {
+        this.doneTime = doneTime;
+    }
+
     public abstract boolean isDone();
 
+    /**
+     * 尝试为该item注册完成通知，使multiplexer无需轮询isDone()即可得知其完成；
+     * 若item完成时(含抛错、取消)能够主动通知，则注册onCompletion并返回true，否则返回false，此时multiplexer将回退为轮询模式
+     * 若注册时item已经完成，onCompletion可能被立即调用
+     *
+     * @param onCompletion 完成通知逻辑，可能在任意线程被调用，应足够轻量
+     * @return 是否成功注册了完成通知
+     */
+    public boolean listen(Runnable onCompletion) {
+        return false;
+    }
+
     public abstract T getResult() throws ExecutionException, InterruptedException;
 
     public abstract void cancel(boolean mayInterrupt);
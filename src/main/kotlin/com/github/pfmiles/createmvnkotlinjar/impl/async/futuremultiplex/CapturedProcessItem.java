@@ -0,0 +1,74 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 代表一个捕获输出的子进程: 被multiplexer监控期间由共享的搬运线程持续搬运其stdout、stderr的输出，完成时以exit code及输出尾部作为结果
+ *
+ * @author pf-miles
+ */
+public class CapturedProcessItem extends BlockingItem<ProcessResult> {
+    private final ProcessItem process;
+    private final ProcessOutputCapture capture;
+
+    public CapturedProcessItem(Process process, ProcessOutputCapture capture, long deadlineNanos,
+                               Consumer<ProcessResult> whenDone, Consumer<Throwable> whenError,
+                               Runnable whenTimeout) {
+        super(deadlineNanos, whenDone, whenError, whenTimeout);
+        Preconditions.checkArgument(capture != null, "Output capture cannot be null.");
+        capture.bind(process);
+        this.process = new ProcessItem(process, deadlineNanos, null, null, null);
+        this.capture = capture;
+    }
+
+    @Override
+    public boolean listen(Runnable onCompletion) {
+        // 被multiplexer纳入监控时注册，开始搬运输出，dispose时停止
+        ProcessOutputPump.register(process.getProcess(), capture);
+        return process.listen(onCompletion);
+    }
+
+    @Override
+    public boolean isDone() {
+        return process.isDone();
+    }
+
+    @Override
+    public ProcessResult getResult() throws ExecutionException, InterruptedException {
+        int exitCode = process.getResult();
+        // 进程已退出，停止共享搬运并搬运管道中剩余的输出
+        ProcessOutputPump.unregister(process.getProcess());
+        capture.pump(process.getProcess());
+        return new ProcessResult(exitCode, capture.getStdoutTail(), capture.getStderrTail());
+    }
+
+    @Override
+    public void cancel(boolean mayInterrupt) {
+        process.cancel(mayInterrupt);
+    }
+
+    @Override
+    public void dispose() {
+        ProcessOutputPump.unregister(process.getProcess());
+        process.dispose();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        CapturedProcessItem that = (CapturedProcessItem) o;
+        return process.equals(that.process);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(process);
+    }
+}
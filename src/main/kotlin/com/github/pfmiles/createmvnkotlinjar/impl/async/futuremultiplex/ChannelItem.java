@@ -0,0 +1,111 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 代表一个等待就绪的nio SelectableChannel(如SocketChannel、Pipe.SourceChannel等)，
+ * 由multiplexer event loop所拥有的Selector感知其就绪，而无需轮询；channel必须已设置为非阻塞模式
+ * 完成时的结果为就绪的操作集(SelectionKey.OP_READ等)；超时或被取消时channel将被关闭，正常就绪时channel保持打开，由回调逻辑继续读写
+ *
+ * @author pf-miles
+ */
+public class ChannelItem extends BlockingItem<Integer> {
+    private final SelectableChannel channel;
+    // 所等待的就绪操作集
+    private final int interestOps;
+    // 在selector上的注册，只在event loop线程中设置
+    private volatile SelectionKey key;
+    // 已就绪的操作集，0表示尚未就绪
+    private volatile int readyOps;
+    // 注册到selector失败时的错误
+    private volatile Throwable failure;
+
+    public ChannelItem(SelectableChannel channel, int interestOps, long deadlineNanos,
+                       Consumer<Integer> whenDone, Consumer<Throwable> whenError, Runnable whenTimeout) {
+        super(deadlineNanos, whenDone, whenError, whenTimeout);
+        Preconditions.checkArgument(channel != null);
+        Preconditions.checkArgument(!channel.isBlocking(), "Channel must be in non-blocking mode.");
+        Preconditions.checkArgument(interestOps != 0 && (interestOps & ~channel.validOps()) == 0,
+                "Illegal interest ops: %s, valid ops of the channel: %s.", interestOps, channel.validOps());
+        this.channel = channel;
+        this.interestOps = interestOps;
+    }
+
+    public SelectableChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * 将channel注册到selector上，以本item作为attachment；只应在selector所属的event loop线程中调用
+     *
+     * @param selector multiplexer event loop所拥有的selector
+     */
+    public void register(Selector selector) {
+        try {
+            this.key = channel.register(selector, interestOps, this);
+        } catch (IOException | RuntimeException e) {
+            this.failure = e;
+        }
+    }
+
+    /**
+     * 标记channel已就绪，由event loop在select到该channel时调用
+     *
+     * @param readyOps 就绪的操作集
+     */
+    public void ready(int readyOps) {
+        this.readyOps = readyOps;
+    }
+
+    @Override
+    public boolean isDone() {
+        return readyOps != 0 || failure != null;
+    }
+
+    @Override
+    public Integer getResult() throws ExecutionException, InterruptedException {
+        if (failure != null)
+            throw new ExecutionException(failure);
+        return readyOps;
+    }
+
+    @Override
+    public void cancel(boolean mayInterrupt) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignored...
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 只取消在selector上的注册，channel由使用方继续读写或关闭
+        SelectionKey k = this.key;
+        if (k != null)
+            k.cancel();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        ChannelItem that = (ChannelItem) o;
+        return channel.equals(that.channel);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(channel);
+    }
+}
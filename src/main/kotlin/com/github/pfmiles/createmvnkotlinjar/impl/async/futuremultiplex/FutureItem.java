@@ -2,26 +2,50 @@ package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
 
 import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.Date;
 import java.util.Objects;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 /**
+ * 代表一个java.util.concurrent.Future;
+ * 若future本身是CompletionStage(如CompletableFuture)或guava的ListenableFuture，或者额外指定了completionSignal，则以完成通知的方式感知其完成，否则由multiplexer轮询
+ *
  * @author pf-miles
  * <p>
  * 2022-11-15 19:16
  */
 public class FutureItem<T> extends BlockingItem<T> {
     private final Future<T> future;
+    // 外部提供的完成信号，在future完成(含抛错、取消)时必须随之完成，用于本身不支持注册回调的future(如httpclient的BasicFuture)
+    private final CompletionStage<?> completionSignal;
 
     public FutureItem(Future<T> future, Date expire, Consumer<T> whenDone,
                       Consumer<Throwable> whenError, Runnable whenTimeout) {
-        super(expire, whenDone, whenError, whenTimeout);
+        this(future, null, toDeadlineNanos(expire), whenDone, whenError, whenTimeout);
+    }
+
+    public FutureItem(Future<T> future, CompletionStage<?> completionSignal, Date expire,
+                      Consumer<T> whenDone, Consumer<Throwable> whenError, Runnable whenTimeout) {
+        this(future, completionSignal, toDeadlineNanos(expire), whenDone, whenError, whenTimeout);
+    }
+
+    public FutureItem(Future<T> future, long deadlineNanos, Consumer<T> whenDone,
+                      Consumer<Throwable> whenError, Runnable whenTimeout) {
+        this(future, null, deadlineNanos, whenDone, whenError, whenTimeout);
+    }
+
+    public FutureItem(Future<T> future, CompletionStage<?> completionSignal, long deadlineNanos,
+                      Consumer<T> whenDone, Consumer<Throwable> whenError, Runnable whenTimeout) {
+        super(deadlineNanos, whenDone, whenError, whenTimeout);
         Preconditions.checkArgument(future != null);
         this.future = future;
+        this.completionSignal = completionSignal;
     }
 
     @Override
@@ -29,6 +53,24 @@ public class FutureItem<T> extends BlockingItem<T> {
         return this.future.isDone();
     }
 
+    @Override
+    public boolean listen(Runnable onCompletion) {
+        if (this.completionSignal != null) {
+            this.completionSignal.whenComplete((r, e) -> onCompletion.run());
+            return true;
+        }
+        if (this.future instanceof CompletionStage) {
+            ((CompletionStage<?>) this.future).whenComplete((r, e) -> onCompletion.run());
+            return true;
+        }
+        if (this.future instanceof ListenableFuture) {
+            ((ListenableFuture<?>) this.future).addListener(onCompletion,
+                    MoreExecutors.directExecutor());
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public T getResult() throws ExecutionException, InterruptedException {
         return this.future.get();
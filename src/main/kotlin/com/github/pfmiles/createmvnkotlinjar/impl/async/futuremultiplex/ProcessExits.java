@@ -0,0 +1,24 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+/**
+ * 子进程退出通知: Java 8的Process不支持注册退出回调，因此总是返回false，由multiplexer轮询isAlive()；
+ * 在JDK 9+上运行时，将由multi-release jar中META-INF/versions/9下的同名类取代，改用Process.onExit()注册回调
+ *
+ * @author pf-miles
+ */
+final class ProcessExits {
+
+    private ProcessExits() {
+    }
+
+    /**
+     * 尝试为子进程注册退出回调
+     *
+     * @param process 子进程
+     * @param onExit  退出回调
+     * @return 是否注册成功
+     */
+    static boolean listen(Process process, Runnable onExit) {
+        return false;
+    }
+}
@@ -8,6 +8,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 /**
+ * 代表一个子进程; 在JDK 9+上以Process.onExit()感知其退出，Java 8下由multiplexer轮询isAlive()
+ *
  * @author pf-miles
  * <p>
  * 2022-11-15 20:34
@@ -17,16 +19,30 @@ public class ProcessItem extends BlockingItem<Integer> {
 
     public ProcessItem(Process process, Date expire, Consumer<Integer> whenDone,
                        Consumer<Throwable> whenError, Runnable whenTimeout) {
-        super(expire, whenDone, whenError, whenTimeout);
+        this(process, toDeadlineNanos(expire), whenDone, whenError, whenTimeout);
+    }
+
+    public ProcessItem(Process process, long deadlineNanos, Consumer<Integer> whenDone,
+                       Consumer<Throwable> whenError, Runnable whenTimeout) {
+        super(deadlineNanos, whenDone, whenError, whenTimeout);
         Preconditions.checkArgument(process != null);
         this.process = process;
     }
 
+    public Process getProcess() {
+        return process;
+    }
+
     @Override
     public boolean isDone() {
         return !process.isAlive();
     }
 
+    @Override
+    public boolean listen(Runnable onCompletion) {
+        return ProcessExits.listen(process, onCompletion);
+    }
+
     @Override
     public Integer getResult() throws ExecutionException, InterruptedException {
         return process.waitFor();
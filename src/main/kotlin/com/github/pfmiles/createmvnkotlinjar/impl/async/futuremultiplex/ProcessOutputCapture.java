@@ -0,0 +1,145 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 子进程stdout/stderr的捕获方式: 输出由所有子进程共享的搬运线程以不阻塞的方式持续搬运(每次读到管道为空为止)，
+ * 写入可选的sink，同时在有界的环形缓冲中保留最近的输出尾部；无需为每个子进程启动专门的读取线程
+ * 可通过FuturesMultiplexer.submitProcess异步等待子进程结束，或直接调用waitFor同步等待
+ * 注意: sink的写入在共享的搬运线程中进行，不应阻塞过久；一个capture只能用于一个子进程，不能在多个子进程间复用
+ *
+ * @author pf-miles
+ */
+public class ProcessOutputCapture {
+    // 每次搬运使用的读缓冲大小
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final TailBuffer stdoutTail;
+    private final TailBuffer stderrTail;
+    // stdout/stderr输出的转发目标，为null则只保留尾部
+    private final OutputStream stdoutSink;
+    private final OutputStream stderrSink;
+    // 将尾部解码为字符串时使用的字符集
+    private final Charset charset;
+    // 读缓冲，只在搬运时使用，首次搬运时创建
+    private byte[] readBuffer;
+    // 该capture所属的子进程，首次使用时绑定
+    private Process process;
+
+    /**
+     * 只保留尾部，不转发输出
+     *
+     * @param tailCapacity stdout、stderr各自保留的尾部字节数
+     */
+    public ProcessOutputCapture(int tailCapacity) {
+        this(tailCapacity, null, null, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param tailCapacity stdout、stderr各自保留的尾部字节数
+     * @param stdoutSink   stdout的转发目标，可为null
+     * @param stderrSink   stderr的转发目标，可为null
+     * @param charset      将尾部解码为字符串时使用的字符集
+     */
+    public ProcessOutputCapture(int tailCapacity, OutputStream stdoutSink, OutputStream stderrSink,
+                                Charset charset) {
+        Preconditions.checkArgument(charset != null, "Charset cannot be null.");
+        this.stdoutTail = new TailBuffer(tailCapacity);
+        this.stderrTail = new TailBuffer(tailCapacity);
+        this.stdoutSink = stdoutSink;
+        this.stderrSink = stderrSink;
+        this.charset = charset;
+    }
+
+    /**
+     * 同步等待子进程结束，期间由共享的搬运线程搬运其输出，结束后搬运管道中剩余的输出
+     *
+     * @param process 子进程，其输出流不应再被其它地方读取
+     * @return exit code及输出尾部
+     */
+    public ProcessResult waitFor(Process process) throws InterruptedException {
+        Preconditions.checkArgument(process != null);
+        bind(process);
+        int exitCode;
+        ProcessOutputPump.register(process, this);
+        try {
+            exitCode = process.waitFor();
+        } finally {
+            ProcessOutputPump.unregister(process);
+        }
+        pump(process);
+        return new ProcessResult(exitCode, getStdoutTail(), getStderrTail());
+    }
+
+    /**
+     * 将capture绑定到子进程；各子进程的输出会写入同一组尾部缓冲及sink，因此不允许将已绑定的capture用于另一个子进程
+     *
+     * @throws IllegalStateException capture已被用于另一个子进程
+     */
+    synchronized void bind(Process process) {
+        if (this.process == null)
+            this.process = process;
+        else if (this.process != process)
+            throw new IllegalStateException("Output capture is already bound to another process: " + this.process
+                    + ", create a new one for each process.");
+    }
+
+    /**
+     * 搬运子进程stdout、stderr中已到达的输出，读到管道为空为止，不会阻塞
+     *
+     * @param process 子进程
+     * @return 是否搬运了输出
+     */
+    synchronized boolean pump(Process process) {
+        if (readBuffer == null)
+            readBuffer = new byte[READ_BUFFER_SIZE];
+        boolean moved = drain(process.getInputStream(), stdoutTail, stdoutSink);
+        return drain(process.getErrorStream(), stderrTail, stderrSink) || moved;
+    }
+
+    private boolean drain(InputStream in, TailBuffer tail, OutputStream sink) {
+        boolean moved = false;
+        try {
+            int available;
+            while ((available = in.available()) > 0) {
+                int n = in.read(readBuffer, 0, Math.min(available, readBuffer.length));
+                if (n <= 0)
+                    break;
+                moved = true;
+                tail.write(readBuffer, 0, n);
+                if (sink != null) {
+                    try {
+                        sink.write(readBuffer, 0, n);
+                    } catch (IOException e) {
+                        // sink出错不影响尾部的捕获
+                    }
+                }
+            }
+            if (moved && sink != null)
+                sink.flush();
+        } catch (IOException e) {
+            // 流已关闭
+        }
+        return moved;
+    }
+
+    /**
+     * @return 目前捕获到的stdout尾部
+     */
+    public synchronized String getStdoutTail() {
+        return stdoutTail.toString(charset);
+    }
+
+    /**
+     * @return 目前捕获到的stderr尾部
+     */
+    public synchronized String getStderrTail() {
+        return stderrTail.toString(charset);
+    }
+}
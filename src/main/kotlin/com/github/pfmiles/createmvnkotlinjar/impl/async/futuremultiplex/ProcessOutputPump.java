@@ -0,0 +1,78 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 所有捕获输出的子进程共享的输出搬运线程: 一个常驻的守护线程持续轮转搬运各子进程stdout、stderr中已到达的输出，每次都读到管道为空为止；
+ * 某一轮有输出时立即开始下一轮，无输出时休眠的间隔逐步退避至MAX_IDLE_NANOS，没有子进程时挂起，
+ * 因此无论子进程数多少都只需这一个线程，且输出量大的子进程也不会因管道写满而长时间阻塞；
+ * 长时间无输出时该线程每MAX_IDLE_NANOS才唤醒一次而不会空转，代价是输出的转发延迟最多约为MAX_IDLE_NANOS
+ * 注意: sink的写入在该线程中进行，不应阻塞过久
+ *
+ * @author pf-miles
+ */
+final class ProcessOutputPump {
+    private static final Logger logger = LoggerFactory.getLogger(ProcessOutputPump.class);
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // 正在搬运输出的子进程及其capture，以子进程为key
+    private static final Map<Process, ProcessOutputCapture> captures = new ConcurrentHashMap<>();
+    private static final Thread pumpThread = createPumpThread();
+
+    private ProcessOutputPump() {
+    }
+
+    private static Thread createPumpThread() {
+        Thread t = new Thread(ProcessOutputPump::pumpLoop, "process-output-pump");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * 开始持续搬运子进程的输出到capture中
+     */
+    static void register(Process process, ProcessOutputCapture capture) {
+        captures.put(process, capture);
+        LockSupport.unpark(pumpThread);
+    }
+
+    /**
+     * 停止搬运；已在进行中的一次搬运可能仍会完成，但capture的搬运是同步的，不会与调用方随后的搬运交错
+     */
+    static void unregister(Process process) {
+        captures.remove(process);
+    }
+
+    private static void pumpLoop() {
+        long idle = MIN_IDLE_NANOS;
+        while (true) {
+            if (captures.isEmpty()) {
+                LockSupport.park();
+                idle = MIN_IDLE_NANOS;
+                continue;
+            }
+            boolean moved = false;
+            for (Map.Entry<Process, ProcessOutputCapture> e : captures.entrySet()) {
+                try {
+                    moved |= e.getValue().pump(e.getKey());
+                } catch (Throwable t) {
+                    logger.warn("Failed to pump output of process: {}, ignored.", e.getKey(), t);
+                }
+            }
+            if (moved) {
+                idle = MIN_IDLE_NANOS;
+            } else {
+                LockSupport.parkNanos(idle);
+                idle = Math.min(idle * 2, MAX_IDLE_NANOS);
+            }
+        }
+    }
+}
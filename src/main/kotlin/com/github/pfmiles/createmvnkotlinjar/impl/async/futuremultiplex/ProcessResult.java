@@ -0,0 +1,37 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+/**
+ * 捕获了输出的子进程的执行结果
+ *
+ * @author pf-miles
+ */
+public class ProcessResult {
+    private final int exitCode;
+    // 子进程stdout、stderr输出的尾部
+    private final String stdoutTail;
+    private final String stderrTail;
+
+    public ProcessResult(int exitCode, String stdoutTail, String stderrTail) {
+        this.exitCode = exitCode;
+        this.stdoutTail = stdoutTail;
+        this.stderrTail = stderrTail;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public String getStdoutTail() {
+        return stdoutTail;
+    }
+
+    public String getStderrTail() {
+        return stderrTail;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessResult{exitCode=" + exitCode + ", stdoutTail='" + stdoutTail + "', stderrTail='"
+                + stderrTail + "'}";
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.charset.Charset;
+
+/**
+ * 有界的字节环形缓冲，只保留最近写入的capacity个字节，用于保存子进程输出的尾部
+ *
+ * @author pf-miles
+ */
+public class TailBuffer {
+    private final byte[] buf;
+    // 下一个写入位置
+    private int pos;
+    // 是否已写满过一圈
+    private boolean wrapped;
+
+    public TailBuffer(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than 0.");
+        this.buf = new byte[capacity];
+    }
+
+    public synchronized void write(byte[] b, int off, int len) {
+        // 超出容量的部分只保留最后capacity个字节
+        if (len >= buf.length) {
+            System.arraycopy(b, off + len - buf.length, buf, 0, buf.length);
+            pos = 0;
+            wrapped = true;
+            return;
+        }
+        int first = Math.min(len, buf.length - pos);
+        System.arraycopy(b, off, buf, pos, first);
+        System.arraycopy(b, off + first, buf, 0, len - first);
+        pos += len;
+        if (pos >= buf.length) {
+            pos -= buf.length;
+            wrapped = true;
+        }
+    }
+
+    /**
+     * @return 当前保存的字节，按写入顺序排列
+     */
+    public synchronized byte[] toByteArray() {
+        if (!wrapped) {
+            byte[] ret = new byte[pos];
+            System.arraycopy(buf, 0, ret, 0, pos);
+            return ret;
+        }
+        byte[] ret = new byte[buf.length];
+        System.arraycopy(buf, pos, ret, 0, buf.length - pos);
+        System.arraycopy(buf, 0, ret, buf.length - pos, pos);
+        return ret;
+    }
+
+    public String toString(Charset charset) {
+        return new String(toByteArray(), charset);
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
 
+import com.github.pfmiles.createmvnkotlinjar.impl.Backoff;
 import kotlin.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
@@ -40,17 +41,20 @@ public class AsyncHttpClientDownloadParam {
     private boolean followRedirects = true;
     // 跟随跳转的最大次数
     private int maxRedirect = 5;
-    // 以KB计的下载速度限制
+    // 以KB/s计的下载速度限制，0表示不限制；分段下载时为各分段合计的速度，同时还受client全局速度限制(DownloadProfile.maxDownloadSpeed)的约束
     private int maxDownloadSpeed;
     // 文件大小限制(bytes)，超过此限制将不会下载
     private long maxFileSize;
-    // 最大重试次数，当发生4xx/5xx或超时错误时将重试，默认不重试
+    // 最大重试次数，默认不重试；只有连接失败、连接中断、超时、低速及5xx/408/429等暂时性错误才重试，且所有重试共享totalTimeout，剩余时间不足时提前放弃重试；
+    // 已写入的部分在重试时以Range续传而不重新下载
     private int maxRetry;
+    // 重试之间的退避策略
+    private Backoff retryBackoff = Backoff.exponential(1000, 30000, 2).withJitter(0.5);
     // 指定hosts绑定
     private List<Triple<String, Integer, String>> hostsBindings;
-    // 是否开启"低速下载"限制机制, 开启后，若下载进程连续在lowSpeedTimeLimit以上时长下载速度低于lowSpeedWaterline，则放弃下载，报错退出
+    // 是否开启"低速下载"限制机制, 开启后，若下载进程连续在lowSpeedTimeLimit以上时长下载速度低于lowSpeedWaterline，则放弃下载，报错退出(错误码-4)；该错误可被重试
     private boolean lowSpeedLimitOn;
-    // 定义为"低速"下载的速度限制(bytes/s)，实时下载速度若低于这个值，则将被认为是"低速下载"，默认1KB/s
+    // 定义为"低速"下载的速度限制(bytes/s)，实时下载速度若低于这个值，则将被认为是"低速下载"，默认1KB/s；因maxDownloadSpeed限速而暂停的时长不计入速度统计
     private long lowSpeedWaterline = 1024L;
     // 陷入"低速下载"情况的最大时长(s)，超过这个时间将放弃下载，报错退出
     private int lowSpeedTimeLimit = 30;
@@ -64,6 +68,19 @@ public class AsyncHttpClientDownloadParam {
     private int headDataLength = 256 * 1024;
     // 开启头部数据去重下载功能后，将要使用的去重逻辑：接受头部数据，返回已经下载过的存储项的url(或唯一标识，按业务需要而定)，找不到则返回null
     private HeadDataDeduplicater headDedupLogic;
+    // 是否开启分段并行下载: 服务端支持Range时，将文件切分为多个字节区间并发下载、按位置直接写入预分配好的目标文件；服务端忽略Range时自动回退为单连接下载；不能与头部数据去重同时开启
+    private boolean segmentedOn;
+    // 分段下载时的最大并发连接数，还受连接池每route连接数上限的限制；实际连接数从2开始，随吞吐的提升逐轮翻倍，吞吐不再明显提升时停止增加
+    private int maxSegments = 8;
+    // 分段下载时每个分块的最小长度(bytes)，文件被切分为不小于此长度的分块由各连接轮流领取，小文件因此只分为少数几块甚至不分块
+    private long minSegmentSize = 8 * 1024 * 1024;
+    // 是否开启可续传下载: 以目标文件旁的sidecar记录已完成的字节区间及远程文件的validator(ETag或Last-Modified)，
+    // 重试或进程重启后再次下载同一url到同一目标文件时，以Range加If-Range只请求缺失的区间；下载成功后删除sidecar；不能与头部数据去重同时开启
+    private boolean resumeOn;
+    // 可续传下载的sidecar文件，为null时使用目标文件名加".ckpt"后缀
+    private File checkpointFile;
+    // 可续传下载时，每写入多少bytes持久化一次检查点(先将目标文件数据force到磁盘，再写sidecar)
+    private long checkpointInterval = 4 * 1024 * 1024;
 
     public String getUrl() {
         return url;
@@ -201,6 +218,14 @@ public class AsyncHttpClientDownloadParam {
         this.maxRetry = maxRetry;
     }
 
+    public Backoff getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public void setRetryBackoff(Backoff retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
     public List<Triple<String, Integer, String>> getHostsBindings() {
         return hostsBindings;
     }
@@ -272,4 +297,52 @@ public class AsyncHttpClientDownloadParam {
     public void setHeadDedupLogic(HeadDataDeduplicater headDedupLogic) {
         this.headDedupLogic = headDedupLogic;
     }
+
+    public boolean isSegmentedOn() {
+        return segmentedOn;
+    }
+
+    public void setSegmentedOn(boolean segmentedOn) {
+        this.segmentedOn = segmentedOn;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public void setMaxSegments(int maxSegments) {
+        this.maxSegments = maxSegments;
+    }
+
+    public long getMinSegmentSize() {
+        return minSegmentSize;
+    }
+
+    public void setMinSegmentSize(long minSegmentSize) {
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    public boolean isResumeOn() {
+        return resumeOn;
+    }
+
+    public void setResumeOn(boolean resumeOn) {
+        this.resumeOn = resumeOn;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
 }
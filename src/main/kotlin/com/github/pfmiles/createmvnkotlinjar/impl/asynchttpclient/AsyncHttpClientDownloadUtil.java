@@ -1,86 +1,40 @@
 package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
 
-import com.github.pfmiles.createmvnkotlinjar.impl.ExceptionUtils;
-import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
-import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexer;
 import com.google.common.base.Preconditions;
-import kotlin.Pair;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.ConnectionClosedException;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpStatus;
-import org.apache.http.HttpVersion;
-import org.apache.http.ProtocolVersion;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.methods.RequestBuilder;
-import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.impl.NoConnectionReuseStrategy;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.LaxRedirectStrategy;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.impl.nio.client.HttpAsyncClients;
-import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
-import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.impl.nio.reactor.IOReactorConfig;
-import org.apache.http.message.BasicHttpResponse;
-import org.apache.http.message.BasicStatusLine;
-import org.apache.http.nio.client.methods.HttpAsyncMethods;
-import org.apache.http.nio.conn.NHttpClientConnectionManager;
-import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-import java.io.IOException;
-import java.net.ConnectException;
-import java.net.SocketTimeoutException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 使用asyncHttpClient的下载工具
+ * 使用asyncHttpClient的下载工具，以静态方法的形式使用一个进程内默认的DownloadClient
+ * 默认client在首次下载时创建: 可在此之前通过setDefaultProfile指定其profile，否则沿用首次下载参数中的connectTimeout、totalTimeout及userAgent作为reactor层面的配置(兼容旧行为)，
+ * 此后下载参数中的这些配置与首次不同时不会改变client(每次请求的超时及显式指定的userAgent仍按该次参数生效)，对此将警告一次；
+ * 需要独立调优、互相隔离的不同负载应各自创建DownloadClient实例
  *
  * @author pf-miles
  * <p>
  * 2022-12-10 00:19
  */
 public class AsyncHttpClientDownloadUtil {
-    private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
-
-    private static final Logger logger = LoggerFactory
-            .getLogger(AsyncHttpClientDownloadUtil.class);
-    // 当headDedup成功后，关闭当前下载io后，框架所抛出的错误信息
-    private static final String HEAD_DEDUP_IO_CLOSE_ERR_MSG = "Connection closed unexpectedly";
-
-    private static CloseableHttpAsyncClient client;
-    private static final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-    private static final Set<AuthScope> addedToCreds = Collections
-            .newSetFromMap(new ConcurrentHashMap<>(16, 0.75f, CPU_NUM * 2));
-
-    private static final AtomicInteger seq = new AtomicInteger();
-    private static final ExecutorService respReaderPool = Executors
-            .newCachedThreadPool(r -> new Thread(r,
-                    "AsyncHttpClientDownloadUtil-response-handle-thread-" + seq.getAndIncrement()));
-
-    private static final FuturesMultiplexer multiplexer = new FuturesMultiplexer(
-            100);
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHttpClientDownloadUtil.class);
+
+    private static volatile DownloadClient client;
+    // 按首次下载参数生成的默认client的profile，null表示默认client尚未创建或其profile由setDefaultProfile指定
+    private static volatile DownloadProfile derivedProfile;
+    // 是否已对与derivedProfile不一致的下载参数做过警告
+    private static final AtomicBoolean mismatchWarned = new AtomicBoolean();
+    // 默认client的profile，null表示按首次下载参数生成
+    private static DownloadProfile defaultProfile;
+    // 连接池配置，只在默认client创建之前可修改
+    private static AsyncHttpClientPoolConfig poolConfig = new AsyncHttpClientPoolConfig();
 
     /**
      * 下载
@@ -89,242 +43,122 @@ public class AsyncHttpClientDownloadUtil {
      * @return 下载任务CompletableFuture
      */
     public static CompletableFuture<AsyncHttpClientDownloadResult> download(AsyncHttpClientDownloadParam param) {
-        Preconditions.checkArgument(param != null && StringUtils.isNotBlank(param.getUrl())
-                && param.getTargetFile() != null);
-        if (param.isHeadDataDedupOn()) {
-            Preconditions.checkArgument(param.getHeadDedupLogic() != null,
-                    "headDedupLogic must be set when headChecksumDedup is true.");
-            Preconditions.checkArgument(param.getHeadDataLength() >= 16 * 1024,
-                    "'headDataLength' must be greater than 16KB, nonsense otherwise.");
-        }
-
-        // 这里插入HeadDataDedupResponseConsumer来做head256 dedup
-        HeadDataDedupResponseConsumer consumer = new HeadDataDedupResponseConsumer(param.getUrl(),
-                param.getHeadDataLength(), param.getHeadDedupLogic(), param.getTargetFile(),
-                param.getMaxFileSize(), param.isHeadDataDedupOn());
-        return multiplexer
-                .submitFuture(getClient(param).execute(HttpAsyncMethods.create(createRequest(param)),
-                        consumer, new FutureCallback<AsyncHttpClientDownloadResult>() {
-                            @Override
-                            public void completed(AsyncHttpClientDownloadResult result) {
-                                if (logger.isInfoEnabled()) {
-                                    // 下载成功的定义：无错误码/错误详情，且result中的file或cachedFileKey不为null
-                                    if (result.getErrCode() == 0 && result.getErrMsg() == null
-                                            && (result.getFile() != null && result.getFile().exists()
-                                            || result.getCachedFileKey() != null)) {
-                                        if (result.getCachedFileKey() != null) {
-                                            logger.info(
-                                                    "Downloading for url: {} success, the result is hit by headDataDedup: {}",
-                                                    param.getUrl(), result.getCachedFileKey());
-                                        } else {
-                                            logger.info("Downloading for url: {} success.", param.getUrl());
-                                        }
-                                    } else {
-                                        logger.error(
-                                                "Downloading for url: {} failed, errCode: {}, errMsg: {}",
-                                                param.getUrl(), result.getErrCode(), result.getErrMsg());
-                                    }
-                                }
-                            }
-
-                            @Override
-                            public void failed(Exception ex) {
-                                // 当headDedup成功时，关闭io之后会抛ConnectionClosedException
-                                if (ex instanceof ConnectionClosedException
-                                        && HEAD_DEDUP_IO_CLOSE_ERR_MSG.equals(ex.getMessage())
-                                        && consumer.isDedupOn() && consumer.isHeadDedupExed()
-                                        && consumer.getDedupResult() != null) {
-                                    logger.info(
-                                            "Head data dedup for url: {} success, cached file key returned: {}",
-                                            param.getUrl(), consumer.getDedupResult());
-                                } else {
-                                    logger.error(String.format("Downloading for url: %s throws exception.",
-                                            param.getUrl()), ex);
-                                }
-                            }
-
-                            @Override
-                            public void cancelled() {
-                                logger.warn("Downloading for url: {} is canceled.", param.getUrl());
-                            }
-                        }), new Date(System.currentTimeMillis() + param.getTotalTimeout() * 1000L))
-                .handleAsync((result, ex) -> {
-                    try {
-                        Preconditions.checkState(!(result == null && ex == null),
-                                "result and ex are both null, impossible!");
-                        if (result == null)
-                            result = new AsyncHttpClientDownloadResult();
-                        if (ex != null) {
-                            // 当headDedup成功时，关闭io之后， ex.getCause()是ConnectionClosedException("Connection closed unexpectedly")
-                            if (ex.getCause() != null
-                                    && ex.getCause() instanceof ConnectionClosedException
-                                    && HEAD_DEDUP_IO_CLOSE_ERR_MSG.equals(ex.getCause().getMessage())
-                                    && consumer.isDedupOn() && consumer.isHeadDedupExed()
-                                    && consumer.getDedupResult() != null) {
-                                result.setRemoteFileName(HeadDataDedupResponseConsumer
-                                        .resolveFileNameFromURL(param.getUrl()));
-                                result.setCachedFileKey(consumer.getDedupResult());
-                                BasicStatusLine statusLine = new BasicStatusLine(
-                                        new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK,
-                                        "HeadDedup success.");
-                                BasicHttpResponse dummyResponse = new BasicHttpResponse(statusLine);
-                                result.setHttpResponse(dummyResponse);
-                            } else {
-                                // 下载过程有错误抛出，
-                                Pair<Integer, String> codeNMsg = resolveErrCodeAndMsg(ex);
-                                result.setErrCode(codeNMsg.getFirst());
-                                result.setErrMsg(codeNMsg.getSecond());
-                            }
-                            return result;
-                        } else {
-                            return result;
-                        }
-                    } finally {
-                        consumer.releaseResources();
-                    }
-                }, respReaderPool);
+        Preconditions.checkArgument(param != null);
+        DownloadClient c = getClient(param);
+        warnIfProfileMismatch(param);
+        return c.download(param);
     }
 
-    private static HttpUriRequest createRequest(AsyncHttpClientDownloadParam param) {
-        RequestBuilder builder = RequestBuilder.get().setUri(param.getUrl())
-                .setConfig(createReqConf(param));
-        if (param.isForceHttp1())
-            builder.setVersion(HttpVersion.HTTP_1_0);
-        for (Pair<String, String> p : param.getHeaders()) {
-            builder.addHeader(p.getFirst(), p.getSecond());
+    /**
+     * 设置默认client的profile，须在首次下载之前调用
+     *
+     * @param profile 默认client的profile
+     */
+    public static void setDefaultProfile(DownloadProfile profile) {
+        Preconditions.checkArgument(profile != null, "Download profile cannot be null.");
+        synchronized (AsyncHttpClientDownloadUtil.class) {
+            Preconditions.checkState(client == null, "Default profile must be set before the first download.");
+            defaultProfile = profile;
         }
-        return builder.build();
     }
 
-    private static RequestConfig createReqConf(AsyncHttpClientDownloadParam param) {
-        return RequestConfig.custom().setConnectTimeout(param.getConnectTimeout() * 1000)
-                .setConnectionRequestTimeout(param.getConnectTimeout() * 1000)
-                .setRedirectsEnabled(param.isFollowRedirects())
-                .setSocketTimeout((param.getTotalTimeout() - param.getConnectTimeout()) * 1000)
-                .setCircularRedirectsAllowed(false).setCookieSpec(CookieSpecs.DEFAULT)
-                .setExpectContinueEnabled(true).setMaxRedirects(param.getMaxRedirect())
-                .setProxy(resolveProxy(param.getProxy())).build();
+    /**
+     * 设置默认client的连接池配置，须在首次下载之前调用；若已通过setDefaultProfile指定了profile，则覆盖其中的连接池配置
+     *
+     * @param config 连接池配置
+     */
+    public static void setPoolConfig(AsyncHttpClientPoolConfig config) {
+        Preconditions.checkArgument(config != null, "Pool config cannot be null.");
+        synchronized (AsyncHttpClientDownloadUtil.class) {
+            Preconditions.checkState(client == null, "Pool config must be set before the first download.");
+            poolConfig = config;
+            if (defaultProfile != null)
+                defaultProfile.setPoolConfig(config);
+        }
     }
 
-    static Pair<Integer, String> resolveErrCodeAndMsg(Throwable ex) {
-        Preconditions.checkArgument(ex != null);
-        if (ex instanceof ExecutionException)
-            ex = ex.getCause();
-        if (ex instanceof HttpNot200Exception) {
-            return new Pair<>(22,
-                    String.format("Non-200 status code returned: %s.", ex.getMessage()));
-        }
-        if (ex instanceof DownloadSizeExceedsLimitException) {
-            return new Pair<>(63,
-                    String.format("Maximum file size exceeded: %s.", ex.getMessage()));
-        }
-        if (ex instanceof ConnectException) {
-            return new Pair<>(7, String.format("Failed to connect to host: %s.", ex.getMessage()));
-        }
-        if (ex instanceof TimeoutException || ex instanceof SocketTimeoutException) {
-            return new Pair<>(28, String.format("Operation timeout: %s.", ex.getMessage()));
-        }
-        if (ex instanceof ConnectionClosedException) {
-            return new Pair<>(18, String.format(
-                    "Partial file. Only a part of the file was transferred: %s.", ex.getMessage()));
-        }
+    /**
+     * @return 默认client连接池的总体统计(租用中、空闲、等待租用的连接数及上限)，client尚未创建时返回null
+     */
+    public static PoolStats getPoolStats() {
+        DownloadClient c = client;
+        return c != null ? c.getPoolStats() : null;
+    }
 
-        return new Pair<>(-3, ExceptionUtils.printAsString(ex));
+    /**
+     * @return 默认client连接池中各route的统计，key为route的字符串形式，client尚未创建时返回空map
+     */
+    public static Map<String, PoolStats> getRoutePoolStats() {
+        DownloadClient c = client;
+        return c != null ? c.getRoutePoolStats() : Collections.emptyMap();
     }
 
-    private static CloseableHttpAsyncClient getClient(AsyncHttpClientDownloadParam param) {
-        if (client != null)
-            return client;
+    private static DownloadClient getClient(AsyncHttpClientDownloadParam param) {
+        DownloadClient c = client;
+        if (c != null)
+            return c;
         synchronized (AsyncHttpClientDownloadUtil.class) {
-            if (client != null)
-                return client;
-            try {
-                CloseableHttpAsyncClient ret = HttpAsyncClients.custom()
-                        .setDefaultCredentialsProvider(credentialsProvider)
-                        .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
-                        .setConnectionManager(createNHttpClientConnectionManager(param))
-                        .setConnectionManagerShared(false)
-                        .setRedirectStrategy(LaxRedirectStrategy.INSTANCE)
-                        .setSSLContext(createSslContext())
-                        .setUserAgent(
-                                param.getUserAgent() != null ? param.getUserAgent() : "HttpAsyncClient")
-                        .build();
-                ret.start();
-                client = ret;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            if (client == null) {
+                DownloadProfile derived = defaultProfile != null ? null : profileOf(param);
+                client = new DownloadClient(derived != null ? derived : defaultProfile);
+                derivedProfile = derived;
             }
             return client;
         }
     }
 
-    private static HttpHost resolveProxy(String proxy) {
-        // hzss_complex:8fzpSV6pzTe5ApYK@172.21.1.3:10041,
-        if (StringUtils.isBlank(proxy))
-            return null;
-        Pair<AuthScope, Credentials> scopeAndCreds = resolveAuthInfo(proxy);
-        if (!addedToCreds.contains(scopeAndCreds.getFirst()) && scopeAndCreds.getSecond() != null) {
-            credentialsProvider.setCredentials(scopeAndCreds.getFirst(), scopeAndCreds.getSecond());
-            addedToCreds.add(scopeAndCreds.getFirst());
-        }
-        return scopeAndCreds.getFirst().getOrigin();
-    }
-
-    private static Pair<AuthScope, Credentials> resolveAuthInfo(String proxy) {
-        if (StringUtils.countMatches(proxy, ':') == 2
-                && StringUtils.countMatches(proxy, '@') == 1) {
-            return new Pair<>(
-                    new AuthScope(HttpHost.create(StringUtils.substringAfterLast(proxy, "@"))),
-                    new UsernamePasswordCredentials(StringUtils.substringBeforeLast(proxy, "@")));
-        } else if (!StringUtils.contains(proxy, '@') && StringUtils.countMatches(proxy, ':') == 1) {
-            return new Pair<>(new AuthScope(HttpHost.create(proxy)), null);
-        } else {
-            throw new IllegalArgumentException(String.format(
-                    "Illegal proxy string: %s, proxy string must be of format: [username:password@]ip:port",
-                    proxy));
-        }
+    // 默认client按首次下载参数生成时，后续参数中client层面的配置与之不同并不会生效，警告一次以提示应在首次下载之前setDefaultProfile
+    private static void warnIfProfileMismatch(AsyncHttpClientDownloadParam param) {
+        String mismatch = profileMismatch(param);
+        if (mismatch != null && mismatchWarned.compareAndSet(false, true))
+            logger.warn("The default download client was configured by the first download's param, {} of later params differs "
+                    + "and does not change the client, use setDefaultProfile before the first download instead.", mismatch);
     }
 
-    private static SSLContext createSslContext() throws Exception {
-        X509TrustManager tm = new X509TrustManager() {
-
-            public void checkClientTrusted(X509Certificate[] xcs, String string) {
-            }
-
-            public void checkServerTrusted(X509Certificate[] xcs, String string) {
-            }
-
-            public X509Certificate[] getAcceptedIssuers() {
-                return null;
-            }
-        };
-
-        SSLContext ctx = SSLContext.getInstance("TLS");
-        ctx.init(null, new TrustManager[]{tm}, null);
-        return ctx;
+    /**
+     * @return 下载参数中与按首次下载参数生成的默认client profile不一致的client层面配置名，以逗号分隔；
+     * 一致或默认client并非按下载参数生成时返回null
+     */
+    static String profileMismatch(AsyncHttpClientDownloadParam param) {
+        DownloadProfile derived = derivedProfile;
+        if (derived == null)
+            return null;
+        DownloadProfile profile = profileOf(param);
+        List<String> ret = new ArrayList<>();
+        if (profile.getConnectTimeout() != derived.getConnectTimeout())
+            ret.add("connectTimeout");
+        if (profile.getSocketTimeout() != derived.getSocketTimeout())
+            ret.add("totalTimeout");
+        if (!Objects.equals(profile.getUserAgent(), derived.getUserAgent()))
+            ret.add("userAgent");
+        return ret.isEmpty() ? null : String.join(", ", ret);
     }
 
-    private static NHttpClientConnectionManager createNHttpClientConnectionManager(AsyncHttpClientDownloadParam param) throws IOReactorException {
-        ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
-                .setSoKeepAlive(false).setConnectTimeout(param.getConnectTimeout() * 1000)
-                .setSoTimeout((param.getTotalTimeout() - param.getConnectTimeout()) * 1000)
-                .setTcpNoDelay(true).build());
-        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
-                ioReactor);
-        connectionManager.setDefaultMaxPerRoute(1024);
-        connectionManager.setMaxTotal(1024 * 1024 * 1024);
-        return connectionManager;
+    // 兼容旧行为: 未指定默认profile时，以首次下载的参数生成reactor层面的配置；
+    // 旧版本接受totalTimeout不大于connectTimeout等参数，此时超时被限制为至少1s而不是报错
+    private static DownloadProfile profileOf(AsyncHttpClientDownloadParam param) {
+        DownloadProfile profile = new DownloadProfile();
+        profile.setName("AsyncHttpClientDownloadUtil");
+        profile.setConnectTimeout(Math.max(1, param.getConnectTimeout()));
+        profile.setSocketTimeout(Math.max(1, param.getTotalTimeout() - param.getConnectTimeout()));
+        if (param.getUserAgent() != null)
+            profile.setUserAgent(param.getUserAgent());
+        profile.setPoolConfig(poolConfig);
+        return profile;
     }
 
+    /**
+     * 关闭默认client，之后的下载将重新创建默认client
+     */
     public static void shutdown() {
-        Runner.tryExec(() -> {
-            try {
-                client.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        Runner.tryExec(multiplexer::destroy);
-        Runner.shutdownThreadPool(respReaderPool, 5);
+        DownloadClient c;
+        synchronized (AsyncHttpClientDownloadUtil.class) {
+            c = client;
+            client = null;
+            derivedProfile = null;
+            mismatchWarned.set(false);
+        }
+        if (c != null)
+            c.shutdown();
     }
 }
@@ -0,0 +1,70 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+/**
+ * DownloadClient的连接池配置，作为DownloadProfile的一部分；AsyncHttpClientDownloadUtil的默认client可在首次下载之前通过setPoolConfig设置
+ *
+ * @author pf-miles
+ */
+public class AsyncHttpClientPoolConfig {
+    // 是否开启keep-alive连接复用，开启后对同一host的多次下载可复用已建立的tcp连接及tls会话；默认关闭，即每次下载都新建连接、用完即关闭
+    private boolean keepAlive;
+    // 每个route(目标host:port及代理的组合)的最大连接数
+    private int maxPerRoute = 1024;
+    // 连接池的最大连接总数
+    private int maxTotal = 1024 * 1024 * 1024;
+    // keep-alive模式下，连接每次归还后可被复用的最长时长(ms)，超过后在被租用时直接丢弃，以免复用已被服务端关闭的连接(异步连接池不支持租用前的stale check)；
+    // 服务端通过Keep-Alive header给出的更短时限优先，0表示只以服务端给出的时限为准
+    private long keepAliveTimeout = 15000;
+    // keep-alive模式下，空闲连接的最大保留时长(s)，超过此时长的空闲连接将被后台清理线程关闭
+    private int maxIdleTime = 60;
+    // 后台清理过期及空闲连接的执行间隔(s)
+    private int evictInterval = 10;
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public long getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(long keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public int getEvictInterval() {
+        return evictInterval;
+    }
+
+    public void setEvictInterval(int evictInterval) {
+        this.evictInterval = evictInterval;
+    }
+}
@@ -0,0 +1,242 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可续传下载的检查点: 记录目标文件中已完成的字节区间、远程文件的validator(ETag或Last-Modified)及url，持久化在目标文件旁的sidecar文件中，
+ * 下载失败或进程重启后可据此只请求缺失的区间；sidecar只在目标文件数据被force到磁盘之后才写入，因此其中记录的区间总是可信的
+ * sidecar为null时检查点只存在于内存中，用于同一次下载失败重试时的续传
+ * 本类线程安全，各分段consumer在io线程中汇报进度，累计写入量达到flushInterval后异步持久化
+ *
+ * @author pf-miles
+ */
+class DownloadCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCheckpoint.class);
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_TOTAL_LENGTH = "totalLength";
+    private static final String KEY_RANGES = "ranges";
+
+    // 持久化检查点的sidecar文件，null表示只在内存中记录
+    private final File sidecar;
+    private final String url;
+    private final String validator;
+    private final long totalLength;
+    // 已完成的区间，start -> end(不含)，各分段以其起始位置为key不断推进end
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+    // 以下在bind之后有效
+    private FileChannel fileChannel;
+    private Executor flushExecutor;
+    private long flushInterval;
+    // 自上次持久化以来新写入的bytes数
+    private final AtomicLong unflushed = new AtomicLong();
+    // 保证持久化串行进行，且在discard之后不再写出sidecar
+    private final Object flushLock = new Object();
+    private boolean discarded;
+
+    DownloadCheckpoint(File sidecar, String url, String validator, long totalLength) {
+        Preconditions.checkArgument(url != null && totalLength > 0);
+        this.sidecar = sidecar;
+        this.url = url;
+        this.validator = validator;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * 读取sidecar，文件不存在、格式不合法或url不一致时返回null
+     */
+    static DownloadCheckpoint load(File sidecar, String url) {
+        if (!sidecar.isFile())
+            return null;
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(sidecar.toPath())) {
+            props.load(in);
+            if (!url.equals(props.getProperty(KEY_URL)))
+                return null;
+            DownloadCheckpoint ret = new DownloadCheckpoint(sidecar, url,
+                    StringUtils.trimToNull(props.getProperty(KEY_VALIDATOR)),
+                    Long.parseLong(props.getProperty(KEY_TOTAL_LENGTH)));
+            for (String r : StringUtils.split(props.getProperty(KEY_RANGES, ""), ',')) {
+                long start = Long.parseLong(StringUtils.substringBefore(r, "-").trim());
+                long end = Long.parseLong(StringUtils.substringAfter(r, "-").trim());
+                if (start < 0 || end <= start || end > ret.totalLength)
+                    return null;
+                ret.ranges.merge(start, end, Math::max);
+            }
+            return ret;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable download checkpoint: {}, cause: {}", sidecar, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 是否可以在当前远程文件上续传: 必须有validator，且validator与文件总长度均与记录一致
+     */
+    boolean matches(long totalLength, String validator) {
+        return this.validator != null && this.validator.equals(validator) && this.totalLength == totalLength;
+    }
+
+    /**
+     * 绑定目标文件channel，此后的进度汇报累计达到flushInterval时在flushExecutor中持久化
+     */
+    void bind(FileChannel fileChannel, Executor flushExecutor, long flushInterval) {
+        this.fileChannel = fileChannel;
+        this.flushExecutor = flushExecutor;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @return [0, totalLength)中尚未完成的区间，每项为{start, end(不含)}
+     */
+    synchronized List<long[]> missingRanges() {
+        List<long[]> ret = new ArrayList<>();
+        long pos = 0;
+        for (long[] r : merged()) {
+            if (r[0] > pos)
+                ret.add(new long[]{pos, r[0]});
+            pos = Math.max(pos, r[1]);
+        }
+        if (pos < totalLength)
+            ret.add(new long[]{pos, totalLength});
+        return ret;
+    }
+
+    /**
+     * @return 已完成区间中最靠后的结束位置(不含)，没有已完成区间时为0
+     */
+    synchronized long completedEnd() {
+        long ret = 0;
+        for (long end : ranges.values())
+            ret = Math.max(ret, end);
+        return ret;
+    }
+
+    /**
+     * 记录一个已完成的区间
+     */
+    synchronized void addCompleted(long start, long end) {
+        Preconditions.checkArgument(start >= 0 && end > start && end <= totalLength);
+        ranges.merge(start, end, Math::max);
+    }
+
+    /**
+     * 汇报进度: 从segmentStart开始的分段已写入至end(不含)
+     */
+    void advance(long segmentStart, long end, long delta) {
+        synchronized (this) {
+            ranges.merge(segmentStart, end, Math::max);
+        }
+        if (sidecar != null && flushExecutor != null && unflushed.addAndGet(delta) >= flushInterval) {
+            try {
+                flushExecutor.execute(() -> Runner.tryExec(this::flush));
+                unflushed.set(0);
+            } catch (RejectedExecutionException e) {
+                // 线程池已满时跳过本次持久化，不在io线程中写盘，待下次汇报进度时再试
+            }
+        }
+    }
+
+    /**
+     * 持久化: 先将目标文件数据force到磁盘，再以写临时文件并原子替换的方式写出sidecar
+     */
+    void flush() {
+        synchronized (flushLock) {
+            if (discarded || sidecar == null)
+                return;
+            // 先取快照再force: 快照中的区间均在force之前写入，因此force之后必然已落盘
+            String snapshot = rangesString();
+            try {
+                if (fileChannel != null)
+                    fileChannel.force(false);
+                Properties props = new Properties();
+                props.setProperty(KEY_URL, url);
+                if (validator != null)
+                    props.setProperty(KEY_VALIDATOR, validator);
+                props.setProperty(KEY_TOTAL_LENGTH, String.valueOf(totalLength));
+                props.setProperty(KEY_RANGES, snapshot);
+                File tmp = new File(sidecar.getPath() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                    props.store(out, null);
+                }
+                Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // 目标文件channel已关闭等情况，本次检查点作废，保留上一次的sidecar
+                logger.warn("Failed to save download checkpoint: {}, cause: {}", sidecar, e.toString());
+            }
+        }
+    }
+
+    /**
+     * 下载成功或不再可续传时删除sidecar，此后不再持久化
+     */
+    void discard() {
+        synchronized (flushLock) {
+            discarded = true;
+            if (sidecar != null)
+                delete(sidecar);
+        }
+    }
+
+    static void delete(File sidecar) {
+        try {
+            Files.deleteIfExists(sidecar.toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete download checkpoint: {}, cause: {}", sidecar, e.toString());
+        }
+    }
+
+    private synchronized String rangesString() {
+        StringBuilder sb = new StringBuilder();
+        for (long[] r : merged()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(r[0]).append('-').append(r[1]);
+        }
+        return sb.toString();
+    }
+
+    // 合并相邻及重叠的区间
+    private List<long[]> merged() {
+        List<long[]> ret = new ArrayList<>();
+        for (Map.Entry<Long, Long> e : ranges.entrySet()) {
+            long[] last = ret.isEmpty() ? null : ret.get(ret.size() - 1);
+            if (last != null && e.getKey() <= last[1])
+                last[1] = Math.max(last[1], e.getValue());
+            else
+                ret.add(new long[]{e.getKey(), e.getValue()});
+        }
+        return ret;
+    }
+
+    String getValidator() {
+        return validator;
+    }
+
+    long getTotalLength() {
+        return totalLength;
+    }
+}
@@ -0,0 +1,892 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.ExceptionUtils;
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.github.pfmiles.createmvnkotlinjar.impl.TokenBucket;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.FuturesMultiplexer;
+import com.google.common.base.Preconditions;
+import kotlin.Pair;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 基于asyncHttpClient的下载客户端: 每个实例按DownloadProfile创建并拥有自己的io reactor、连接池、multiplexer及response处理线程池，
+ * 不同负载可各自创建实例，独立调优、互相隔离，并可各自关闭而互不影响
+ * 本类线程安全
+ *
+ * @author pf-miles
+ */
+public class DownloadClient {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadClient.class);
+    // 当headDedup成功后，关闭当前下载io后，框架所抛出的错误信息
+    private static final String HEAD_DEDUP_IO_CLOSE_ERR_MSG = "Connection closed unexpectedly";
+    // 分段下载开始时的并发连接数，之后按吞吐的提升情况逐轮翻倍
+    private static final int INITIAL_SEGMENT_CONNECTIONS = 2;
+
+    private final DownloadProfile profile;
+    private final CloseableHttpAsyncClient client;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    // keep-alive模式下定期清理过期及空闲连接的线程，非keep-alive模式下为null
+    private final ScheduledExecutorService idleConnEvictor;
+    private final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+    private final Set<AuthScope> addedToCreds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // 有界的response处理线程池，线程及队列均满时拒绝新任务: 提交方通常是multiplexer的event loop线程，不能由其代为执行，
+    // 被拒绝的下载经handleOnRespReader以RejectedExecutionException失败结束
+    private final ThreadPoolExecutor respReaderPool;
+    private final FuturesMultiplexer multiplexer;
+    // 本client所有下载共享的限速令牌桶，null表示不限速
+    private final TokenBucket globalBandwidth;
+
+    /**
+     * 按profile创建下载客户端，并启动其io reactor
+     *
+     * @param profile 客户端配置
+     */
+    public DownloadClient(DownloadProfile profile) {
+        checkProfile(profile);
+        this.profile = profile;
+        AsyncHttpClientPoolConfig pc = profile.getPoolConfig();
+        AtomicInteger seq = new AtomicInteger();
+        this.respReaderPool = new ThreadPoolExecutor(profile.getResponseHandlerThreads(),
+                profile.getResponseHandlerThreads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(profile.getResponseQueueCapacity()),
+                r -> new Thread(r, profile.getName() + "-response-handle-thread-" + seq.getAndIncrement()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.respReaderPool.allowCoreThreadTimeOut(true);
+        this.multiplexer = new FuturesMultiplexer(profile.getEventLoopInterval());
+        this.globalBandwidth = DownloadThrottle.bucketOf(profile.getMaxDownloadSpeed());
+        try {
+            this.connectionManager = createNHttpClientConnectionManager(profile, pc);
+            HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                    .setDefaultCredentialsProvider(credentialsProvider);
+            if (pc.isKeepAlive()) {
+                builder.setConnectionReuseStrategy(DefaultConnectionReuseStrategy.INSTANCE)
+                        .setKeepAliveStrategy(createKeepAliveStrategy(pc.getKeepAliveTimeout()));
+            } else {
+                builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+            }
+            this.client = builder
+                    .setConnectionManager(pc.isKeepAlive() ? connectionManager
+                            : new OrphanDiscardingConnectionManager(connectionManager))
+                    .setConnectionManagerShared(false)
+                    .setRedirectStrategy(LaxRedirectStrategy.INSTANCE)
+                    .setSSLContext(createSslContext())
+                    .setUserAgent(profile.getUserAgent())
+                    .setThreadFactory(r -> new Thread(r, profile.getName() + "-io-reactor"))
+                    .build();
+            this.client.start();
+        } catch (Exception e) {
+            Runner.tryExec(multiplexer::destroy);
+            Runner.shutdownThreadPool(respReaderPool, 0);
+            throw new RuntimeException(e);
+        }
+        this.idleConnEvictor = pc.isKeepAlive() ? startIdleConnEvictor(profile.getName(), connectionManager, pc)
+                : null;
+    }
+
+    private static void checkProfile(DownloadProfile profile) {
+        Preconditions.checkArgument(profile != null, "Download profile cannot be null.");
+        Preconditions.checkArgument(StringUtils.isNotBlank(profile.getName()), "Profile name cannot be blank.");
+        Preconditions.checkArgument(profile.getConnectTimeout() > 0 && profile.getSocketTimeout() > 0,
+                "connectTimeout and socketTimeout must be greater than 0.");
+        Preconditions.checkArgument(profile.getIoThreads() > 0 && profile.getResponseHandlerThreads() > 0
+                        && profile.getResponseQueueCapacity() > 0,
+                "ioThreads, responseHandlerThreads and responseQueueCapacity must be greater than 0.");
+        Preconditions.checkArgument(profile.getEventLoopInterval() > 0, "eventLoopInterval must be greater than 0.");
+        Preconditions.checkArgument(profile.getMaxDownloadSpeed() >= 0, "maxDownloadSpeed cannot be negative.");
+        AsyncHttpClientPoolConfig pc = profile.getPoolConfig();
+        Preconditions.checkArgument(pc != null, "Pool config cannot be null.");
+        Preconditions.checkArgument(pc.getMaxPerRoute() > 0 && pc.getMaxTotal() >= pc.getMaxPerRoute(),
+                "Illegal pool limits, must be 0 < maxPerRoute <= maxTotal.");
+        Preconditions.checkArgument(pc.getKeepAliveTimeout() >= 0, "keepAliveTimeout cannot be negative.");
+        Preconditions.checkArgument(!pc.isKeepAlive() || pc.getMaxIdleTime() > 0 && pc.getEvictInterval() > 0,
+                "maxIdleTime and evictInterval must be greater than 0 in keep-alive mode.");
+    }
+
+    /**
+     * 下载；分段、续传、限速、低速检测及重试等行为由下载参数中的对应字段开启
+     *
+     * @param param 下载参数
+     * @return 下载任务CompletableFuture，调用方取消它时进行中的请求及尚未开始的重试也将被取消
+     */
+    public CompletableFuture<AsyncHttpClientDownloadResult> download(AsyncHttpClientDownloadParam param) {
+        Preconditions.checkArgument(param != null && StringUtils.isNotBlank(param.getUrl())
+                && param.getTargetFile() != null);
+        if (param.isHeadDataDedupOn()) {
+            Preconditions.checkArgument(param.getHeadDedupLogic() != null,
+                    "headDedupLogic must be set when headChecksumDedup is true.");
+            Preconditions.checkArgument(param.getHeadDataLength() >= 16 * 1024,
+                    "'headDataLength' must be greater than 16KB, nonsense otherwise.");
+        }
+        if (param.isSegmentedOn() || param.isResumeOn()) {
+            Preconditions.checkArgument(!param.isHeadDataDedupOn(),
+                    "Segmented or resumable downloading cannot be combined with head data dedup.");
+            Preconditions.checkArgument(!param.isResumeOn() || param.getCheckpointInterval() > 0,
+                    "checkpointInterval must be greater than 0.");
+            Preconditions.checkArgument(param.getMaxSegments() > 0 && param.getMinSegmentSize() > 0,
+                    "maxSegments and minSegmentSize must be greater than 0.");
+            Preconditions.checkArgument(param.getMaxFileSize() > 16 * 1024,
+                    "maxFileSize must be greater than 16KB.");
+        }
+        Preconditions.checkArgument(param.getMaxDownloadSpeed() >= 0, "maxDownloadSpeed cannot be negative.");
+        if (param.isLowSpeedLimitOn()) {
+            Preconditions.checkArgument(param.getLowSpeedWaterline() > 0 && param.getLowSpeedTimeLimit() > 0,
+                    "lowSpeedWaterline and lowSpeedTimeLimit must be greater than 0.");
+        }
+        // 所有重试共享同一个totalTimeout，及同一个限速令牌桶(分段下载时由各分段共享)
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(param.getTotalTimeout());
+        DownloadThrottle throttle = DownloadThrottle.of(DownloadThrottle.bucketOf(param.getMaxDownloadSpeed()),
+                globalBandwidth);
+        Preconditions.checkArgument(param.getMaxRetry() <= 0 || param.getRetryBackoff() != null,
+                "retryBackoff must be set when maxRetry > 0.");
+        CompletableFuture<AsyncHttpClientDownloadResult> ret = new CompletableFuture<>();
+        retry(param, deadlineNanos, throttle, 0, null, ret);
+        return ret;
+    }
+
+    // 一次下载尝试的状态: 进行中的请求、限速及低速检测，以及失败信息，用于判断能否重试及重试时从何处续传
+    private static final class AttemptState {
+        // 下载限速，由同一次下载的各次尝试共享，null表示不限速
+        private final DownloadThrottle throttle;
+        // 本次尝试的低速检测，null表示未开启
+        private final LowSpeedMonitor lowSpeedMonitor;
+        // 本次尝试中进行中的请求，调用方取消下载时一并取消
+        private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        // 重试时可续传的检查点，null表示须从头下载
+        private volatile DownloadCheckpoint resumeFrom;
+
+        private AttemptState(AsyncHttpClientDownloadParam param, DownloadThrottle throttle) {
+            this.throttle = throttle;
+            this.lowSpeedMonitor = LowSpeedMonitor.start(param);
+        }
+
+        // 为consumer设置限速及低速检测
+        private void setUp(RangeSegmentConsumer consumer) {
+            consumer.setThrottle(throttle);
+            consumer.setLowSpeedMonitor(lowSpeedMonitor);
+        }
+
+        // 登记本次尝试的请求，调用方取消下载或低速时将被取消
+        private <T> CompletableFuture<T> watch(CompletableFuture<T> future) {
+            inFlight.add(future);
+            future.whenComplete((r, e) -> inFlight.remove(future));
+            if (cancelled)
+                future.cancel(true);
+            return lowSpeedMonitor != null ? lowSpeedMonitor.watch(future) : future;
+        }
+
+        // 取消本次尝试所有进行中的请求，其在multiplexer中对应的http请求随之被取消
+        private void cancel() {
+            cancelled = true;
+            for (CompletableFuture<?> f : inFlight)
+                f.cancel(true);
+        }
+
+        // 低速检测取消请求所导致的错误以LowSpeedException代替
+        private Throwable resolveError(Throwable ex) {
+            LowSpeedException tripped = lowSpeedMonitor != null ? lowSpeedMonitor.getTripped() : null;
+            return tripped != null ? tripped : ex;
+        }
+    }
+
+    // 发起第attempt次(从0开始)下载尝试，失败且可重试时按退避策略在共享定时器中登记下一次尝试，最终结果写入ret；
+    // 调用方取消ret时，同时取消进行中的尝试及尚未开始的重试
+    private void retry(AsyncHttpClientDownloadParam param, long deadlineNanos, DownloadThrottle throttle, int attempt,
+                       DownloadCheckpoint resumeFrom, CompletableFuture<AsyncHttpClientDownloadResult> ret) {
+        if (ret.isDone())
+            return;
+        AttemptState state = new AttemptState(param, throttle);
+        CompletableFuture<AsyncHttpClientDownloadResult> current;
+        try {
+            current = attempt(param, deadlineNanos, resumeFrom, state);
+        } catch (RuntimeException e) {
+            // 首次尝试的参数错误等直接抛给调用方
+            if (attempt == 0)
+                throw e;
+            ret.completeExceptionally(e);
+            return;
+        }
+        ret.whenComplete((r, e) -> {
+            if (ret.isCancelled())
+                state.cancel();
+        });
+        current.whenComplete((result, ex) -> {
+            if (ex != null) {
+                ret.completeExceptionally(ex);
+                return;
+            }
+            if (result.getErrCode() == 0 || state.error == null || !isRetryable(state.error)
+                    || attempt >= param.getMaxRetry()) {
+                ret.complete(result);
+                return;
+            }
+            long delay = param.getRetryBackoff().delayOf(attempt);
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            // 退避之后剩余的totalTimeout不足退避时长本身时即放弃，重试次数因此随剩余预算收缩
+            if (delay * 2 >= remaining) {
+                logger.warn("Downloading for url: {} failed with errCode: {}, no retry since only {}ms left.",
+                        param.getUrl(), result.getErrCode(), remaining);
+                ret.complete(result);
+                return;
+            }
+            DownloadCheckpoint next = state.resumeFrom;
+            logger.warn("Downloading for url: {} failed with errCode: {}, retrying({}/{}) in {}ms, {} bytes to resume.",
+                    param.getUrl(), result.getErrCode(), attempt + 1, param.getMaxRetry(), delay,
+                    next != null ? next.completedEnd() : 0);
+            CompletableFuture<Void> backoff = Runner.delay(delay);
+            // 调用方取消下载时撤销尚未开始的重试
+            ret.whenComplete((r, e) -> backoff.cancel(false));
+            handleOnRespReader(backoff, (v, e) -> {
+                if (e != null)
+                    ret.complete(result);
+                else
+                    retry(param, deadlineNanos, throttle, attempt + 1, next, ret);
+                return null;
+            });
+        });
+    }
+
+    // 连接失败、连接中断、超时、低速及5xx/408/429被视为暂时性错误，可以重试
+    static boolean isRetryable(Throwable ex) {
+        while ((ex instanceof ExecutionException || ex instanceof CompletionException) && ex.getCause() != null)
+            ex = ex.getCause();
+        if (ex instanceof HttpNot200Exception) {
+            int code = ((HttpNot200Exception) ex).getStatusCode();
+            return code >= HttpStatus.SC_INTERNAL_SERVER_ERROR || code == HttpStatus.SC_REQUEST_TIMEOUT
+                    || code == 429;
+        }
+        return ex instanceof ConnectException || ex instanceof ConnectionClosedException
+                || ex instanceof SocketTimeoutException || ex instanceof TimeoutException
+                || ex instanceof SocketException || ex instanceof LowSpeedException;
+    }
+
+    private CompletableFuture<AsyncHttpClientDownloadResult> attempt(AsyncHttpClientDownloadParam param,
+                                                                     long deadlineNanos,
+                                                                     DownloadCheckpoint resumeFrom,
+                                                                     AttemptState state) {
+        CompletableFuture<AsyncHttpClientDownloadResult> ret;
+        try {
+            if (param.isSegmentedOn() || param.isResumeOn() || resumeFrom != null)
+                ret = downloadSegmented(param, deadlineNanos, resumeFrom, state);
+            else
+                ret = downloadWhole(param, deadlineNanos, state);
+        } catch (RuntimeException e) {
+            if (state.lowSpeedMonitor != null)
+                state.lowSpeedMonitor.stop();
+            throw e;
+        }
+        if (state.lowSpeedMonitor != null)
+            ret.whenComplete((r, e) -> state.lowSpeedMonitor.stop());
+        return ret;
+    }
+
+    // 单连接下载，可插入头部数据去重
+    private CompletableFuture<AsyncHttpClientDownloadResult> downloadWhole(AsyncHttpClientDownloadParam param,
+                                                                           long deadlineNanos,
+                                                                           AttemptState state) {
+        // 这里插入HeadDataDedupResponseConsumer来做head256 dedup
+        HeadDataDedupResponseConsumer consumer = new HeadDataDedupResponseConsumer(param.getUrl(),
+                param.getHeadDataLength(), param.getHeadDedupLogic(), param.getTargetFile(),
+                param.getMaxFileSize(), param.isHeadDataDedupOn());
+        consumer.setThrottle(state.throttle);
+        consumer.setLowSpeedMonitor(state.lowSpeedMonitor);
+        // 下载future完成时由FutureCallback通知multiplexer，无需等待multiplexer轮询
+        CompletableFuture<Void> completionSignal = new CompletableFuture<>();
+        return handleOnRespReader(state.watch(multiplexer
+                .submitFuture(client.execute(HttpAsyncMethods.create(createRequest(param)),
+                        consumer, new FutureCallback<AsyncHttpClientDownloadResult>() {
+                            @Override
+                            public void completed(AsyncHttpClientDownloadResult result) {
+                                try {
+                                    if (logger.isInfoEnabled()) {
+                                        // 下载成功的定义：无错误码/错误详情，且result中的file或cachedFileKey不为null
+                                        if (result.getErrCode() == 0 && result.getErrMsg() == null
+                                                && (result.getFile() != null && result.getFile().exists()
+                                                || result.getCachedFileKey() != null)) {
+                                            if (result.getCachedFileKey() != null) {
+                                                logger.info(
+                                                        "Downloading for url: {} success, the result is hit by headDataDedup: {}",
+                                                        param.getUrl(), result.getCachedFileKey());
+                                            } else {
+                                                logger.info("Downloading for url: {} success.", param.getUrl());
+                                            }
+                                        } else {
+                                            logger.error(
+                                                    "Downloading for url: {} failed, errCode: {}, errMsg: {}",
+                                                    param.getUrl(), result.getErrCode(), result.getErrMsg());
+                                        }
+                                    }
+                                } finally {
+                                    completionSignal.complete(null);
+                                }
+                            }
+
+                            @Override
+                            public void failed(Exception ex) {
+                                try {
+                                    // 当headDedup成功时，关闭io之后会抛ConnectionClosedException
+                                    if (ex instanceof ConnectionClosedException
+                                            && HEAD_DEDUP_IO_CLOSE_ERR_MSG.equals(ex.getMessage())
+                                            && consumer.isDedupOn() && consumer.isHeadDedupExed()
+                                            && consumer.getDedupResult() != null) {
+                                        logger.info(
+                                                "Head data dedup for url: {} success, cached file key returned: {}",
+                                                param.getUrl(), consumer.getDedupResult());
+                                    } else {
+                                        logger.error(String.format("Downloading for url: %s throws exception.",
+                                                param.getUrl()), ex);
+                                    }
+                                } finally {
+                                    completionSignal.complete(null);
+                                }
+                            }
+
+                            @Override
+                            public void cancelled() {
+                                try {
+                                    logger.warn("Downloading for url: {} is canceled.", param.getUrl());
+                                } finally {
+                                    completionSignal.complete(null);
+                                }
+                            }
+                        }), completionSignal, deadlineNanos)), (result, ex) -> {
+                    try {
+                        Preconditions.checkState(!(result == null && ex == null),
+                                "result and ex are both null, impossible!");
+                        if (result == null)
+                            result = new AsyncHttpClientDownloadResult();
+                        if (ex != null) {
+                            // 当headDedup成功时，关闭io之后， ex.getCause()是ConnectionClosedException("Connection closed unexpectedly")
+                            if (ex.getCause() != null
+                                    && ex.getCause() instanceof ConnectionClosedException
+                                    && HEAD_DEDUP_IO_CLOSE_ERR_MSG.equals(ex.getCause().getMessage())
+                                    && consumer.isDedupOn() && consumer.isHeadDedupExed()
+                                    && consumer.getDedupResult() != null) {
+                                result.setRemoteFileName(HeadDataDedupResponseConsumer
+                                        .resolveFileNameFromURL(param.getUrl()));
+                                result.setCachedFileKey(consumer.getDedupResult());
+                                BasicStatusLine statusLine = new BasicStatusLine(
+                                        new ProtocolVersion("HTTP", 1, 1), HttpStatus.SC_OK,
+                                        "HeadDedup success.");
+                                BasicHttpResponse dummyResponse = new BasicHttpResponse(statusLine);
+                                result.setHttpResponse(dummyResponse);
+                            } else {
+                                // 下载过程有错误抛出，
+                                Throwable err = state.resolveError(ex);
+                                Pair<Integer, String> codeNMsg = resolveErrCodeAndMsg(err);
+                                result.setErrCode(codeNMsg.getFirst());
+                                result.setErrMsg(codeNMsg.getSecond());
+                                state.error = err;
+                                state.resumeFrom = resumableOf(param, consumer);
+                            }
+                            return result;
+                        } else {
+                            return result;
+                        }
+                    } finally {
+                        consumer.releaseResources();
+                    }
+                });
+    }
+
+    // 单连接下载中断后，若已写入了部分数据且远程文件有validator，则重试时可以Range请求剩余部分
+    private static DownloadCheckpoint resumableOf(AsyncHttpClientDownloadParam param,
+                                                  HeadDataDedupResponseConsumer consumer) {
+        HttpResponse response = consumer.getResponse();
+        if (consumer.isDedupOn() || response == null || response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+                || consumer.getContentEncoding() != null || consumer.getContentLength() <= 0
+                || consumer.getDownloadIdx() <= 0 || consumer.getDownloadIdx() >= consumer.getContentLength())
+            return null;
+        String validator = ifRangeValidator(response);
+        if (validator == null)
+            return null;
+        DownloadCheckpoint ret = new DownloadCheckpoint(null, param.getUrl(), validator, consumer.getContentLength());
+        ret.addCompleted(0, consumer.getDownloadIdx());
+        return ret;
+    }
+
+    // 分段并行下载: 先以"Range: bytes=0-0"探测文件总长度及服务端对Range的支持，再将目标文件预分配到最终长度，
+    // 切分为多个字节区间并发下载、按位置直接写入，无需事后拼接；服务端忽略Range时探测请求本身即完成了单连接下载
+    // 可续传模式下，若sidecar中的检查点与远程文件一致，则保留目标文件中已完成的区间，只下载缺失的部分
+    // 重试时resumeFrom为上一次尝试留下的检查点，同样只下载缺失的部分
+    private CompletableFuture<AsyncHttpClientDownloadResult> downloadSegmented(AsyncHttpClientDownloadParam param,
+                                                                               long deadlineNanos,
+                                                                               DownloadCheckpoint resumeFrom,
+                                                                               AttemptState state) {
+        File sidecar = param.isResumeOn() ? checkpointFileOf(param) : null;
+        DownloadCheckpoint saved = resumeFrom != null ? resumeFrom
+                : sidecar != null ? DownloadCheckpoint.load(sidecar, param.getUrl()) : null;
+        RandomAccessFile accessFile;
+        try {
+            accessFile = new RandomAccessFile(param.getTargetFile(), "rw");
+            if (saved == null)
+                accessFile.setLength(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileChannel fileChannel = accessFile.getChannel();
+        RangeSegmentConsumer probe = new RangeSegmentConsumer(fileChannel, 0, 1, true, param.getMaxFileSize());
+        state.setUp(probe);
+        AtomicInteger segments = new AtomicInteger(1);
+        AtomicReference<DownloadCheckpoint> checkpoint = new AtomicReference<>();
+        // 探测完成后的预分配(setLength)可能耗时较长，且随后要发起所有分段请求，不在完成探测的multiplexer event loop线程中执行
+        CompletableFuture<RangeSegmentConsumer> segmented = composeOnRespReader(fetchRange(param, probe, "bytes=0-0",
+                null, state, deadlineNanos), p -> {
+            try {
+                if (p.isRangeIgnored() || p.getTotalLength() == 0 || p.getTotalLength() == 1) {
+                    // 续传时目标文件中可能残留更长的旧内容
+                    if (saved != null)
+                        accessFile.setLength(p.isRangeIgnored() ? p.getWritten() : p.getTotalLength());
+                    return CompletableFuture.completedFuture(p);
+                }
+                if (p.getTotalLength() < 0) {
+                    // 服务端未给出文件总长度，无法切分及续传，以不带Range的请求单连接下载
+                    accessFile.setLength(0);
+                    RangeSegmentConsumer whole = new RangeSegmentConsumer(fileChannel, 0, 1, true,
+                            param.getMaxFileSize());
+                    state.setUp(whole);
+                    return fetchRange(param, whole, null, null, state, deadlineNanos);
+                }
+                long total = p.getTotalLength();
+                String validator = ifRangeValidator(p.getResponse());
+                List<long[]> ranges;
+                if (saved != null && saved.matches(total, validator) && accessFile.length() >= saved.completedEnd()) {
+                    checkpoint.set(saved);
+                    accessFile.setLength(total);
+                    ranges = saved.missingRanges();
+                    logger.info("Resuming download for url: {}, {} of {} bytes remaining.", param.getUrl(),
+                            ranges.stream().mapToLong(r -> r[1] - r[0]).sum(), total);
+                } else {
+                    // 未开启续传时检查点只记录在内存中，供失败重试时续传
+                    checkpoint.set(new DownloadCheckpoint(sidecar, param.getUrl(), validator, total));
+                    accessFile.setLength(0);
+                    accessFile.setLength(total);
+                    ranges = Collections.singletonList(new long[]{0, total});
+                }
+                checkpoint.get().bind(fileChannel, respReaderPool, param.getCheckpointInterval());
+                return fetchSegments(param, fileChannel, ranges, validator, checkpoint.get(), state, segments,
+                        deadlineNanos).thenApply(v -> p);
+            } catch (Exception e) {
+                CompletableFuture<RangeSegmentConsumer> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        });
+        return handleOnRespReader(segmented, (p, ex) -> {
+            try {
+                AsyncHttpClientDownloadResult result = new AsyncHttpClientDownloadResult();
+                if (ex != null) {
+                    // 保存已完成的进度，供重试或重启后续传
+                    if (checkpoint.get() != null)
+                        checkpoint.get().flush();
+                    Throwable cause = state.resolveError(
+                            ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                    state.error = cause;
+                    state.resumeFrom = checkpoint.get();
+                    Pair<Integer, String> codeNMsg = resolveErrCodeAndMsg(cause);
+                    result.setErrCode(codeNMsg.getFirst());
+                    result.setErrMsg(codeNMsg.getSecond());
+                    logger.error("Segmented downloading for url: {} failed, errCode: {}, errMsg: {}",
+                            param.getUrl(), result.getErrCode(), result.getErrMsg());
+                    return result;
+                }
+                if (checkpoint.get() != null)
+                    checkpoint.get().discard();
+                else if (sidecar != null)
+                    DownloadCheckpoint.delete(sidecar);
+                long fileSize = p.isRangeIgnored() ? p.getWritten() : p.getTotalLength();
+                // 对调用方而言分段下载与完整下载无异: response呈现为200，entity为下载好的文件
+                HttpResponse response = p.getResponse();
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
+                    response.setStatusLine(response.getProtocolVersion(), HttpStatus.SC_OK, "OK");
+                response.removeHeaders(HttpHeaders.CONTENT_RANGE);
+                FileEntity entity = new FileEntity(param.getTargetFile(), p.getContentType());
+                if (p.getContentEncoding() != null)
+                    entity.setContentEncoding(p.getContentEncoding());
+                response.setEntity(entity);
+                result.setHttpResponse(response);
+                result.setFile(param.getTargetFile());
+                result.setRemoteFileName(HeadDataDedupResponseConsumer.resolveFileName(param.getUrl(), response));
+                result.setContentType(p.getContentType());
+                result.setContentEncoding(p.getContentEncoding());
+                result.setFileSize(fileSize);
+                logger.info("Segmented downloading for url: {} success, {} bytes in {} segment(s).", param.getUrl(),
+                        fileSize, segments.get());
+                return result;
+            } finally {
+                IOUtils.closeQuietly(fileChannel);
+                IOUtils.closeQuietly(accessFile);
+            }
+        });
+    }
+
+    // 在response处理线程池中以fn继续source的结果，source失败或线程池已满时直接以失败结束
+    private <T, R> CompletableFuture<R> composeOnRespReader(CompletableFuture<T> source,
+                                                            Function<? super T, CompletableFuture<R>> fn) {
+        return handleOnRespReader(source, (r, ex) -> {
+            if (ex == null)
+                return fn.apply(r);
+            CompletableFuture<R> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
+
+    // 在response处理线程池中以fn处理source的结果；source通常在multiplexer的event loop线程中完成，线程池已满时不能在该线程中做正常处理，
+    // 而是立即以RejectedExecutionException调用fn，使其只走失败分支释放资源，下载随之以失败结束
+    private <T, R> CompletableFuture<R> handleOnRespReader(CompletableFuture<T> source,
+                                                           BiFunction<? super T, Throwable, ? extends R> fn) {
+        CompletableFuture<R> ret = new CompletableFuture<>();
+        source.whenComplete((r, ex) -> {
+            try {
+                respReaderPool.execute(() -> {
+                    try {
+                        ret.complete(fn.apply(r, ex));
+                    } catch (Throwable e) {
+                        ret.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException rejected) {
+                logger.warn("Response handler pool of {} is full, failing the download.", profile.getName());
+                try {
+                    ret.complete(fn.apply(null, rejected));
+                } catch (Throwable e) {
+                    ret.completeExceptionally(e);
+                }
+            }
+        });
+        return ret;
+    }
+
+    private static File checkpointFileOf(AsyncHttpClientDownloadParam param) {
+        return param.getCheckpointFile() != null ? param.getCheckpointFile()
+                : new File(param.getTargetFile().getPath() + ".ckpt");
+    }
+
+    // 将待下载的区间切分为多个分块，由SegmentScheduler以自适应的并发连接数下载，任一分块失败即取消其余分块，并以最先发生的错误作为整体的错误；
+    // 未开启分段时(仅续传)以单个连接逐个下载缺失的区间
+    private CompletableFuture<Void> fetchSegments(AsyncHttpClientDownloadParam param, FileChannel fileChannel,
+                                                  List<long[]> ranges, String validator,
+                                                  DownloadCheckpoint checkpoint, AttemptState state,
+                                                  AtomicInteger segments,
+                                                  long deadlineNanos) {
+        long missing = ranges.stream().mapToLong(r -> r[1] - r[0]).sum();
+        int maxConnections = !param.isSegmentedOn() ? 1
+                : Math.min(param.getMaxSegments(), profile.getPoolConfig().getMaxPerRoute());
+        long chunkSize = !param.isSegmentedOn() ? Math.max(1, missing)
+                : SegmentScheduler.chunkSizeOf(missing, param.getMinSegmentSize(), maxConnections);
+        SegmentScheduler scheduler = new SegmentScheduler(ranges, chunkSize, maxConnections, chunk -> {
+            RangeSegmentConsumer consumer = new RangeSegmentConsumer(fileChannel, chunk[0], chunk[1] - chunk[0],
+                    false, param.getMaxFileSize(), checkpoint);
+            state.setUp(consumer);
+            return fetchRange(param, consumer, "bytes=" + chunk[0] + "-" + (chunk[1] - 1), validator, state,
+                    deadlineNanos);
+        });
+        segments.set(scheduler.getChunkCount());
+        return scheduler.start(INITIAL_SEGMENT_CONNECTIONS).whenComplete((r, ex) -> {
+            if (scheduler.getChunkCount() > 1)
+                logger.info("Segmented downloading for url: {}, {} chunk(s) over at most {} connection(s).",
+                        param.getUrl(), scheduler.getChunkCount(), scheduler.getPeakConnections());
+        });
+    }
+
+    // 分段请求的If-Range条件: 优先使用强ETag，其次Last-Modified，使下载过程中远程文件若被修改，分段请求会得到完整的200响应而被识别为失败
+    private static String ifRangeValidator(HttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null && StringUtils.isNotBlank(etag.getValue()) && !etag.getValue().startsWith("W/"))
+            return etag.getValue();
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified != null ? lastModified.getValue() : null;
+    }
+
+    // 以给定的consumer发起一次(Range)请求，range为null时请求完整文件
+    private CompletableFuture<RangeSegmentConsumer> fetchRange(AsyncHttpClientDownloadParam param,
+                                                               RangeSegmentConsumer consumer, String range,
+                                                               String ifRange, AttemptState state,
+                                                               long deadlineNanos) {
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            CompletableFuture<RangeSegmentConsumer> ret = new CompletableFuture<>();
+            ret.completeExceptionally(new TimeoutException("Total timeout reached before segment started."));
+            return ret;
+        }
+        HttpUriRequest request = createRequest(param);
+        if (range != null) {
+            request.setHeader(HttpHeaders.RANGE, range);
+            if (ifRange != null)
+                request.setHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        CompletableFuture<Void> completionSignal = new CompletableFuture<>();
+        return state.watch(multiplexer.submitFuture(client.execute(HttpAsyncMethods.create(request), consumer,
+                new FutureCallback<RangeSegmentConsumer>() {
+                    @Override
+                    public void completed(RangeSegmentConsumer result) {
+                        completionSignal.complete(null);
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        completionSignal.complete(null);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        completionSignal.complete(null);
+                    }
+                }), completionSignal, deadlineNanos));
+    }
+
+    private HttpUriRequest createRequest(AsyncHttpClientDownloadParam param) {
+        RequestBuilder builder = RequestBuilder.get().setUri(param.getUrl())
+                .setConfig(createReqConf(param));
+        if (param.isForceHttp1())
+            builder.setVersion(HttpVersion.HTTP_1_0);
+        // 单次下载指定的userAgent覆盖profile中的默认值
+        if (param.getUserAgent() != null)
+            builder.setHeader(HttpHeaders.USER_AGENT, param.getUserAgent());
+        for (Pair<String, String> p : param.getHeaders()) {
+            builder.addHeader(p.getFirst(), p.getSecond());
+        }
+        return builder.build();
+    }
+
+    private RequestConfig createReqConf(AsyncHttpClientDownloadParam param) {
+        return RequestConfig.custom().setConnectTimeout(param.getConnectTimeout() * 1000)
+                .setConnectionRequestTimeout(param.getConnectTimeout() * 1000)
+                .setRedirectsEnabled(param.isFollowRedirects())
+                .setSocketTimeout((param.getTotalTimeout() - param.getConnectTimeout()) * 1000)
+                .setCircularRedirectsAllowed(false).setCookieSpec(CookieSpecs.DEFAULT)
+                .setExpectContinueEnabled(true).setMaxRedirects(param.getMaxRedirect())
+                .setProxy(resolveProxy(param.getProxy())).build();
+    }
+
+    static Pair<Integer, String> resolveErrCodeAndMsg(Throwable ex) {
+        Preconditions.checkArgument(ex != null);
+        if (ex instanceof ExecutionException)
+            ex = ex.getCause();
+        if (ex instanceof HttpNot200Exception) {
+            return new Pair<>(22,
+                    String.format("Non-200 status code returned: %s.", ex.getMessage()));
+        }
+        if (ex instanceof DownloadSizeExceedsLimitException) {
+            return new Pair<>(63,
+                    String.format("Maximum file size exceeded: %s.", ex.getMessage()));
+        }
+        if (ex instanceof ConnectException) {
+            return new Pair<>(7, String.format("Failed to connect to host: %s.", ex.getMessage()));
+        }
+        if (ex instanceof TimeoutException || ex instanceof SocketTimeoutException) {
+            return new Pair<>(28, String.format("Operation timeout: %s.", ex.getMessage()));
+        }
+        if (ex instanceof ConnectionClosedException) {
+            return new Pair<>(18, String.format(
+                    "Partial file. Only a part of the file was transferred: %s.", ex.getMessage()));
+        }
+        if (ex instanceof LowSpeedException) {
+            return new Pair<>(-4, String.format("Low speed limit reached: %s.", ex.getMessage()));
+        }
+
+        return new Pair<>(-3, ExceptionUtils.printAsString(ex));
+    }
+
+    /**
+     * @return 连接池的总体统计(租用中、空闲、等待租用的连接数及上限)
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return 连接池中各route的统计，key为route的字符串形式
+     */
+    public Map<String, PoolStats> getRoutePoolStats() {
+        Map<String, PoolStats> ret = new HashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes())
+            ret.put(route.toString(), connectionManager.getStats(route));
+        return ret;
+    }
+
+    private HttpHost resolveProxy(String proxy) {
+        // hzss_complex:8fzpSV6pzTe5ApYK@172.21.1.3:10041,
+        if (StringUtils.isBlank(proxy))
+            return null;
+        Pair<AuthScope, Credentials> scopeAndCreds = resolveAuthInfo(proxy);
+        if (!addedToCreds.contains(scopeAndCreds.getFirst()) && scopeAndCreds.getSecond() != null) {
+            credentialsProvider.setCredentials(scopeAndCreds.getFirst(), scopeAndCreds.getSecond());
+            addedToCreds.add(scopeAndCreds.getFirst());
+        }
+        return scopeAndCreds.getFirst().getOrigin();
+    }
+
+    private static Pair<AuthScope, Credentials> resolveAuthInfo(String proxy) {
+        if (StringUtils.countMatches(proxy, ':') == 2
+                && StringUtils.countMatches(proxy, '@') == 1) {
+            return new Pair<>(
+                    new AuthScope(HttpHost.create(StringUtils.substringAfterLast(proxy, "@"))),
+                    new UsernamePasswordCredentials(StringUtils.substringBeforeLast(proxy, "@")));
+        } else if (!StringUtils.contains(proxy, '@') && StringUtils.countMatches(proxy, ':') == 1) {
+            return new Pair<>(new AuthScope(HttpHost.create(proxy)), null);
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal proxy string: %s, proxy string must be of format: [username:password@]ip:port",
+                    proxy));
+        }
+    }
+
+    private static SSLContext createSslContext() throws Exception {
+        X509TrustManager tm = new X509TrustManager() {
+
+            public void checkClientTrusted(X509Certificate[] xcs, String string) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] xcs, String string) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        };
+
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(null, new TrustManager[]{tm}, null);
+        return ctx;
+    }
+
+    private static PoolingNHttpClientConnectionManager createNHttpClientConnectionManager(
+            DownloadProfile profile, AsyncHttpClientPoolConfig pc) throws IOReactorException {
+        AtomicInteger ioSeq = new AtomicInteger();
+        ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                .setSoKeepAlive(pc.isKeepAlive()).setConnectTimeout(profile.getConnectTimeout() * 1000)
+                .setSoTimeout(profile.getSocketTimeout() * 1000).setIoThreadCount(profile.getIoThreads())
+                .setTcpNoDelay(true).build(),
+                r -> new Thread(r, profile.getName() + "-io-dispatcher-" + ioSeq.getAndIncrement()));
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                ioReactor);
+        connectionManager.setDefaultMaxPerRoute(pc.getMaxPerRoute());
+        connectionManager.setMaxTotal(pc.getMaxTotal());
+        return connectionManager;
+    }
+
+    // 连接的keep-alive时限取服务端Keep-Alive header给出的时限与keepAliveTimeout中较短者:
+    // 异步连接池没有阻塞式的stale check，超过时限的连接在租用时即因过期被丢弃，而非冒险复用
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(long keepAliveTimeout) {
+        return (response, context) -> {
+            long serverHint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (keepAliveTimeout <= 0)
+                return serverHint;
+            return serverHint > 0 ? Math.min(serverHint, keepAliveTimeout) : keepAliveTimeout;
+        };
+    }
+
+    // 定期关闭已过期及空闲过久的连接，同时清理已取消的等待租用请求
+    private static ScheduledExecutorService startIdleConnEvictor(String name, PoolingNHttpClientConnectionManager cm,
+                                                                 AsyncHttpClientPoolConfig pc) {
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-idle-conn-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(() -> Runner.tryExec(() -> {
+            cm.closeExpiredConnections();
+            cm.closeIdleConnections(pc.getMaxIdleTime(), TimeUnit.SECONDS);
+            cm.validatePendingRequests();
+        }), pc.getEvictInterval(), pc.getEvictInterval(), TimeUnit.SECONDS);
+        return evictor;
+    }
+
+    /**
+     * @return 创建本客户端所用的profile
+     */
+    public DownloadProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * 关闭本客户端: 关闭其io reactor及所有连接、multiplexer和线程池，不影响其它客户端
+     */
+    public void shutdown() {
+        if (idleConnEvictor != null)
+            Runner.shutdownThreadPool(idleConnEvictor, 1);
+        Runner.tryExec(() -> {
+            try {
+                client.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Runner.tryExec(multiplexer::destroy);
+        Runner.shutdownThreadPool(respReaderPool, 5);
+    }
+}
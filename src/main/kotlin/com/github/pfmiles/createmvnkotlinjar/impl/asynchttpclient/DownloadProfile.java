@@ -0,0 +1,112 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+/**
+ * DownloadClient的配置: 同一个profile创建的client共享一套io reactor、连接池、multiplexer及线程池，
+ * 不同负载可使用不同的profile创建各自独立的client，互不影响地调优和关闭
+ * 与之相对，AsyncHttpClientDownloadParam中的connectTimeout、totalTimeout等只作用于单次下载请求
+ *
+ * @author pf-miles
+ */
+public class DownloadProfile {
+    // profile名，用作client内部各线程名的前缀
+    private String name = "DownloadClient";
+    // io reactor层面的连接超时, s
+    private int connectTimeout = 30;
+    // io reactor层面的socket读超时, s
+    private int socketTimeout = 270;
+    // 下载参数中未指定userAgent时使用的user agent
+    private String userAgent = "HttpAsyncClient";
+    // io reactor的io dispatcher线程数
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    // response处理线程数
+    private int responseHandlerThreads = Runtime.getRuntime().availableProcessors() * 2;
+    // response处理任务等待队列的容量，线程及队列均满时新的response处理被拒绝，对应下载以RejectedExecutionException失败，
+    // 而不是在multiplexer的event loop线程中执行
+    private int responseQueueCapacity = 4096;
+    // 下载future所在multiplexer的轮询时间间隔ms
+    private long eventLoopInterval = 100;
+    // 本client所有下载合计的速度限制, KB/s，0表示不限制；单次下载还受下载参数中maxDownloadSpeed的限制
+    private int maxDownloadSpeed;
+    // 连接池配置，默认每次下载都新建连接，可开启keep-alive连接复用模式；连接池状况可通过DownloadClient.getPoolStats查看
+    private AsyncHttpClientPoolConfig poolConfig = new AsyncHttpClientPoolConfig();
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getResponseHandlerThreads() {
+        return responseHandlerThreads;
+    }
+
+    public void setResponseHandlerThreads(int responseHandlerThreads) {
+        this.responseHandlerThreads = responseHandlerThreads;
+    }
+
+    public int getResponseQueueCapacity() {
+        return responseQueueCapacity;
+    }
+
+    public void setResponseQueueCapacity(int responseQueueCapacity) {
+        this.responseQueueCapacity = responseQueueCapacity;
+    }
+
+    public long getEventLoopInterval() {
+        return eventLoopInterval;
+    }
+
+    public void setEventLoopInterval(long eventLoopInterval) {
+        this.eventLoopInterval = eventLoopInterval;
+    }
+
+    public int getMaxDownloadSpeed() {
+        return maxDownloadSpeed;
+    }
+
+    public void setMaxDownloadSpeed(int maxDownloadSpeed) {
+        this.maxDownloadSpeed = maxDownloadSpeed;
+    }
+
+    public AsyncHttpClientPoolConfig getPoolConfig() {
+        return poolConfig;
+    }
+
+    public void setPoolConfig(AsyncHttpClientPoolConfig poolConfig) {
+        this.poolConfig = poolConfig;
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import com.github.pfmiles.createmvnkotlinjar.impl.TokenBucket;
+import org.apache.http.nio.IOControl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载限速: 由单次下载自己的令牌桶与client全局共享的令牌桶共同约束，consumer每次传输前取得允许的传输量，传输后按实际传输量计费
+ * 令牌不足时以IOControl.suspendInput暂停该连接的读取，由共享定时器在令牌足够时requestInput恢复，不阻塞io reactor线程
+ *
+ * @author pf-miles
+ */
+class DownloadThrottle {
+    // 每次至少允许传输的量, bytes，避免令牌刚补充一点就被唤醒、以极小的步长传输
+    static final long QUANTUM = 16 * 1024;
+
+    private final TokenBucket[] buckets;
+
+    private DownloadThrottle(TokenBucket[] buckets) {
+        this.buckets = buckets;
+    }
+
+    /**
+     * @return 由给定令牌桶(忽略null)共同约束的限速，全部为null时返回null，即不限速
+     */
+    static DownloadThrottle of(TokenBucket... buckets) {
+        List<TokenBucket> list = new ArrayList<>();
+        for (TokenBucket b : buckets)
+            if (b != null)
+                list.add(b);
+        return list.isEmpty() ? null : new DownloadThrottle(list.toArray(new TokenBucket[0]));
+    }
+
+    /**
+     * 以KB/s计的速率创建令牌桶，容量为0.1秒的传输量且不小于QUANTUM
+     *
+     * @return 速率不大于0时返回null，即不限速
+     */
+    static TokenBucket bucketOf(int kbPerSecond) {
+        if (kbPerSecond <= 0)
+            return null;
+        long rate = kbPerSecond * 1024L;
+        return new TokenBucket(rate, Math.max(rate / 10, QUANTUM));
+    }
+
+    /**
+     * @param want 期望传输的量
+     * @return 本次允许传输的量，为0表示应暂停
+     */
+    long allowance(long want) {
+        long min = Long.MAX_VALUE;
+        for (TokenBucket b : buckets)
+            min = Math.min(min, b.available());
+        if (min <= 0)
+            return 0;
+        return Math.min(want, Math.max(min, QUANTUM));
+    }
+
+    /**
+     * 按实际传输量计费
+     */
+    void consume(long n) {
+        if (n <= 0)
+            return;
+        for (TokenBucket b : buckets)
+            b.consume(n);
+    }
+
+    /**
+     * 暂停连接的读取，待各令牌桶均攒够QUANTUM个令牌后恢复
+     *
+     * @param monitor 该连接所属下载的低速检测，暂停的时长不计入其速度统计，可为null
+     */
+    void pause(IOControl ioctrl, LowSpeedMonitor monitor) {
+        long waitNanos = 0;
+        for (TokenBucket b : buckets)
+            waitNanos = Math.max(waitNanos, b.nanosUntil(Math.min(QUANTUM, b.getCapacity())));
+        ioctrl.suspendInput();
+        if (monitor != null)
+            monitor.pauseStarted();
+        // 恢复逻辑在共享线程池中执行，不占用共享定时线程
+        Runner.delay(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999))).thenRunAsync(() -> {
+            if (monitor != null)
+                monitor.pauseEnded();
+            ioctrl.requestInput();
+        }, Runner.sharedExecutor());
+    }
+}
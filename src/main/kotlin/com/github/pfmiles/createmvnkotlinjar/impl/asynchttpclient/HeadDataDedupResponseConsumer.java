@@ -57,6 +57,10 @@ public class HeadDataDedupResponseConsumer extends
     // 允许下载的最大文件大小限制, bytes
     private final long maxFileSize;
     private final boolean dedupOn;
+    // 下载限速，null表示不限速
+    private DownloadThrottle throttle;
+    // 低速检测，null表示未开启
+    private LowSpeedMonitor lowSpeedMonitor;
 
     private final RandomAccessFile accessFile;
     private FileChannel fileChannel;
@@ -127,7 +131,7 @@ public class HeadDataDedupResponseConsumer extends
         StatusLine statusLine = response.getStatusLine();
         // 接受1xx, 2xx, 3xx状态
         if (statusLine.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
-            throw new HttpNot200Exception(
+            throw new HttpNot200Exception(statusLine.getStatusCode(),
                     String.format("Response returned non-200 code: %s, errMsg: %s.",
                             statusLine.getStatusCode(), statusLine.getReasonPhrase()));
         }
@@ -222,6 +226,11 @@ public class HeadDataDedupResponseConsumer extends
                     this.bos.write(this.buf.get());
                 }
                 this.downloadIdx += read;
+                // 头部数据的读取不暂停，只计费，由后续的写文件过程偿还
+                if (this.throttle != null)
+                    this.throttle.consume(read);
+                if (this.lowSpeedMonitor != null)
+                    this.lowSpeedMonitor.record(read);
             } else {
                 // EOF(-1) or end of current chunk(0)
                 break;
@@ -249,15 +258,40 @@ public class HeadDataDedupResponseConsumer extends
         long transferred = -2;
         // decoder.isCompleted()或-1说明EOF，0说明本次chunk数据传输结束
         while (!decoder.isCompleted() && transferred != 0 && transferred != -1) {
+            long step = DOWNLOAD_STEP;
+            if (this.throttle != null) {
+                step = this.throttle.allowance(step);
+                if (step == 0) {
+                    this.throttle.pause(ioctrl, this.lowSpeedMonitor);
+                    return;
+                }
+            }
             if (decoder instanceof FileContentDecoder) {
                 transferred = ((FileContentDecoder) decoder).transfer(this.fileChannel,
-                        this.downloadIdx, DOWNLOAD_STEP);
+                        this.downloadIdx, step);
             } else {
                 transferred = this.fileChannel.transferFrom(new ContentDecoderChannel(decoder),
-                        this.downloadIdx, DOWNLOAD_STEP);
+                        this.downloadIdx, step);
+            }
+            // 对端关闭连接时FileChannel.transferFrom返回0而非-1，zero-copy的decoder因此感知不到EOF，
+            // 以一次普通读取来探测，body不完整时decoder会抛出ConnectionClosedException
+            if (transferred == 0 && !decoder.isCompleted()) {
+                this.buf.clear();
+                this.buf.limit((int) Math.min(this.buf.capacity(), step));
+                transferred = decoder.read(this.buf);
+                if (transferred > 0) {
+                    this.buf.flip();
+                    long pos = this.downloadIdx;
+                    while (this.buf.hasRemaining())
+                        pos += this.fileChannel.write(this.buf, pos);
+                }
             }
             if (transferred > 0) {
                 this.downloadIdx += transferred;
+                if (this.throttle != null)
+                    this.throttle.consume(transferred);
+                if (this.lowSpeedMonitor != null)
+                    this.lowSpeedMonitor.record(transferred);
             }
             if (this.downloadIdx > this.maxFileSize) {
                 ioctrl.shutdown();
@@ -305,7 +339,7 @@ public class HeadDataDedupResponseConsumer extends
         IOUtils.closeQuietly(this.bos);
     }
 
-    private static String resolveFileName(String url, HttpResponse response) {
+    static String resolveFileName(String url, HttpResponse response) {
         String filename = resolveNameFromHeader(response);
         if (StringUtils.isBlank(filename)) {
             filename = resolveFileNameFromURL(url);
@@ -359,4 +393,29 @@ public class HeadDataDedupResponseConsumer extends
     public boolean isHeadDedupExed() {
         return headDedupExed;
     }
+
+    void setThrottle(DownloadThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    void setLowSpeedMonitor(LowSpeedMonitor lowSpeedMonitor) {
+        this.lowSpeedMonitor = lowSpeedMonitor;
+    }
+
+    HttpResponse getResponse() {
+        return response;
+    }
+
+    Header getContentEncoding() {
+        return contentEncoding;
+    }
+
+    long getContentLength() {
+        return contentLength;
+    }
+
+    // 已写入目标文件的bytes数，头部数据去重开启时其中可能包含尚未写入文件的头部数据
+    long getDownloadIdx() {
+        return downloadIdx;
+    }
 }
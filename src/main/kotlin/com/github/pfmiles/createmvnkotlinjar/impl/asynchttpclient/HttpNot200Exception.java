@@ -6,6 +6,9 @@ package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
  * 2022-12-10 17:16
  */
 public class HttpNot200Exception extends RuntimeException {
+    // 响应的http状态码，0表示未知
+    private int statusCode;
+
     public HttpNot200Exception() {
         super();
     }
@@ -21,4 +24,13 @@ public class HttpNot200Exception extends RuntimeException {
     public HttpNot200Exception(Throwable cause) {
         super(cause);
     }
+
+    public HttpNot200Exception(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
 }
@@ -0,0 +1,20 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+/**
+ * 下载速度持续低于lowSpeedWaterline达lowSpeedTimeLimit之久，下载被放弃
+ *
+ * @author pf-miles
+ */
+public class LowSpeedException extends RuntimeException {
+    public LowSpeedException() {
+        super();
+    }
+
+    public LowSpeedException(String message) {
+        super(message);
+    }
+
+    public LowSpeedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
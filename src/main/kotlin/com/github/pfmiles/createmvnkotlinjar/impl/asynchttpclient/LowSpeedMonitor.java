@@ -0,0 +1,165 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次下载尝试的低速检测: consumer在io线程中汇报收到的bytes数，共享定时器每秒触发一次采样，
+ * 最近lowSpeedTimeLimit秒的滑动窗口内平均速度低于lowSpeedWaterline时，取消该次尝试的所有请求并以LowSpeedException结束
+ * 采样由定时器驱动而非依赖数据到达，因此服务端完全停止发送数据时同样能被检测到
+ * 因限速(下载自身或client全局的maxDownloadSpeed)而暂停读取的时长不计入速度统计，限速导致的慢不会被误判为低速；
+ * 窗口内未暂停的时长不足一个采样间隔时不做判定
+ *
+ * @author pf-miles
+ */
+class LowSpeedMonitor {
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    private final String url;
+    // bytes/s
+    private final long waterline;
+    // 滑动窗口长度, s
+    private final int timeLimit;
+    private final LongAdder received = new LongAdder();
+    // 各秒收到的bytes数及未因限速暂停的时长(ns)组成的环，只在采样逻辑中访问，各次采样之间有先后顺序
+    private final long[] samples;
+    private final long[] activeNanos;
+    private int sampled;
+    private long lastTotal;
+    private long lastSampleAt;
+    private long lastThrottled;
+    // 以下限速暂停状态在this锁的保护下访问: 处于暂停中的连接数、最近一次开始暂停的时刻，及累计的暂停时长(各连接暂停时段的并集)
+    private int paused;
+    private long pausedSince;
+    private long throttledNanos;
+    // 本次尝试中进行中的请求，低速时一并取消
+    private final Set<Future<?>> watched = ConcurrentHashMap.newKeySet();
+    private volatile LowSpeedException tripped;
+    private volatile boolean stopped;
+    private volatile CompletableFuture<Void> nextSample;
+
+    private LowSpeedMonitor(String url, long waterline, int timeLimit) {
+        this.url = url;
+        this.waterline = waterline;
+        this.timeLimit = timeLimit;
+        this.samples = new long[timeLimit];
+        this.activeNanos = new long[timeLimit];
+        this.lastSampleAt = System.nanoTime();
+    }
+
+    /**
+     * 按下载参数创建并启动低速检测，未开启lowSpeedLimitOn时返回null
+     */
+    static LowSpeedMonitor start(AsyncHttpClientDownloadParam param) {
+        if (!param.isLowSpeedLimitOn())
+            return null;
+        LowSpeedMonitor ret = new LowSpeedMonitor(param.getUrl(), param.getLowSpeedWaterline(),
+                param.getLowSpeedTimeLimit());
+        ret.scheduleSample();
+        return ret;
+    }
+
+    void record(long bytes) {
+        if (bytes > 0)
+            received.add(bytes);
+    }
+
+    /**
+     * 本次尝试的某个连接因限速开始暂停读取
+     */
+    synchronized void pauseStarted() {
+        if (paused++ == 0)
+            pausedSince = System.nanoTime();
+    }
+
+    /**
+     * 因限速暂停的连接恢复读取
+     */
+    synchronized void pauseEnded() {
+        if (--paused == 0)
+            throttledNanos += System.nanoTime() - pausedSince;
+    }
+
+    // 截至now累计的限速暂停时长
+    private synchronized long throttledUntil(long now) {
+        return paused > 0 ? throttledNanos + now - pausedSince : throttledNanos;
+    }
+
+    /**
+     * 登记本次尝试中的请求，低速时将被取消；已判定为低速时立即取消
+     */
+    <F extends Future<?>> F watch(F future) {
+        watched.add(future);
+        if (tripped != null)
+            future.cancel(true);
+        return future;
+    }
+
+    /**
+     * 本次尝试结束，停止采样
+     */
+    void stop() {
+        stopped = true;
+        CompletableFuture<Void> next = nextSample;
+        if (next != null)
+            next.cancel(false);
+        watched.clear();
+    }
+
+    /**
+     * @return 已判定为低速时返回对应的异常，否则返回null
+     */
+    LowSpeedException getTripped() {
+        return tripped;
+    }
+
+    private void scheduleSample() {
+        if (stopped)
+            return;
+        CompletableFuture<Void> next = Runner.delay(SAMPLE_INTERVAL);
+        nextSample = next;
+        // 采样及低速时取消请求在共享线程池中进行，不占用共享定时线程
+        next.thenRunAsync(this::sample, Runner.sharedExecutor());
+        // 登记与停止并发时，确保不遗留已无用的定时条目
+        if (stopped)
+            next.cancel(false);
+    }
+
+    private void sample() {
+        if (stopped)
+            return;
+        long now = System.nanoTime();
+        long total = received.sum();
+        long throttled = throttledUntil(now);
+        int slot = sampled++ % timeLimit;
+        samples[slot] = total - lastTotal;
+        activeNanos[slot] = Math.max(0, now - lastSampleAt - (throttled - lastThrottled));
+        lastTotal = total;
+        lastSampleAt = now;
+        lastThrottled = throttled;
+        if (sampled >= timeLimit) {
+            long windowBytes = 0;
+            long windowActive = 0;
+            for (int i = 0; i < timeLimit; i++) {
+                windowBytes += samples[i];
+                windowActive += activeNanos[i];
+            }
+            if (windowActive >= TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL)
+                    && (double) windowBytes * TimeUnit.SECONDS.toNanos(1) < (double) waterline * windowActive) {
+                tripped = new LowSpeedException(String.format(
+                        "Download speed of url: %s stayed below %s bytes/s for %ss (%sms unthrottled), only %s bytes received",
+                        url, waterline, timeLimit, TimeUnit.NANOSECONDS.toMillis(windowActive), windowBytes));
+                for (Future<?> f : watched)
+                    f.cancel(true);
+                return;
+            }
+        }
+        scheduleSample();
+    }
+}
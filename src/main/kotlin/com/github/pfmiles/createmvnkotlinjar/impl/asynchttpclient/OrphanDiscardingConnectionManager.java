@@ -0,0 +1,109 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Runner;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非keep-alive模式下使用的连接管理器包装: 下载被取消时，其仍在建立中的连接在建立完成后直接关闭并归还，而不是作为空闲连接留在池中
+ * 被包装的连接池在租用请求已被取消时，会把随后建立完成的连接当作可复用的空闲连接放回池中，非keep-alive模式下它将不再被使用也不会被关闭；
+ * 因此这里不把取消传递给内部的租用请求，而是等连接交付时发现租用方已取消，只关闭这一个连接，池中其它连接不受影响
+ *
+ * @author pf-miles
+ */
+class OrphanDiscardingConnectionManager implements NHttpClientConnectionManager {
+    private final NHttpClientConnectionManager delegate;
+
+    OrphanDiscardingConnectionManager(NHttpClientConnectionManager delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+                                                           long leaseTimeout, TimeUnit tunit,
+                                                           FutureCallback<NHttpClientConnection> callback) {
+        BasicFuture<NHttpClientConnection> ret = new BasicFuture<>(callback);
+        delegate.requestConnection(route, state, connectTimeout, leaseTimeout, tunit,
+                new FutureCallback<NHttpClientConnection>() {
+                    @Override
+                    public void completed(NHttpClientConnection conn) {
+                        // 租用方已取消: 关闭后归还，已关闭的连接不会再留在池中
+                        if (!ret.completed(conn)) {
+                            Runner.tryExec(() -> {
+                                try {
+                                    conn.shutdown();
+                                } catch (IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            });
+                            Runner.tryExec(() -> delegate.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS));
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        ret.failed(ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        ret.cancel();
+                    }
+                });
+        return ret;
+    }
+
+    @Override
+    public void releaseConnection(NHttpClientConnection conn, Object newState, long validDuration, TimeUnit tunit) {
+        delegate.releaseConnection(conn, newState, validDuration, tunit);
+    }
+
+    @Override
+    public void startRoute(NHttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.startRoute(conn, route, context);
+    }
+
+    @Override
+    public void upgrade(NHttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(NHttpClientConnection conn, HttpRoute route, HttpContext context) {
+        delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public boolean isRouteComplete(NHttpClientConnection conn) {
+        return delegate.isRouteComplete(conn);
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTime, TimeUnit tunit) {
+        delegate.closeIdleConnections(idleTime, tunit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void execute(IOEventDispatch eventDispatch) throws IOException {
+        delegate.execute(eventDispatch);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        delegate.shutdown();
+    }
+}
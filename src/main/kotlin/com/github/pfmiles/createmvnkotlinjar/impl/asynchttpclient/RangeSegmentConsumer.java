@@ -0,0 +1,253 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentDecoderChannel;
+import org.apache.http.nio.FileContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 分段下载中一个字节区间的consumer: 将response body以zero-copy的方式按位置写入多个分段共享的目标文件channel，
+ * 各分段写入互不重叠的区间，且positional写入不改变channel自身的position，因此可并发写入同一个channel
+ * 作为探测请求(probe)时，服务端忽略Range而返回200的情况也被接受，此时完整的body从0开始写入，即回退为单连接下载
+ *
+ * @author pf-miles
+ */
+class RangeSegmentConsumer extends AbstractAsyncResponseConsumer<RangeSegmentConsumer> {
+    // 每次transfer的最大步长, bytes，该步长决定了回退为单连接下载时动态检查最大下载大小的频率
+    private static final long TRANSFER_STEP = 16 * 1024 * 1024;
+    // zero-copy传输未取得数据时，探测EOF的普通读取所用buffer size, bytes
+    private static final int READ_BUF_SIZE = 16 * 1024;
+
+    // 多个分段共享的目标文件channel，由发起分段下载的一方负责关闭
+    private final FileChannel fileChannel;
+    // 本分段在文件中的起始位置
+    private final long start;
+    // 本分段的期望长度
+    private final long length;
+    // 是否为探测请求，探测请求接受服务端忽略Range返回的200
+    private final boolean probe;
+    // 允许下载的最大文件大小限制, bytes
+    private final long maxFileSize;
+    // 可续传下载时汇报进度的检查点，null表示不记录
+    private final DownloadCheckpoint checkpoint;
+    // 下载限速，null表示不限速
+    private DownloadThrottle throttle;
+    // 低速检测，null表示未开启
+    private LowSpeedMonitor lowSpeedMonitor;
+
+    private HttpResponse response;
+    private ContentType contentType;
+    private Header contentEncoding;
+    // Content-Range中给出的文件总长度，-1表示未知
+    private long totalLength = -1;
+    // 服务端是否忽略了Range，返回了完整的body
+    private boolean rangeIgnored;
+    // 本分段已写入的bytes数
+    private long written;
+    private ByteBuffer readBuf;
+
+    RangeSegmentConsumer(FileChannel fileChannel, long start, long length, boolean probe, long maxFileSize) {
+        this(fileChannel, start, length, probe, maxFileSize, null);
+    }
+
+    RangeSegmentConsumer(FileChannel fileChannel, long start, long length, boolean probe, long maxFileSize,
+                         DownloadCheckpoint checkpoint) {
+        Preconditions.checkArgument(fileChannel != null && start >= 0 && length > 0);
+        this.fileChannel = fileChannel;
+        this.start = start;
+        this.length = length;
+        this.probe = probe;
+        this.maxFileSize = maxFileSize;
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) throws IOException {
+        this.response = response;
+        StatusLine statusLine = response.getStatusLine();
+        int code = statusLine.getStatusCode();
+        if (code == HttpStatus.SC_PARTIAL_CONTENT) {
+            long[] range = parseContentRange(response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+            if (range == null || range[0] != start)
+                throw new ClientProtocolException(String.format("Unexpected Content-Range for segment starting at %s: %s.",
+                        start, response.getFirstHeader(HttpHeaders.CONTENT_RANGE)));
+            this.totalLength = range[2];
+        } else if (code == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && probe) {
+            // 对空文件的探测: "bytes */0"
+            long[] range = parseContentRange(response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+            if (range == null || range[2] != 0)
+                throw new HttpNot200Exception(code, String.format("Response returned non-200 code: %s, errMsg: %s.",
+                        code, statusLine.getReasonPhrase()));
+            this.totalLength = 0;
+        } else if (code >= HttpStatus.SC_BAD_REQUEST) {
+            throw new HttpNot200Exception(code, String.format("Response returned non-200 code: %s, errMsg: %s.",
+                    code, statusLine.getReasonPhrase()));
+        } else if (probe) {
+            this.rangeIgnored = true;
+        } else {
+            // 分段请求带有If-Range，返回完整body说明文件在下载过程中已被修改
+            throw new ClientProtocolException(String.format(
+                    "Server returned the whole entity for segment starting at %s, status: %s, the remote file may have changed.",
+                    start, code));
+        }
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        this.contentType = contentType;
+        this.contentEncoding = entity.getContentEncoding();
+        long size = rangeIgnored ? entity.getContentLength() : totalLength;
+        if (size > 0 && size > maxFileSize)
+            throw new DownloadSizeExceedsLimitException(String.format(
+                    "Download file size exceeds limit, downloading file size: %s, size limit: %s.",
+                    size, maxFileSize));
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+        if (!rangeIgnored && totalLength == 0) {
+            // 空文件探测所得416的body无需写入
+            ByteBuffer discard = ByteBuffer.allocate(1024);
+            while (decoder.read(discard) > 0)
+                discard.clear();
+            return;
+        }
+        long transferred = -2;
+        while (!decoder.isCompleted() && transferred != 0 && transferred != -1) {
+            long step = rangeIgnored ? TRANSFER_STEP : length - written;
+            if (step <= 0)
+                throw new ClientProtocolException(String.format(
+                        "Server sent more data than requested for segment starting at %s, length: %s.", start, length));
+            if (throttle != null) {
+                step = throttle.allowance(step);
+                if (step == 0) {
+                    throttle.pause(ioctrl, lowSpeedMonitor);
+                    return;
+                }
+            }
+            if (decoder instanceof FileContentDecoder) {
+                transferred = ((FileContentDecoder) decoder).transfer(fileChannel, start + written, step);
+            } else {
+                transferred = fileChannel.transferFrom(new ContentDecoderChannel(decoder), start + written, step);
+            }
+            // 对端关闭连接时FileChannel.transferFrom返回0而非-1，zero-copy的decoder因此感知不到EOF，
+            // 以一次普通读取来探测，body不完整时decoder会抛出ConnectionClosedException
+            if (transferred == 0 && !decoder.isCompleted())
+                transferred = readToFile(decoder, step);
+            if (transferred > 0) {
+                written += transferred;
+                if (throttle != null)
+                    throttle.consume(transferred);
+                if (lowSpeedMonitor != null)
+                    lowSpeedMonitor.record(transferred);
+                if (checkpoint != null)
+                    checkpoint.advance(start, start + written, transferred);
+            }
+            if (rangeIgnored && written > maxFileSize) {
+                ioctrl.shutdown();
+                throw new DownloadSizeExceedsLimitException(String.format(
+                        "Download file size exceeds limit, current downloaded size: %s, size limit: %s.",
+                        written, maxFileSize));
+            }
+        }
+    }
+
+    private long readToFile(ContentDecoder decoder, long max) throws IOException {
+        if (readBuf == null)
+            readBuf = ByteBuffer.allocate(READ_BUF_SIZE);
+        readBuf.clear();
+        readBuf.limit((int) Math.min(readBuf.capacity(), max));
+        int read = decoder.read(readBuf);
+        if (read > 0) {
+            readBuf.flip();
+            long pos = start + written;
+            while (readBuf.hasRemaining())
+                pos += fileChannel.write(readBuf, pos);
+        }
+        return read;
+    }
+
+    @Override
+    protected RangeSegmentConsumer buildResult(HttpContext context) throws Exception {
+        if (!rangeIgnored && totalLength != 0 && written != length)
+            throw new ConnectionClosedException(String.format(
+                    "Segment starting at %s ended prematurely, expected: %s bytes, received: %s bytes.",
+                    start, length, written));
+        return this;
+    }
+
+    @Override
+    protected void releaseResources() {
+    }
+
+    // 解析"bytes a-b/total"或"bytes */total"，返回{a, b, total}，未知的部分为-1，格式不合法时返回null
+    static long[] parseContentRange(Header header) {
+        if (header == null)
+            return null;
+        String v = StringUtils.trimToEmpty(header.getValue());
+        if (!StringUtils.startsWithIgnoreCase(v, "bytes"))
+            return null;
+        v = v.substring(5).trim();
+        String range = StringUtils.substringBefore(v, "/").trim();
+        String total = StringUtils.substringAfter(v, "/").trim();
+        try {
+            long[] ret = {-1, -1, "*".equals(total) || total.isEmpty() ? -1 : Long.parseLong(total)};
+            if (!"*".equals(range)) {
+                ret[0] = Long.parseLong(StringUtils.substringBefore(range, "-").trim());
+                ret[1] = Long.parseLong(StringUtils.substringAfter(range, "-").trim());
+            }
+            return ret;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    void setThrottle(DownloadThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    void setLowSpeedMonitor(LowSpeedMonitor lowSpeedMonitor) {
+        this.lowSpeedMonitor = lowSpeedMonitor;
+    }
+
+    HttpResponse getResponse() {
+        return response;
+    }
+
+    ContentType getContentType() {
+        return contentType;
+    }
+
+    Header getContentEncoding() {
+        return contentEncoding;
+    }
+
+    long getTotalLength() {
+        return totalLength;
+    }
+
+    boolean isRangeIgnored() {
+        return rangeIgnored;
+    }
+
+    long getWritten() {
+        return written;
+    }
+}
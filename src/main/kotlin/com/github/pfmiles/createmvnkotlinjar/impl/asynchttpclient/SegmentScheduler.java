@@ -0,0 +1,184 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * 分段下载的调度: 将待下载区间切分为多个分块放入队列，由若干并发连接(worker)各自循环领取下一个分块下载，快的连接自然多下载一些分块，
+ * 慢的连接不会拖住整体的尾部；并发连接数从少量开始，每当所有连接平均各完成一个分块，便以这些分块的平均单连接速度乘以连接数估算这一轮的总吞吐，
+ * 与上一轮相比仍有明显提升则将连接数翻倍(不超过上限)，否则不再增加，使连接数适应服务端及链路实际能提供的并行度
+ * 任一分块失败即以该错误结束整体，并取消进行中的其它分块
+ *
+ * @author pf-miles
+ */
+class SegmentScheduler {
+    // 待下载区间至少被切分为最大连接数的多少倍个分块，使连接间能相互分担
+    static final int CHUNKS_PER_CONNECTION = 4;
+    // 吞吐提升不足此比例时不再增加连接
+    private static final double MIN_GAIN = 1.1;
+
+    private final Queue<long[]> chunks;
+    private final int chunkCount;
+    private final int maxConnections;
+    // 发起一个分块[start, end)的下载
+    private final Function<long[], CompletableFuture<?>> fetch;
+    private final CompletableFuture<Void> ret = new CompletableFuture<>();
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // 以下自适应状态均在this锁中访问
+    // 当前的worker数，也即并发连接数
+    private int workers;
+    // 曾达到的最大并发连接数
+    private int peakWorkers;
+    // 连接数是否仍可增加
+    private boolean growing = true;
+    // 当前这一轮(连接数不变期间)的起始时刻、完成的分块数、bytes数及这些分块各自下载耗时之和
+    private long roundStart;
+    private int roundChunks;
+    private long roundBytes;
+    private long roundBusyNanos;
+    // 上一轮的吞吐, bytes/ns
+    private double lastRate;
+
+    /**
+     * @param ranges         待下载的区间，每个元素为{start, end}，end不含
+     * @param chunkSize      分块大小，每个区间按此大小切分
+     * @param maxConnections 并发连接数上限
+     * @param fetch          发起一个分块下载的逻辑，参数为{start, end}
+     */
+    SegmentScheduler(List<long[]> ranges, long chunkSize, int maxConnections,
+                     Function<long[], CompletableFuture<?>> fetch) {
+        Preconditions.checkArgument(chunkSize > 0 && maxConnections > 0);
+        List<long[]> split = new ArrayList<>();
+        for (long[] range : ranges)
+            for (long start = range[0]; start < range[1]; start += chunkSize)
+                split.add(new long[]{start, Math.min(start + chunkSize, range[1])});
+        this.chunks = new ConcurrentLinkedQueue<>(split);
+        this.chunkCount = split.size();
+        this.maxConnections = maxConnections;
+        this.fetch = fetch;
+    }
+
+    /**
+     * 计算分块大小: 不小于minChunkSize，且使missing被切分为至少maxConnections * CHUNKS_PER_CONNECTION个分块
+     */
+    static long chunkSizeOf(long missing, long minChunkSize, int maxConnections) {
+        long perChunk = (missing + (long) maxConnections * CHUNKS_PER_CONNECTION - 1)
+                / ((long) maxConnections * CHUNKS_PER_CONNECTION);
+        return Math.max(minChunkSize, perChunk);
+    }
+
+    /**
+     * 以initialConnections个并发连接开始下载
+     *
+     * @return 所有分块均下载完成时完成，任一分块失败时以其错误失败
+     */
+    CompletableFuture<Void> start(int initialConnections) {
+        if (chunkCount == 0) {
+            ret.complete(null);
+            return ret;
+        }
+        int n = Math.max(1, Math.min(initialConnections, Math.min(maxConnections, chunkCount)));
+        synchronized (this) {
+            workers = n;
+            peakWorkers = n;
+            roundStart = System.nanoTime();
+        }
+        for (int i = 0; i < n; i++)
+            next();
+        return ret;
+    }
+
+    // 当前worker领取并下载下一个分块，队列已空时该worker退出，最后一个退出的worker完成整体
+    private void next() {
+        if (ret.isDone())
+            return;
+        long[] chunk = chunks.poll();
+        if (chunk == null) {
+            boolean last;
+            synchronized (this) {
+                last = --workers == 0;
+            }
+            if (last)
+                ret.complete(null);
+            return;
+        }
+        long startedAt = System.nanoTime();
+        CompletableFuture<?> f;
+        try {
+            f = fetch.apply(chunk);
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        inFlight.add(f);
+        f.whenComplete((r, ex) -> {
+            inFlight.remove(f);
+            if (ex != null) {
+                fail(ex);
+                return;
+            }
+            int added = onChunkDone(chunk[1] - chunk[0], startedAt);
+            for (int i = 0; i < added; i++)
+                next();
+            next();
+        });
+    }
+
+    // 记录一个分块完成，返回应新增的worker数；只有在本轮开始之后才开始下载的分块计入本轮，
+    // 否则连接数增加前就已在下载的分块会以旧的并发度完成，虚增本轮的吞吐
+    private synchronized int onChunkDone(long bytes, long startedAt) {
+        if (startedAt - roundStart < 0)
+            return 0;
+        long now = System.nanoTime();
+        roundChunks++;
+        roundBytes += bytes;
+        roundBusyNanos += now - startedAt;
+        if (!growing || roundChunks < workers)
+            return 0;
+        // 总吞吐 = 平均单连接速度 * 连接数；不直接用本轮的墙钟时长，因其包含了被忽略的旧分块的下载时间
+        double rate = (double) roundBytes / Math.max(1, roundBusyNanos) * workers;
+        roundStart = now;
+        roundChunks = 0;
+        roundBytes = 0;
+        roundBusyNanos = 0;
+        if (rate < lastRate * MIN_GAIN || workers >= maxConnections) {
+            growing = false;
+            return 0;
+        }
+        lastRate = rate;
+        // 队列中剩余的分块不足以让新增的连接都领到时，只增加能领到分块的数量
+        int added = Math.min(Math.min(workers, maxConnections - workers), chunks.size());
+        workers += added;
+        peakWorkers = Math.max(peakWorkers, workers);
+        return added;
+    }
+
+    private void fail(Throwable ex) {
+        if (ret.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex))
+            inFlight.forEach(o -> o.cancel(true));
+    }
+
+    /**
+     * @return 分块总数
+     */
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return 下载过程中曾达到的最大并发连接数
+     */
+    synchronized int getPeakConnections() {
+        return peakWorkers;
+    }
+}
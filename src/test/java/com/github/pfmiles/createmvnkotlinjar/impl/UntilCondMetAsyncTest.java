@@ -0,0 +1,102 @@
+package com.github.pfmiles.createmvnkotlinjar.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 异步条件等待Runner.untilCondMetAsync及退避策略Backoff的测试
+ *
+ * @author pf-miles
+ */
+public class UntilCondMetAsyncTest {
+
+    private static Throwable failure(CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Future should have failed.");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void backoffDelays() {
+        Backoff exp = Backoff.exponential(10, 100, 2);
+        assertEquals(10, exp.delayOf(0));
+        assertEquals(40, exp.delayOf(2));
+        assertEquals(100, exp.delayOf(10));
+        assertEquals(30, Backoff.fixed(30).delayOf(5));
+        Backoff jittered = exp.withJitter(0.5);
+        for (int i = 0; i < 100; i++) {
+            long d = jittered.delayOf(3);
+            assertTrue("Delay: " + d, d >= 40 && d <= 80);
+        }
+        try {
+            Backoff.exponential(10, 5, 2);
+            fail("maxDelay < initialDelay should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void completesOnceTheConditionHolds() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CompletableFuture<Void> ret = Runner.untilCondMetAsync(() -> checks.incrementAndGet() >= 3 ? true : null,
+                5000, Backoff.fixed(5));
+        ret.get(5, TimeUnit.SECONDS);
+        assertEquals(3, checks.get());
+    }
+
+    @Test
+    public void timesOutWhenTheConditionNeverHolds() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        long start = System.nanoTime();
+        CompletableFuture<Void> ret = Runner.untilCondMetAsync(() -> {
+            checks.incrementAndGet();
+            return false;
+        }, 100, Backoff.exponential(5, 20, 2));
+        assertTrue(failure(ret) instanceof TimeoutException);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(checks.get() > 1);
+    }
+
+    @Test
+    public void failsWithTheConditionsError() throws Exception {
+        CompletableFuture<Void> ret = Runner.untilCondMetAsync(() -> {
+            throw new IllegalStateException("boom");
+        }, 5000, Backoff.fixed(5));
+        assertTrue(failure(ret) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void cancellationStopsFurtherChecks() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CompletableFuture<Void> ret = Runner.untilCondMetAsync(() -> {
+            checks.incrementAndGet();
+            return false;
+        }, 0, 60000, Backoff.fixed(10), Runnable::run);
+        Thread.sleep(50);
+        ret.cancel(true);
+        int seen = checks.get();
+        Thread.sleep(100);
+        assertTrue("Checks after cancellation: " + (checks.get() - seen), checks.get() - seen <= 1);
+    }
+
+    @Test
+    public void delayCompletesAfterTheGivenTime() throws Exception {
+        long start = System.nanoTime();
+        Runner.delay(50).get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
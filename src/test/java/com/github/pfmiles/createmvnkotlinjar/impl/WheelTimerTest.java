@@ -0,0 +1,115 @@
+package com.github.pfmiles.createmvnkotlinjar.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 共享定时器WheelTimer及基于它的Runner.timedWaiting的测试
+ *
+ * @author pf-miles
+ */
+public class WheelTimerTest {
+    private WheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new WheelTimer("wheel-timer-test");
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void firesInDeadlineOrderNotBeforeTheDelay() throws Exception {
+        List<Integer> fired = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        timer.schedule(() -> {
+            fired.add(60);
+            done.countDown();
+        }, 60, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> {
+            fired.add(20);
+            done.countDown();
+        }, 20, TimeUnit.MILLISECONDS);
+        // 超过一圈时间轮的延迟
+        timer.schedule(() -> {
+            fired.add(1500);
+            done.countDown();
+        }, 1500, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(Arrays.asList(20, 60, 1500), fired);
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotFire() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        WheelTimer.Timeout timeout = timer.schedule(fired::countDown, 30, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertFalse(fired.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isFired());
+    }
+
+    @Test
+    public void throwingTaskDoesNotStopTheTimer() throws Exception {
+        timer.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch fired = new CountDownLatch(1);
+        WheelTimer.Timeout timeout = timer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isFired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void stoppedTimerRejectsNewTimeouts() {
+        timer.stop();
+        try {
+            timer.schedule(() -> {
+            }, 10, TimeUnit.MILLISECONDS);
+            fail("Stopped timer should reject new timeouts.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void timedWaitingInterruptsLogicThatOverruns() throws Exception {
+        assertEquals("ok", Runner.timedWaiting(() -> "ok", 1000));
+        long start = System.nanoTime();
+        try {
+            Runner.timedWaiting(() -> {
+                Thread.sleep(10000);
+                return null;
+            }, 50);
+            fail("Logic should have been interrupted.");
+        } catch (TimeoutException e) {
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+        // 先于定时结束的逻辑不会在之后被中断
+        Runner.timedWaiting(() -> null, 30);
+        Thread.sleep(80);
+        assertFalse(Thread.interrupted());
+    }
+}
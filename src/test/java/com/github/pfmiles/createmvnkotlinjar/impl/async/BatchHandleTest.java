@@ -0,0 +1,137 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitSize;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.failure;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 批量提交及BatchHandle聚合完成方式的测试
+ *
+ * @author pf-miles
+ */
+public class BatchHandleTest {
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() {
+        // 单个回调线程: 各元素按完成的先后依次在其中完成，与完成顺序相关的断言才是确定的
+        FuturesMultiplexerConfig config = shardConfig(1);
+        config.setCallbackThreads(1);
+        multiplexer = new FuturesMultiplexer(config);
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    private static List<CompletableFuture<String>> futures(int n) {
+        List<CompletableFuture<String>> ret = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            ret.add(new CompletableFuture<>());
+        return ret;
+    }
+
+    @Test
+    public void allOfKeepsSubmissionOrder() throws Exception {
+        List<CompletableFuture<String>> origins = futures(3);
+        BatchHandle<String> batch = multiplexer.submitAll(origins, deadline(60000));
+        assertEquals(3, batch.size());
+        origins.get(2).complete("c");
+        origins.get(0).complete("a");
+        origins.get(1).complete("b");
+        assertEquals(Arrays.asList("a", "b", "c"), batch.allOf().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void allOfFailsOnFirstError() throws Exception {
+        List<CompletableFuture<String>> origins = futures(2);
+        BatchHandle<String> batch = multiplexer.submitAll(origins, deadline(60000));
+        origins.get(1).completeExceptionally(new IOException("boom"));
+        // 元素以原始future.get()抛出的ExecutionException失败
+        assertTrue(failure(batch.allOf()).getCause() instanceof IOException);
+    }
+
+    @Test
+    public void firstNTakesEarliestAndFailsWhenUnreachable() throws Exception {
+        List<CompletableFuture<String>> origins = futures(3);
+        BatchHandle<String> batch = multiplexer.submitAll(origins, deadline(60000));
+        CompletableFuture<List<String>> two = batch.firstN(2);
+        CompletableFuture<String> any = batch.anyOf();
+        origins.get(1).complete("b");
+        assertEquals("b", any.get(5, TimeUnit.SECONDS));
+        origins.get(0).completeExceptionally(new IOException("boom"));
+        origins.get(2).complete("c");
+        assertEquals(Arrays.asList("b", "c"), two.get(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<String>> others = futures(2);
+        BatchHandle<String> failing = multiplexer.submitAll(others, deadline(60000));
+        CompletableFuture<List<String>> both = failing.firstN(2);
+        others.get(0).completeExceptionally(new IOException("boom"));
+        assertTrue(failure(both).getCause() instanceof IOException);
+        try {
+            failing.firstN(3);
+            fail("n larger than the batch should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void completionStreamFollowsCompletionOrderAndIsReIterable() throws Exception {
+        List<CompletableFuture<String>> origins = futures(3);
+        BatchHandle<String> batch = multiplexer.submitAll(origins, deadline(60000));
+        origins.get(1).complete("b");
+        origins.get(2).complete("c");
+        origins.get(0).complete("a");
+        List<String> first = batch.completionStream().map(CompletableFuture::join).collect(Collectors.toList());
+        assertEquals(Arrays.asList("b", "c", "a"), first);
+        assertEquals(first, batch.completionStream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void sharedDeadlineTimesOutUnfinishedElements() throws Exception {
+        List<CompletableFuture<String>> origins = futures(2);
+        BatchHandle<String> batch = multiplexer.submitAll(origins, deadline(50));
+        origins.get(0).complete("a");
+        assertEquals("a", batch.getElements().get(0).get(5, TimeUnit.SECONDS));
+        assertTrue(failure(batch.getElements().get(1)) instanceof TimeoutException);
+        assertTrue(origins.get(1).isCancelled());
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void rejectsDuplicateElements() {
+        CompletableFuture<String> f = new CompletableFuture<>();
+        try {
+            multiplexer.submitAll(Arrays.asList(f, f), deadline(60000));
+            fail("Duplicate elements should be rejected.");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, multiplexer.size());
+        }
+        try {
+            multiplexer.submitAll(Collections.<CompletableFuture<String>>emptyList(), deadline(60000));
+            fail("Empty batch should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按item指定回调executor及DIRECT_EXECUTOR内联执行的测试
+ *
+ * @author pf-miles
+ */
+public class CallbackExecutorTest {
+    private FuturesMultiplexer multiplexer;
+    private ExecutorService custom;
+
+    @Before
+    public void setUp() {
+        multiplexer = new FuturesMultiplexer(1);
+        custom = Executors.newSingleThreadExecutor(r -> new Thread(r, "custom-callback-thread"));
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+        custom.shutdownNow();
+    }
+
+    // 完成一个future，返回其whenDone回调所在的线程名
+    private String callbackThreadOf(Executor executor) throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        multiplexer.submitFuture(origin, deadline(60000), r -> thread.complete(Thread.currentThread().getName()),
+                null, null, executor);
+        origin.complete("done");
+        return thread.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void callbacksRunOnTheItemsExecutor() throws Exception {
+        assertEquals("custom-callback-thread", callbackThreadOf(custom));
+        assertTrue(callbackThreadOf(null).startsWith("FuturesMultiplexer-callback-exe-thread-"));
+    }
+
+    @Test
+    public void directExecutorRunsInlineOnTheEventLoop() throws Exception {
+        assertEquals("FuturesMultiplexer-polling-thread", callbackThreadOf(FuturesMultiplexer.DIRECT_EXECUTOR));
+    }
+
+    @Test
+    public void throwingInlineCallbackDoesNotStopTheEventLoop() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        multiplexer.submitFuture(first, deadline(60000), r -> {
+            throw new IllegalStateException("boom");
+        }, null, null, FuturesMultiplexer.DIRECT_EXECUTOR);
+        first.complete("done");
+        assertEquals("FuturesMultiplexer-polling-thread", callbackThreadOf(FuturesMultiplexer.DIRECT_EXECUTOR));
+    }
+
+    @Test
+    public void completableFutureAdapterCompletesOnTheGivenExecutor() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> thread = multiplexer.submitFuture(origin, deadline(60000), custom)
+                .thenApply(r -> Thread.currentThread().getName());
+        origin.complete("done");
+        assertEquals("custom-callback-thread", thread.get(5, TimeUnit.SECONDS));
+    }
+}
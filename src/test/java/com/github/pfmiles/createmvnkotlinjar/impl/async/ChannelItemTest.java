@@ -0,0 +1,103 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitUntil;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 由Selector感知就绪的channel items的测试: 就绪、超时关闭、取消及参数检查
+ *
+ * @author pf-miles
+ */
+public class ChannelItemTest {
+    private FuturesMultiplexer multiplexer;
+    private Pipe pipe;
+
+    @Before
+    public void setUp() throws Exception {
+        // 轮询间隔设得很长，就绪须由selector感知而非轮询
+        multiplexer = new FuturesMultiplexer(1000);
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        multiplexer.destroy();
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test
+    public void completesWhenReadableWithoutWaitingForPolling() throws Exception {
+        CompletableFuture<Integer> ret = multiplexer.submitChannel(pipe.source(), SelectionKey.OP_READ,
+                deadline(60000));
+        Thread.sleep(20);
+        assertFalse(ret.isDone());
+        long start = System.nanoTime();
+        pipe.sink().write(ByteBuffer.wrap(new byte[]{1}));
+        assertEquals(Integer.valueOf(SelectionKey.OP_READ), ret.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        // 就绪后channel保持打开，可继续读取
+        assertTrue(pipe.source().isOpen());
+        assertEquals(1, pipe.source().read(ByteBuffer.allocate(4)));
+    }
+
+    @Test
+    public void timeoutClosesTheChannel() throws Exception {
+        CompletableFuture<Integer> ret = multiplexer.submitChannel(pipe.source(), SelectionKey.OP_READ,
+                deadline(50));
+        try {
+            ret.get(5, TimeUnit.SECONDS);
+            fail("Channel should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        awaitUntil(() -> !pipe.source().isOpen(), 5000);
+        assertFalse(pipe.source().isOpen());
+    }
+
+    @Test
+    public void cancellingClosesTheChannelAndRemovesTheItem() throws Exception {
+        CompletableFuture<Integer> ret = multiplexer.submitChannel(pipe.source(), SelectionKey.OP_READ,
+                deadline(60000));
+        assertEquals(1, multiplexer.size());
+        ret.cancel(true);
+        awaitUntil(() -> multiplexer.size() == 0 && !pipe.source().isOpen(), 5000);
+        assertEquals(0, multiplexer.size());
+        assertFalse(pipe.source().isOpen());
+    }
+
+    @Test
+    public void rejectsBlockingChannelsAndInvalidOps() throws Exception {
+        try {
+            multiplexer.submitChannel(pipe.source(), SelectionKey.OP_WRITE, deadline(60000));
+            fail("OP_WRITE is not valid for a pipe source.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        pipe.source().configureBlocking(true);
+        try {
+            multiplexer.submitChannel(pipe.source(), SelectionKey.OP_READ, deadline(60000));
+            fail("Blocking channel should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, multiplexer.size());
+    }
+}
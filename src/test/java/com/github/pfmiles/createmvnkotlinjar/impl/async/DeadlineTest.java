@@ -0,0 +1,97 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.FutureItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 以System.nanoTime表示的超时时刻及Date形式适配的测试
+ *
+ * @author pf-miles
+ */
+public class DeadlineTest {
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() {
+        multiplexer = new FuturesMultiplexer(1);
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    @Test
+    public void dateIsConvertedToNanoTimeAndBack() {
+        long before = System.nanoTime();
+        long deadline = BlockingItem.toDeadlineNanos(new Date(System.currentTimeMillis() + 10000));
+        long delta = TimeUnit.NANOSECONDS.toMillis(deadline - before);
+        assertTrue("Delta: " + delta, delta > 9000 && delta <= 10100);
+
+        FutureItem<String> item = new FutureItem<>(new CompletableFuture<>(), deadline, null, null, null);
+        long expireIn = item.getExpire().getTime() - System.currentTimeMillis();
+        assertTrue("Expire in: " + expireIn, expireIn > 9000 && expireIn <= 10100);
+        try {
+            BlockingItem.toDeadlineNanos(null);
+            fail("Null expire date should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void dateOverloadTimesOut() throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<String> ret = multiplexer.submitFuture(new CompletableFuture<String>(),
+                new Date(System.currentTimeMillis() + 50));
+        try {
+            ret.get(5, TimeUnit.SECONDS);
+            fail("Future should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void pastDeadlinesAreRejected() {
+        try {
+            multiplexer.submitFuture(new CompletableFuture<String>(), System.nanoTime() - 1);
+            fail("Past deadline should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            multiplexer.submitFuture(new CompletableFuture<String>(), new Date(System.currentTimeMillis() - 1000));
+            fail("Past expire date should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, multiplexer.size());
+    }
+
+    @Test
+    public void farDeadlineSurvivesNanoTimeWrapAround() throws Exception {
+        // nanoTime + Long.MAX_VALUE / 2 可能溢出为负数，比较时以差值判断，仍应视为未来的时刻
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, System.nanoTime() + Long.MAX_VALUE / 2);
+        Thread.sleep(50);
+        assertFalse(ret.isDone());
+        origin.complete("done");
+        assertEquals("done", ret.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitUntil;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 自适应轮询间隔的测试: 空闲时退避至上限，有需要轮询的item时收紧，退避期间超时仍按deadline及时处理
+ *
+ * @author pf-miles
+ */
+public class FuturesMultiplexerAdaptiveIntervalTest {
+    private static final long MAX_INTERVAL = 512;
+
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    private void create() {
+        FuturesMultiplexerConfig config = shardConfig(1);
+        config.setAdaptiveInterval(true);
+        config.setMinEventLoopInterval(1);
+        config.setMaxEventLoopInterval(MAX_INTERVAL);
+        multiplexer = new FuturesMultiplexer(config);
+    }
+
+    private void awaitInterval(long expected) throws InterruptedException {
+        awaitUntil(() -> multiplexer.getEffectiveIntervals()[0] == expected, 10000);
+        assertEquals(expected, multiplexer.getEffectiveIntervals()[0]);
+    }
+
+    @Test
+    public void rejectsInvertedBounds() {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setAdaptiveInterval(true);
+        config.setMinEventLoopInterval(10);
+        config.setMaxEventLoopInterval(5);
+        try {
+            new FuturesMultiplexer(config);
+            fail("minEventLoopInterval > maxEventLoopInterval should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void backsOffWhenIdleAndTightensForPolledItems() throws Exception {
+        create();
+        awaitInterval(MAX_INTERVAL);
+        // 需要轮询的item提交后立即收紧间隔，并能及时感知其完成
+        FutureTask<String> task = new FutureTask<>(() -> "done");
+        CompletableFuture<String> ret = multiplexer.submitFuture(task, deadline(60000));
+        assertTrue(multiplexer.getEffectiveIntervals()[0] < MAX_INTERVAL);
+        task.run();
+        long start = System.nanoTime();
+        assertEquals("done", ret.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(MAX_INTERVAL / 2));
+    }
+
+    @Test
+    public void deadlineIsHonouredWhileBackedOff() throws Exception {
+        create();
+        awaitInterval(MAX_INTERVAL);
+        long start = System.nanoTime();
+        CompletableFuture<String> ret = multiplexer.submitFuture(new CompletableFuture<String>(), deadline(50));
+        try {
+            ret.get(5, TimeUnit.SECONDS);
+            fail("Future should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // 不必等到退避后的下一次轮询
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(MAX_INTERVAL / 2));
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitUntil;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.failure;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * FuturesMultiplexer准入控制及回调线程池过载处理的测试
+ *
+ * @author pf-miles
+ */
+public class FuturesMultiplexerAdmissionTest {
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    private static FuturesMultiplexerConfig config(int maxInFlight, AdmissionPolicy policy) {
+        FuturesMultiplexerConfig config = shardConfig(1);
+        config.setMaxInFlight(maxInFlight);
+        config.setAdmissionPolicy(policy);
+        return config;
+    }
+
+    @Test
+    public void failFastRejectsWithConfiguredLimit() {
+        multiplexer = new FuturesMultiplexer(config(2, AdmissionPolicy.FAIL_FAST));
+        multiplexer.submitFuture(new CompletableFuture<String>(), deadline(60000));
+        multiplexer.submitFuture(new CompletableFuture<String>(), deadline(60000));
+        try {
+            multiplexer.submitFuture(new CompletableFuture<String>(), deadline(60000));
+            fail("Submission over maxInFlight should be rejected.");
+        } catch (RejectedExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("limit: 2."));
+        }
+        assertEquals(2, multiplexer.size());
+        assertEquals(1, multiplexer.getMetrics().snapshot().getRejectedTotal());
+    }
+
+    @Test
+    public void failedFuturePolicyReturnsFailedFutureAndFreesSlotOnCompletion() throws Exception {
+        multiplexer = new FuturesMultiplexer(config(1, AdmissionPolicy.FAILED_FUTURE));
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> first = multiplexer.submitFuture(origin, deadline(60000));
+        CompletableFuture<String> rejected = multiplexer.submitFuture(new CompletableFuture<String>(),
+                deadline(60000));
+        assertTrue(failure(rejected) instanceof RejectedExecutionException);
+        origin.complete("done");
+        assertEquals("done", first.get(5, TimeUnit.SECONDS));
+        CompletableFuture<String> again = new CompletableFuture<>();
+        CompletableFuture<String> admitted = multiplexer.submitFuture(again, deadline(60000));
+        again.complete("again");
+        assertEquals("again", admitted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void blockPolicyWaitsForASlotUntilTimeout() throws Exception {
+        FuturesMultiplexerConfig config = config(1, AdmissionPolicy.BLOCK);
+        config.setAdmissionTimeout(50);
+        multiplexer = new FuturesMultiplexer(config);
+        multiplexer.submitFuture(new CompletableFuture<String>(), deadline(60000));
+        long start = System.nanoTime();
+        try {
+            multiplexer.submitFuture(new CompletableFuture<String>(), deadline(60000));
+            fail("Submission should time out waiting for a slot.");
+        } catch (RejectedExecutionException e) {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void batchLargerThanMaxInFlightIsRejected() {
+        multiplexer = new FuturesMultiplexer(config(1, AdmissionPolicy.BLOCK));
+        try {
+            multiplexer.submitAll(Arrays.asList(new CompletableFuture<String>(),
+                    new CompletableFuture<String>()), deadline(60000));
+            fail("Batch over maxInFlight should be rejected.");
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, multiplexer.size());
+        }
+    }
+
+    @Test
+    public void rejectedCallbackFailsTheItemInsteadOfBeingDropped() throws Exception {
+        FuturesMultiplexerConfig config = config(0, AdmissionPolicy.BLOCK);
+        config.setCallbackThreads(1);
+        config.setCallbackQueueCapacity(1);
+        multiplexer = new FuturesMultiplexer(config);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        try {
+            // 占住唯一的回调线程
+            CompletableFuture<String> blocking = new CompletableFuture<>();
+            multiplexer.submitFuture(blocking, deadline(60000), r -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, null, null);
+            blocking.complete("a");
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            // 占满等待队列
+            CompletableFuture<String> queued = new CompletableFuture<>();
+            multiplexer.submitFuture(queued, deadline(60000), r -> {
+            }, null, null);
+            queued.complete("b");
+            awaitUntil(() -> multiplexer.getCallbackQueueDepth() == 1, 5000);
+            // 再次完成的item的回调被拒绝，应以拒绝异常失败
+            CompletableFuture<String> overflow = new CompletableFuture<>();
+            multiplexer.submitFuture(overflow, deadline(60000), r -> fail("Rejected callback should not run."), e -> {
+                error.set(e);
+                failed.countDown();
+            }, null);
+            overflow.complete("c");
+            assertTrue(failed.await(5, TimeUnit.SECONDS));
+            assertTrue(error.get() instanceof RejectedExecutionException);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void legacyConstructorRunsEveryCallbackWithoutRejection() throws Exception {
+        multiplexer = new FuturesMultiplexer(1);
+        // 超过有界回调线程池的默认线程数，且每个回调都阻塞
+        int n = Runtime.getRuntime().availableProcessors() * 2 + 4;
+        CountDownLatch running = new CountDownLatch(n);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        try {
+            for (int i = 0; i < n; i++) {
+                CompletableFuture<String> origin = new CompletableFuture<>();
+                multiplexer.submitFuture(origin, deadline(60000), r -> {
+                    running.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, error::set, null);
+                origin.complete("done");
+            }
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertNull(error.get());
+        } finally {
+            release.countDown();
+        }
+    }
+}
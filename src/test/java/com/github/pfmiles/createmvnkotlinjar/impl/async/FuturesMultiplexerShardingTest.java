@@ -0,0 +1,100 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitSize;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 多分片FuturesMultiplexer的测试: items分布到各分片的polling线程，完成及超时在各分片中独立处理
+ *
+ * @author pf-miles
+ */
+public class FuturesMultiplexerShardingTest {
+    private static final int SHARDS = 4;
+
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    private void create() {
+        multiplexer = new FuturesMultiplexer(shardConfig(SHARDS));
+    }
+
+    @Test
+    public void rejectsNonPositiveShardCount() {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setShardCount(0);
+        try {
+            new FuturesMultiplexer(config);
+            fail("shardCount 0 should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void itemsAreSpreadOverAllShards() throws Exception {
+        create();
+        assertEquals(SHARDS, multiplexer.getShardCount());
+        assertEquals(SHARDS, multiplexer.getEffectiveIntervals().length);
+        // 轮询式的items在其所属分片的polling线程中被执行完成检查
+        Set<String> pollingThreads = ConcurrentHashMap.newKeySet();
+        List<FutureTask<Integer>> tasks = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            FutureTask<Integer> task = new FutureTask<Integer>(() -> n) {
+                @Override
+                public boolean isDone() {
+                    pollingThreads.add(Thread.currentThread().getName());
+                    return super.isDone();
+                }
+            };
+            tasks.add(task);
+            results.add(multiplexer.submitFuture(task, deadline(60000)));
+        }
+        assertEquals(200, multiplexer.size());
+        tasks.forEach(FutureTask::run);
+        for (int i = 0; i < results.size(); i++)
+            assertEquals(Integer.valueOf(i), results.get(i).get(5, TimeUnit.SECONDS));
+        pollingThreads.removeIf(name -> !name.startsWith("FuturesMultiplexer-polling-thread-"));
+        assertEquals(SHARDS, pollingThreads.size());
+    }
+
+    @Test
+    public void timeoutsFireInEveryShard() throws Exception {
+        create();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            results.add(multiplexer.submitFuture(new CompletableFuture<String>(), deadline(30)));
+        for (CompletableFuture<String> r : results) {
+            try {
+                r.get(5, TimeUnit.SECONDS);
+                fail("Future should have timed out.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        }
+        awaitSize(multiplexer, 0);
+    }
+}
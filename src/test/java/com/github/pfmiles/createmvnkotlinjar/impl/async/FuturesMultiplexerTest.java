@@ -0,0 +1,151 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.BlockingItem;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.FutureItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitSize;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * FuturesMultiplexer的完成、超时及取消传播测试
+ *
+ * @author pf-miles
+ */
+public class FuturesMultiplexerTest {
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() {
+        multiplexer = new FuturesMultiplexer(1);
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    @Test
+    public void completesWithFutureResult() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(5000));
+        origin.complete("done");
+        assertEquals("done", ret.get(5, TimeUnit.SECONDS));
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void timesOutAndCancelsOriginalFuture() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(50));
+        try {
+            ret.get(5, TimeUnit.SECONDS);
+            fail("Future should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(origin.isCancelled());
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void cancellingReturnedFutureCancelsOriginalAndRemovesItem() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(60000));
+        assertEquals(1, multiplexer.size());
+        ret.cancel(true);
+        assertTrue(origin.isCancelled());
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void cancellationPropagatesWithCallbackExecutor() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(60000), null);
+        ret.cancel(true);
+        assertTrue(origin.isCancelled());
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void cancellingDerivedFutureDoesNotCancelOriginal() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(60000));
+        ret.thenApply(String::length).cancel(true);
+        assertTrue(!origin.isCancelled());
+        origin.complete("done");
+        assertEquals("done", ret.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectsResubmittingAnInFlightItem() throws Exception {
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        FutureItem<String> item = new FutureItem<>(origin, deadline(60000), null, null, null);
+        multiplexer.submit(item);
+        try {
+            multiplexer.submit(item);
+            fail("Resubmitting an in-flight item should be rejected.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, multiplexer.size());
+        origin.complete("done");
+        awaitSize(multiplexer, 0);
+    }
+
+    @Test
+    public void sameItemInTwoMultiplexersExpiresInBoth() throws Exception {
+        FuturesMultiplexer other = new FuturesMultiplexer(1);
+        try {
+            CountDownLatch timeouts = new CountDownLatch(2);
+            // 取消不影响其状态的item，两个multiplexer各自都只能以超时结束
+            BlockingItem<String> item = new BlockingItem<String>(deadline(50), null, null, timeouts::countDown) {
+                @Override
+                public boolean isDone() {
+                    return false;
+                }
+
+                @Override
+                public String getResult() {
+                    return null;
+                }
+
+                @Override
+                public void cancel(boolean mayInterrupt) {
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public int hashCode() {
+                    return System.identityHashCode(this);
+                }
+
+                @Override
+                public boolean equals(Object obj) {
+                    return this == obj;
+                }
+            };
+            multiplexer.submit(item);
+            other.submit(item);
+            assertTrue(timeouts.await(5, TimeUnit.SECONDS));
+            awaitSize(multiplexer, 0);
+            assertEquals(0, other.size());
+        } finally {
+            other.destroy();
+        }
+    }
+}
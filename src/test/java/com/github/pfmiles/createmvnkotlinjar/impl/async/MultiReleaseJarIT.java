@@ -0,0 +1,83 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.sh;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 针对打包后的multi-release jar的测试: 构建JDK所支持的各层都已打入jar，并在运行时经jar的版本选择生效
+ * 由failsafe在package之后运行，此时类路径上是打包好的jar而非target/classes
+ *
+ * @author pf-miles
+ */
+public class MultiReleaseJarIT {
+    private static final String PROCESS_EXITS = "com/github/pfmiles/createmvnkotlinjar/impl/async/futuremultiplex/ProcessExits.class";
+    private static final String CALLBACK_EXECUTORS = "com/github/pfmiles/createmvnkotlinjar/impl/async/CallbackExecutors.class";
+
+    // 测试与构建使用同一JDK，因此该JDK所支持的层都应已被编译打包
+    private static final int RUNTIME = Integer.parseInt(
+            System.getProperty("java.specification.version").replaceFirst("^1\\.", ""));
+
+    private JarFile jar;
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() throws Exception {
+        File location = new File(FuturesMultiplexer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Assume.assumeTrue("Not running against the packaged jar: " + location, location.isFile());
+        jar = new JarFile(location);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (multiplexer != null)
+            multiplexer.destroy();
+        if (jar != null)
+            jar.close();
+    }
+
+    @Test
+    public void jarContainsEveryLayerTheBuildJdkSupports() throws Exception {
+        assertEquals("true", jar.getManifest().getMainAttributes().getValue("Multi-Release"));
+        assertNotNull(jar.getEntry(PROCESS_EXITS));
+        assertNotNull(jar.getEntry(CALLBACK_EXECUTORS));
+        if (RUNTIME >= 9)
+            assertNotNull("JDK 9 layer missing.", jar.getEntry("META-INF/versions/9/" + PROCESS_EXITS));
+        if (RUNTIME >= 21)
+            assertNotNull("JDK 21 layer missing.", jar.getEntry("META-INF/versions/21/" + CALLBACK_EXECUTORS));
+    }
+
+    @Test
+    public void java9LayerIsSelectedFromTheJar() throws Exception {
+        Assume.assumeTrue("Process.onExit() needs JDK 9+.", RUNTIME >= 9);
+        Class<?> exits = Class.forName("com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessExits");
+        Method listen = exits.getDeclaredMethod("listen", Process.class, Runnable.class);
+        listen.setAccessible(true);
+        // 基线实现总是返回false，回退为轮询isAlive()
+        CountDownLatch exited = new CountDownLatch(1);
+        assertTrue((Boolean) listen.invoke(null, sh("sleep 0.1"), (Runnable) exited::countDown));
+        assertTrue(exited.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void java21LayerIsSelectedFromTheJar() {
+        FuturesMultiplexerConfig config = shardConfig(1);
+        config.setVirtualThreadCallbacks(true);
+        multiplexer = new FuturesMultiplexer(config);
+        // JDK 21以下经jar的版本选择仍使用基线实现，回退为平台线程
+        assertEquals(RUNTIME >= 21, multiplexer.isVirtualThreadCallbacks());
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.awaitUntil;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 运行指标的测试: 直方图分位数及窗口、各使用方互不影响的统计窗口及JMX读取
+ *
+ * @author pf-miles
+ */
+public class MultiplexerMetricsTest {
+    private static final String JMX_NAME = "com.github.pfmiles.test:type=FuturesMultiplexer,name=metricsTest";
+
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    // 提交并完成n个future，等待其完成被计入指标
+    private void complete(int n) throws Exception {
+        long before = multiplexer.getMetrics().getCompletedTotal();
+        for (int i = 0; i < n; i++) {
+            CompletableFuture<String> origin = new CompletableFuture<>();
+            CompletableFuture<String> ret = multiplexer.submitFuture(origin, deadline(5000));
+            origin.complete("done");
+            ret.get(5, TimeUnit.SECONDS);
+        }
+        awaitUntil(() -> multiplexer.getMetrics().getCompletedTotal() >= before + n, 5000);
+        assertEquals(before + n, multiplexer.getMetrics().getCompletedTotal());
+    }
+
+    @Test
+    public void histogramQuantilesAndWindows() {
+        FixedBucketHistogram h = new FixedBucketHistogram();
+        for (int i = 0; i < 99; i++)
+            h.record(3);
+        h.record(1000);
+        FixedBucketHistogram.Snapshot first = h.snapshot();
+        assertEquals(100, first.getCount());
+        assertEquals(4, first.getQuantile(0.5));
+        assertEquals(4, first.getQuantile(0.99));
+        assertEquals(1024, first.getMax());
+
+        h.record(100);
+        FixedBucketHistogram.Snapshot window = h.snapshot().since(first);
+        assertEquals(1, window.getCount());
+        assertEquals(100.0, window.getMean(), 0);
+        assertEquals(128, window.getQuantile(0.5));
+        assertEquals(128, window.getMax());
+    }
+
+    @Test
+    public void consumersKeepIndependentWindows() throws Exception {
+        multiplexer = new FuturesMultiplexer(1);
+        MultiplexerMetrics metrics = multiplexer.getMetrics();
+        MultiplexerMetricsSnapshot a = metrics.snapshot();
+        complete(3);
+        MultiplexerMetricsSnapshot b = metrics.snapshot();
+        // a的使用方取快照不影响b的使用方，反之亦然
+        MultiplexerMetricsSnapshot a2 = metrics.snapshot(a);
+        complete(2);
+        MultiplexerMetricsSnapshot b2 = metrics.snapshot(b);
+        MultiplexerMetricsSnapshot a3 = metrics.snapshot(a2);
+
+        assertEquals(3, a2.getCallbackLatency().getCount());
+        assertEquals(2, b2.getCallbackLatency().getCount());
+        assertEquals(2, a3.getCallbackLatency().getCount());
+        assertTrue(a2.getCompletionsPerSecond() > 0);
+        assertTrue(b2.getCompletionsPerSecond() > 0);
+        // 不带参数的快照统计自创建以来的全部
+        assertEquals(5, metrics.snapshot().getCallbackLatency().getCount());
+        assertEquals(0, metrics.snapshot(metrics.snapshot()).getCallbackLatency().getCount());
+    }
+
+    @Test
+    public void jmxReadsDoNotResetApiWindows() throws Exception {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(1);
+        config.setJmxName(JMX_NAME);
+        multiplexer = new FuturesMultiplexer(config);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JMX_NAME);
+
+        MultiplexerMetricsSnapshot api = multiplexer.getMetrics().snapshot();
+        complete(4);
+        assertEquals(4L, server.getAttribute(name, "CompletedTotal"));
+        server.getAttribute(name, "CompletionsPerSecond");
+        server.getAttribute(name, "CallbackLatencyP99Micros");
+        MultiplexerMetricsSnapshot window = multiplexer.getMetrics().snapshot(api);
+        assertEquals(4, window.getCompletedTotal() - api.getCompletedTotal());
+        assertEquals(4, window.getCallbackLatency().getCount());
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.failure;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.shardConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * MultiplexerScope各完成策略的测试
+ *
+ * @author pf-miles
+ */
+public class MultiplexerScopeTest {
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() {
+        // 单个回调线程: 各item按完成的先后依次汇报给scope，quorum结果顺序及最后失败原因的断言才是确定的
+        FuturesMultiplexerConfig config = shardConfig(1);
+        config.setCallbackThreads(1);
+        multiplexer = new FuturesMultiplexer(config);
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    private static <T> T get(CompletableFuture<T> f) throws Exception {
+        return f.get(5, TimeUnit.SECONDS);
+    }
+
+    // 失败的future经multiplexer以ExecutionException的形式汇报，scope以之作为整体失败原因
+    private static Throwable businessFailure(CompletableFuture<?> f) throws Exception {
+        Throwable cause = failure(f);
+        assertTrue(cause instanceof ExecutionException);
+        return cause.getCause();
+    }
+
+    @Test
+    public void allSucceedReturnsResultsInForkOrder() throws Exception {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.ALL_SUCCEED, deadline(5000));
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<String> b = new CompletableFuture<>();
+        scope.fork(a);
+        scope.fork(b);
+        CompletableFuture<List<String>> result = scope.join();
+        b.complete("b");
+        a.complete("a");
+        assertEquals(List.of("a", "b"), get(result));
+    }
+
+    @Test
+    public void allSucceedFailsFastAndCancelsTheRest() throws Exception {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.ALL_SUCCEED, deadline(5000));
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<String> b = new CompletableFuture<>();
+        scope.fork(a);
+        scope.fork(b);
+        CompletableFuture<List<String>> result = scope.join();
+        a.completeExceptionally(new IllegalStateException("boom"));
+        assertTrue(businessFailure(result) instanceof IllegalStateException);
+        // 整体结果发布时其余items已被取消
+        assertTrue(b.isCancelled());
+    }
+
+    @Test
+    public void firstSuccessIgnoresFailuresAndCancelsTheRest() throws Exception {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.FIRST_SUCCESS, deadline(5000));
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<String> b = new CompletableFuture<>();
+        CompletableFuture<String> c = new CompletableFuture<>();
+        scope.fork(a);
+        scope.fork(b);
+        scope.fork(c);
+        a.completeExceptionally(new IllegalStateException("boom"));
+        b.complete("b");
+        assertEquals(List.of("b"), get(scope.join()));
+        assertTrue(c.isCancelled());
+    }
+
+    @Test
+    public void firstSuccessFailsWhenAllFail() throws Exception {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.FIRST_SUCCESS, deadline(5000));
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<String> b = new CompletableFuture<>();
+        scope.fork(a);
+        scope.fork(b);
+        CompletableFuture<List<String>> result = scope.join();
+        a.completeExceptionally(new IllegalStateException("a"));
+        b.completeExceptionally(new IllegalArgumentException("b"));
+        assertTrue(businessFailure(result) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void quorumReturnsFirstCompletedResults() throws Exception {
+        MultiplexerScope<Integer> scope = multiplexer.openScope(ScopePolicy.QUORUM, 2, deadline(5000));
+        CompletableFuture<Integer> a = new CompletableFuture<>();
+        CompletableFuture<Integer> b = new CompletableFuture<>();
+        CompletableFuture<Integer> c = new CompletableFuture<>();
+        scope.fork(a);
+        scope.fork(b);
+        scope.fork(c);
+        CompletableFuture<List<Integer>> result = scope.join();
+        c.complete(3);
+        b.completeExceptionally(new IllegalStateException("boom"));
+        assertTrue(!result.isDone());
+        a.complete(1);
+        assertEquals(List.of(3, 1), get(result));
+    }
+
+    @Test
+    public void quorumFailsWhenNotEnoughItemsForked() throws Exception {
+        MultiplexerScope<Integer> scope = multiplexer.openScope(ScopePolicy.QUORUM, 2, deadline(5000));
+        scope.fork(CompletableFuture.completedFuture(1));
+        assertTrue(failure(scope.join()) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void itemsTimeOutAtScopeDeadline() throws Exception {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.ALL_SUCCEED, deadline(50));
+        CompletableFuture<String> a = new CompletableFuture<>();
+        scope.fork(a, deadline(60000));
+        assertTrue(failure(scope.join()) instanceof TimeoutException);
+        assertTrue(a.isCancelled());
+    }
+
+    @Test
+    public void closeCancelsPendingItems() throws Exception {
+        CompletableFuture<String> a = new CompletableFuture<>();
+        CompletableFuture<List<String>> result;
+        try (MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.ALL_SUCCEED, deadline(5000))) {
+            scope.fork(a);
+            result = scope.join();
+        }
+        try {
+            get(result);
+            fail("Scope should have been cancelled.");
+        } catch (CancellationException expected) {
+        }
+        assertTrue(a.isCancelled());
+    }
+
+    @Test
+    public void forkAfterJoinIsRejected() {
+        MultiplexerScope<String> scope = multiplexer.openScope(ScopePolicy.ALL_SUCCEED, deadline(5000));
+        scope.join();
+        try {
+            scope.fork(new CompletableFuture<>());
+            fail("Fork after join should be rejected.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void rejectedForkFailsTheScopeInsteadOfHanging() throws Exception {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setMaxInFlight(1);
+        config.setAdmissionPolicy(AdmissionPolicy.FAIL_FAST);
+        FuturesMultiplexer limited = new FuturesMultiplexer(config);
+        try {
+            MultiplexerScope<String> scope = limited.openScope(ScopePolicy.ALL_SUCCEED, deadline(5000));
+            CompletableFuture<String> a = new CompletableFuture<>();
+            scope.fork(a);
+            try {
+                scope.fork(new CompletableFuture<>());
+                fail("Fork beyond maxInFlight should be rejected.");
+            } catch (RejectedExecutionException expected) {
+            }
+            assertTrue(failure(scope.join()) instanceof RejectedExecutionException);
+            assertTrue(a.isCancelled());
+        } finally {
+            limited.destroy();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * async包下各测试共用的deadline计算、等待及fixture构造
+ *
+ * @author pf-miles
+ */
+final class MultiplexerTestSupport {
+    private MultiplexerTestSupport() {
+    }
+
+    /**
+     * 距今millis毫秒的System.nanoTime() deadline
+     */
+    static long deadline(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * 等待future失败并返回其失败原因，5s内未完成或正常完成则测试失败
+     */
+    static Throwable failure(CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Future should have failed.");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * 每1ms检查一次，直到条件满足或等待超过millis毫秒；是否满足由调用方随后断言
+     */
+    static void awaitUntil(BooleanSupplier condition, long millis) throws InterruptedException {
+        long end = deadline(millis);
+        while (!condition.getAsBoolean() && end - System.nanoTime() > 0)
+            Thread.sleep(1);
+    }
+
+    /**
+     * 等待multiplexer中的items数降至expected
+     */
+    static void awaitSize(FuturesMultiplexer multiplexer, int expected) throws InterruptedException {
+        awaitUntil(() -> multiplexer.size() == expected, 5000);
+        assertEquals(expected, multiplexer.size());
+    }
+
+    /**
+     * 轮询间隔为1ms、指定分片数的配置
+     */
+    static FuturesMultiplexerConfig shardConfig(int shardCount) {
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(1);
+        config.setShardCount(shardCount);
+        return config;
+    }
+
+    /**
+     * 以sh执行一段脚本的子进程
+     */
+    static Process sh(String script) throws IOException {
+        return new ProcessBuilder("sh", "-c", script).start();
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessItem;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.deadline;
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.sh;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 子进程items的测试: 退出码、超时销毁，以及multi-release jar中JDK 9+层以Process.onExit()感知退出
+ *
+ * @author pf-miles
+ */
+public class ProcessItemTest {
+    private FuturesMultiplexer multiplexer;
+
+    @Before
+    public void setUp() {
+        multiplexer = new FuturesMultiplexer(10);
+    }
+
+    @After
+    public void tearDown() {
+        multiplexer.destroy();
+    }
+
+    @Test
+    public void completesWithExitCode() throws Exception {
+        assertEquals(Integer.valueOf(7), multiplexer.submitProcess(sh("exit 7"), deadline(10000))
+                .get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timeoutDestroysTheProcess() throws Exception {
+        Process process = sh("sleep 30");
+        CompletableFuture<Integer> ret = multiplexer.submitProcess(process, deadline(100));
+        try {
+            ret.get(10, TimeUnit.SECONDS);
+            fail("Process should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+    }
+
+    // 测试时类路径为target/classes，不经过multi-release jar的版本选择，因此直接从META-INF/versions/9加载JDK 9+层的实现
+    private static Method java9Listen() throws Exception {
+        File root = new File(ProcessItem.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned = new File(root, "META-INF/versions/9/");
+        Assume.assumeTrue("JDK 9+ layer not built.", new File(versioned,
+                "com/github/pfmiles/createmvnkotlinjar/impl/async/futuremultiplex/ProcessExits.class").isFile());
+        ClassLoader loader = new URLClassLoader(new URL[]{versioned.toURI().toURL()}, null);
+        Class<?> exits = Class.forName("com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessExits",
+                true, loader);
+        Method listen = exits.getDeclaredMethod("listen", Process.class, Runnable.class);
+        listen.setAccessible(true);
+        return listen;
+    }
+
+    @Test
+    public void java9LayerIsNotifiedOnExit() throws Exception {
+        Method listen = java9Listen();
+        CountDownLatch exited = new CountDownLatch(1);
+        Process process = sh("sleep 0.1");
+        assertTrue((Boolean) listen.invoke(null, process, (Runnable) exited::countDown));
+        assertTrue(exited.await(5, TimeUnit.SECONDS));
+        assertFalse(process.isAlive());
+    }
+
+    @Test
+    public void java9LayerFallsBackToPollingForCustomProcesses() throws Exception {
+        Method listen = java9Listen();
+        // 不支持toHandle()的自定义Process实现
+        Process custom = new Process() {
+            @Override
+            public OutputStream getOutputStream() {
+                return null;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return null;
+            }
+
+            @Override
+            public InputStream getErrorStream() {
+                return null;
+            }
+
+            @Override
+            public int waitFor() {
+                return 0;
+            }
+
+            @Override
+            public int exitValue() {
+                return 0;
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+        assertFalse((Boolean) listen.invoke(null, custom, (Runnable) () -> {
+        }));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessOutputCapture;
+import com.github.pfmiles.createmvnkotlinjar.impl.async.futuremultiplex.ProcessResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.pfmiles.createmvnkotlinjar.impl.async.MultiplexerTestSupport.sh;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 子进程输出捕获的测试: 同步等待、经由multiplexer异步等待、输出量超过管道容量及capture的复用检查
+ *
+ * @author pf-miles
+ */
+public class ProcessOutputCaptureTest {
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    @Test
+    public void waitForCapturesBothStreams() throws Exception {
+        ProcessResult result = new ProcessOutputCapture(64).waitFor(sh("printf hello; printf oops >&2; exit 3"));
+        assertEquals(3, result.getExitCode());
+        assertEquals("hello", result.getStdoutTail());
+        assertEquals("oops", result.getStderrTail());
+    }
+
+    @Test
+    public void outputLargerThanPipeIsForwardedAndTailIsKept() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        // 约1MB的输出，远超管道容量，未被及时搬运时子进程将阻塞至超时
+        ProcessOutputCapture capture = new ProcessOutputCapture(4, sink, null, StandardCharsets.UTF_8);
+        multiplexer = new FuturesMultiplexer(1);
+        ProcessResult result = multiplexer.submitProcess(sh("head -c 1048576 /dev/zero | tr '\\0' a; printf end"),
+                capture, System.nanoTime() + TimeUnit.SECONDS.toNanos(10)).get(15, TimeUnit.SECONDS);
+        assertEquals(0, result.getExitCode());
+        assertEquals(1048576 + 3, sink.size());
+        assertEquals("aend", result.getStdoutTail());
+    }
+
+    @Test
+    public void captureCannotBeReusedForAnotherProcess() throws Exception {
+        ProcessOutputCapture capture = new ProcessOutputCapture(64);
+        capture.waitFor(sh("printf first"));
+        Process second = sh("printf second");
+        try {
+            capture.waitFor(second);
+            fail("Reusing a capture for another process should be rejected.");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            second.waitFor();
+        }
+        multiplexer = new FuturesMultiplexer(1);
+        try {
+            multiplexer.submitProcess(second, capture, System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            fail("Reusing a capture for another process should be rejected.");
+        } catch (IllegalStateException e) {
+            assertEquals("first", capture.getStdoutTail());
+        }
+    }
+}
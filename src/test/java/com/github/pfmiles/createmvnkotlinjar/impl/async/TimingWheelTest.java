@@ -0,0 +1,133 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimingWheel测试
+ *
+ * @author pf-miles
+ */
+public class TimingWheelTest {
+
+    private static class Item extends TimingWheel.Entry {
+        private final String name;
+
+        Item(String name) {
+            this.name = name;
+        }
+    }
+
+    private static List<String> advance(TimingWheel<Item> wheel, long now) {
+        List<String> ret = new ArrayList<>();
+        wheel.advance(now, i -> ret.add(i.name));
+        return ret;
+    }
+
+    @Test
+    public void expiresOnlyAfterDeadline() {
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        Item a = new Item("a");
+        Item b = new Item("b");
+        wheel.add(a, 25);
+        wheel.add(b, 45);
+        assertEquals(2, wheel.size());
+
+        assertTrue(advance(wheel, 20).isEmpty());
+        assertEquals(List.of("a"), advance(wheel, 30));
+        assertFalse(a.isScheduled());
+        assertTrue(b.isScheduled());
+        assertEquals(List.of("b"), advance(wheel, 50));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlinesBeyondOneRoundWaitForTheirRound() {
+        // 一圈8个tick共80，deadline为85的条目与5落在同一bucket，但须等到下一圈才到期
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        Item near = new Item("near");
+        Item far = new Item("far");
+        wheel.add(near, 5);
+        wheel.add(far, 85);
+
+        assertEquals(List.of("near"), advance(wheel, 10));
+        assertTrue(advance(wheel, 80).isEmpty());
+        assertTrue(far.isScheduled());
+        assertEquals(List.of("far"), advance(wheel, 90));
+    }
+
+    @Test
+    public void removedAndRescheduledEntries() {
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        Item a = new Item("a");
+        Item b = new Item("b");
+        wheel.add(a, 15);
+        wheel.add(b, 15);
+        assertTrue(wheel.remove(a));
+        assertFalse(wheel.remove(a));
+        // 重新注册即改期
+        wheel.add(b, 55);
+        assertEquals(1, wheel.size());
+
+        assertTrue(advance(wheel, 30).isEmpty());
+        assertEquals(List.of("b"), advance(wheel, 60));
+    }
+
+    @Test
+    public void pastDeadlineExpiresOnNextAdvance() {
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        advance(wheel, 100);
+        Item a = new Item("a");
+        wheel.add(a, 50);
+        assertEquals(List.of("a"), advance(wheel, 110));
+    }
+
+    @Test
+    public void toleratesNanoTimeWrapAround() {
+        long start = Long.MAX_VALUE - 15;
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, start);
+        Item a = new Item("a");
+        // 溢出回绕后的deadline
+        wheel.add(a, start + 25);
+        assertTrue(start + 25 < 0);
+
+        assertTrue(advance(wheel, start + 20).isEmpty());
+        assertEquals(List.of("a"), advance(wheel, start + 30));
+    }
+
+    @Test
+    public void nextExpirationTime() {
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        assertEquals(70, wheel.nextExpirationTime(0, 70));
+        wheel.add(new Item("a"), 35);
+        // deadline 35所在的tick在40时被处理
+        assertEquals(40, wheel.nextExpirationTime(0, 1000));
+        assertEquals(20, wheel.nextExpirationTime(0, 20));
+    }
+
+    @Test
+    public void expireCallbackMayScheduleOtherEntries() {
+        TimingWheel<Item> wheel = new TimingWheel<>(10, 8, 0);
+        Item a = new Item("a");
+        Item b = new Item("b");
+        wheel.add(a, 5);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(10, i -> {
+            expired.add(i.name);
+            wheel.add(b, 25);
+        });
+        assertEquals(List.of("a"), expired);
+        assertTrue(b.isScheduled());
+        assertEquals(List.of("b"), advance(wheel, 30));
+        wheel.add(a, 100);
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertFalse(a.isScheduled());
+    }
+}
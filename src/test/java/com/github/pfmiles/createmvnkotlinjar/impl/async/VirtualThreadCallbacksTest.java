@@ -0,0 +1,83 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.async;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 虚拟线程回调模式的测试: 不支持虚拟线程的运行时上回退为平台线程池，JDK 21+层以虚拟线程执行回调
+ *
+ * @author pf-miles
+ */
+public class VirtualThreadCallbacksTest {
+    private FuturesMultiplexer multiplexer;
+
+    @After
+    public void tearDown() {
+        if (multiplexer != null)
+            multiplexer.destroy();
+    }
+
+    @Test
+    public void fallsBackToPlatformCallbackThreadsWithoutVirtualThreads() throws Exception {
+        // 测试时类路径为target/classes，总是使用不支持虚拟线程的基线实现
+        FuturesMultiplexerConfig config = new FuturesMultiplexerConfig();
+        config.setEventLoopInterval(1);
+        config.setShardCount(1);
+        config.setVirtualThreadCallbacks(true);
+        multiplexer = new FuturesMultiplexer(config);
+        assertFalse(multiplexer.isVirtualThreadCallbacks());
+
+        CompletableFuture<String> origin = new CompletableFuture<>();
+        CompletableFuture<String> callbackThread = new CompletableFuture<>();
+        multiplexer.submitFuture(origin, System.nanoTime() + TimeUnit.SECONDS.toNanos(60),
+                r -> callbackThread.complete(Thread.currentThread().getName()), null, null);
+        origin.complete("done");
+        assertTrue(callbackThread.get(5, TimeUnit.SECONDS).startsWith("FuturesMultiplexer-callback-exe-thread-"));
+    }
+
+    @Test
+    public void java21LayerRunsCallbacksOnVirtualThreads() throws Exception {
+        Assume.assumeTrue("Virtual threads need JDK 21+.",
+                Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", "")) >= 21);
+        File root = new File(CallbackExecutors.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned = new File(root, "META-INF/versions/21/");
+        Assume.assumeTrue("JDK 21+ layer not built.", new File(versioned,
+                "com/github/pfmiles/createmvnkotlinjar/impl/async/CallbackExecutors.class").isFile());
+        ClassLoader loader = new URLClassLoader(new URL[]{versioned.toURI().toURL()}, null);
+        Class<?> executors = Class.forName("com.github.pfmiles.createmvnkotlinjar.impl.async.CallbackExecutors",
+                true, loader);
+        Method create = executors.getDeclaredMethod("newVirtualThreadExecutor", String.class);
+        create.setAccessible(true);
+        ExecutorService exe = (ExecutorService) create.invoke(null, "vt-callback-");
+        try {
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+            CompletableFuture<String> name = new CompletableFuture<>();
+            exe.execute(() -> {
+                try {
+                    virtual.complete((Boolean) isVirtual.invoke(Thread.currentThread()));
+                    name.complete(Thread.currentThread().getName());
+                } catch (Exception e) {
+                    virtual.completeExceptionally(e);
+                }
+            });
+            assertTrue(virtual.get(5, TimeUnit.SECONDS));
+            assertEquals("vt-callback-0", name.get(5, TimeUnit.SECONDS));
+        } finally {
+            exe.shutdown();
+        }
+    }
+}
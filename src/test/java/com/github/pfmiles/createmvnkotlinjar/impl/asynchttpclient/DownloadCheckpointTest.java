@@ -0,0 +1,142 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DownloadCheckpoint的区间记录、持久化及加载测试
+ *
+ * @author pf-miles
+ */
+public class DownloadCheckpointTest {
+    private static final String URL = "http://example.com/f.bin";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void assertRanges(List<long[]> actual, long[]... expected) {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], actual.get(i));
+    }
+
+    @Test
+    public void missingRangesOfEmptyCheckpoint() {
+        DownloadCheckpoint cp = new DownloadCheckpoint(null, URL, "\"e1\"", 100);
+        assertRanges(cp.missingRanges(), new long[]{0, 100});
+        assertEquals(0, cp.completedEnd());
+    }
+
+    @Test
+    public void missingRangesMergeAdjacentAndOverlapping() {
+        DownloadCheckpoint cp = new DownloadCheckpoint(null, URL, "\"e1\"", 100);
+        cp.addCompleted(0, 10);
+        cp.addCompleted(10, 20);
+        cp.addCompleted(40, 60);
+        cp.addCompleted(50, 70);
+        assertRanges(cp.missingRanges(), new long[]{20, 40}, new long[]{70, 100});
+        assertEquals(70, cp.completedEnd());
+
+        // 分段推进进度
+        cp.advance(20, 30, 10);
+        cp.advance(70, 100, 30);
+        assertRanges(cp.missingRanges(), new long[]{30, 40});
+        cp.advance(20, 40, 10);
+        assertTrue(cp.missingRanges().isEmpty());
+    }
+
+    @Test
+    public void flushAndLoad() throws IOException {
+        File sidecar = new File(tmp.getRoot(), "f.bin.dl");
+        DownloadCheckpoint cp = new DownloadCheckpoint(sidecar, URL, "\"e1\"", 100);
+        cp.addCompleted(0, 30);
+        cp.addCompleted(60, 80);
+        cp.flush();
+        assertTrue(sidecar.isFile());
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.load(sidecar, URL);
+        assertNotNull(loaded);
+        assertEquals("\"e1\"", loaded.getValidator());
+        assertEquals(100, loaded.getTotalLength());
+        assertRanges(loaded.missingRanges(), new long[]{30, 60}, new long[]{80, 100});
+
+        assertTrue(loaded.matches(100, "\"e1\""));
+        assertFalse(loaded.matches(101, "\"e1\""));
+        assertFalse(loaded.matches(100, "\"e2\""));
+        // 为其它url记录的检查点不可用
+        assertNull(DownloadCheckpoint.load(sidecar, URL + "?v=2"));
+    }
+
+    @Test
+    public void checkpointWithoutValidatorNeverMatches() throws IOException {
+        File sidecar = new File(tmp.getRoot(), "f.bin.dl");
+        DownloadCheckpoint cp = new DownloadCheckpoint(sidecar, URL, null, 100);
+        cp.addCompleted(0, 30);
+        cp.flush();
+        DownloadCheckpoint loaded = DownloadCheckpoint.load(sidecar, URL);
+        assertNotNull(loaded);
+        assertFalse(loaded.matches(100, null));
+    }
+
+    @Test
+    public void loadRejectsMissingOrMalformedSidecar() throws IOException {
+        File sidecar = new File(tmp.getRoot(), "f.bin.dl");
+        assertNull(DownloadCheckpoint.load(sidecar, URL));
+
+        List<String> lines = new ArrayList<>();
+        lines.add("url=" + URL.replace(":", "\\:"));
+        lines.add("validator=\"e1\"");
+        lines.add("totalLength=100");
+        lines.add("ranges=0-30,90-120");
+        Files.write(sidecar.toPath(), lines, StandardCharsets.ISO_8859_1);
+        // 区间超出文件总长度
+        assertNull(DownloadCheckpoint.load(sidecar, URL));
+
+        lines.set(3, "ranges=0-abc");
+        Files.write(sidecar.toPath(), lines, StandardCharsets.ISO_8859_1);
+        assertNull(DownloadCheckpoint.load(sidecar, URL));
+
+        lines.set(3, "ranges=0-30");
+        Files.write(sidecar.toPath(), lines, StandardCharsets.ISO_8859_1);
+        assertNotNull(DownloadCheckpoint.load(sidecar, URL));
+    }
+
+    @Test
+    public void discardDeletesSidecarAndStopsFlushing() throws IOException {
+        File sidecar = new File(tmp.getRoot(), "f.bin.dl");
+        DownloadCheckpoint cp = new DownloadCheckpoint(sidecar, URL, "\"e1\"", 100);
+        cp.addCompleted(0, 30);
+        cp.flush();
+        cp.discard();
+        assertFalse(sidecar.exists());
+        cp.flush();
+        assertFalse(sidecar.exists());
+    }
+
+    @Test
+    public void advanceFlushesEveryInterval() {
+        File sidecar = new File(tmp.getRoot(), "f.bin.dl");
+        DownloadCheckpoint cp = new DownloadCheckpoint(sidecar, URL, "\"e1\"", 100);
+        cp.bind(null, Runnable::run, 50);
+        cp.advance(0, 40, 40);
+        assertFalse(sidecar.exists());
+        cp.advance(0, 60, 20);
+        assertTrue(sidecar.exists());
+        assertRanges(DownloadCheckpoint.load(sidecar, URL).missingRanges(), new long[]{60, 100});
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 取消下载任务时，进行中的连接应被立即关闭
+ *
+ * @author pf-miles
+ */
+public class DownloadClientCancelTest {
+    private static final int LEN = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private ServerSocket server;
+    // 服务端仍在发送数据的连接数
+    private final AtomicInteger open = new AtomicInteger();
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket s = server.accept();
+                    open.incrementAndGet();
+                    Thread t = new Thread(() -> serveSlowly(s));
+                    t.setDaemon(true);
+                    t.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        client = new DownloadClient(new DownloadProfile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    // 支持Range的慢速服务端，每100ms发送1KB，直到对端关闭连接
+    private void serveSlowly(Socket s) {
+        try (Socket sock = s) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            String range = null;
+            String line = in.readLine();
+            while ((line = in.readLine()) != null && !line.isEmpty())
+                if (line.toLowerCase().startsWith("range:"))
+                    range = line.substring(6).trim();
+            int start = 0;
+            int end = LEN - 1;
+            String head = "HTTP/1.1 200 OK\r\n";
+            if (range != null) {
+                String[] p = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(p[0]);
+                end = Math.min(end, Integer.parseInt(p[1]));
+                head = "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + end + "/" + LEN + "\r\n";
+            }
+            int len = end - start + 1;
+            OutputStream out = sock.getOutputStream();
+            out.write((head + "ETag: \"e1\"\r\nContent-Length: " + len + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            for (int i = 0; i < len; i += 1024) {
+                out.write(new byte[Math.min(1024, len - i)]);
+                out.flush();
+                Thread.sleep(100);
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            open.decrementAndGet();
+        }
+    }
+
+    private AsyncHttpClientDownloadParam param() throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl("http://127.0.0.1:" + server.getLocalPort() + "/f.bin");
+        p.setTargetFile(new File(tmp.getRoot(), "f.bin"));
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        return p;
+    }
+
+    private void assertCancelCloses(AsyncHttpClientDownloadParam p) throws InterruptedException {
+        CompletableFuture<AsyncHttpClientDownloadResult> cf = client.download(p);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (open.get() == 0 && end - System.nanoTime() > 0)
+            Thread.sleep(10);
+        assertTrue("Download should have connected.", open.get() > 0);
+        assertTrue(cf.cancel(true));
+
+        end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (open.get() > 0 && end - System.nanoTime() > 0)
+            Thread.sleep(10);
+        assertEquals("All connections should be closed after cancel.", 0, open.get());
+    }
+
+    @Test
+    public void cancelClosesConnection() throws Exception {
+        assertCancelCloses(param());
+    }
+
+    @Test
+    public void cancelClosesConnectionWithRetry() throws Exception {
+        AsyncHttpClientDownloadParam p = param();
+        p.setMaxRetry(3);
+        assertCancelCloses(p);
+    }
+
+    @Test
+    public void cancelClosesAllSegments() throws Exception {
+        AsyncHttpClientDownloadParam p = param();
+        p.setSegmentedOn(true);
+        p.setMinSegmentSize(256 * 1024);
+        assertCancelCloses(p);
+    }
+}
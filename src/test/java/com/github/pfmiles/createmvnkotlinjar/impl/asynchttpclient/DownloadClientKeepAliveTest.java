@@ -0,0 +1,138 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * keep-alive连接池模式的测试: 开启时对同一host的多次下载复用连接，关闭时每次下载新建连接
+ *
+ * @author pf-miles
+ */
+public class DownloadClientKeepAliveTest {
+    private static final int LEN = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = new byte[LEN];
+    private RangeHttpServer server;
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(19).nextBytes(content);
+        server = new RangeHttpServer(content);
+        server.keepAlive = true;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null)
+            client.shutdown();
+        server.close();
+    }
+
+    private static DownloadProfile profile(boolean keepAlive) {
+        AsyncHttpClientPoolConfig pc = new AsyncHttpClientPoolConfig();
+        pc.setKeepAlive(keepAlive);
+        pc.setMaxPerRoute(4);
+        pc.setMaxTotal(16);
+        DownloadProfile profile = new DownloadProfile();
+        profile.setPoolConfig(pc);
+        return profile;
+    }
+
+    private void downloadTimes(int times) throws Exception {
+        for (int i = 0; i < times; i++) {
+            AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+            p.setUrl(server.url());
+            p.setTargetFile(new File(tmp.getRoot(), "f" + i + ".bin"));
+            p.setHeaders(new ArrayList<>());
+            p.setMaxFileSize(100L << 20);
+            p.setTotalTimeout(60);
+            AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+            assertEquals(r.getErrMsg(), 0, r.getErrCode());
+            assertEquals(LEN, r.getFileSize());
+        }
+    }
+
+    @Test
+    public void keepAliveReusesTheConnection() throws Exception {
+        client = new DownloadClient(profile(true));
+        downloadTimes(3);
+        assertEquals(3, server.requests.get());
+        assertEquals(1, server.connections.get());
+
+        // 连接归还后留在池中空闲，以供下次下载复用
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.getPoolStats().getAvailable() != 1 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        PoolStats total = client.getPoolStats();
+        assertEquals(1, total.getAvailable());
+        assertEquals(0, total.getLeased());
+        assertEquals(16, total.getMax());
+        Map<String, PoolStats> routes = client.getRoutePoolStats();
+        assertEquals(1, routes.size());
+        assertEquals(4, routes.values().iterator().next().getMax());
+    }
+
+    @Test
+    public void connectionsAreNotReusedAfterKeepAliveTimeout() throws Exception {
+        DownloadProfile profile = profile(true);
+        profile.getPoolConfig().setKeepAliveTimeout(100);
+        client = new DownloadClient(profile);
+        downloadTimes(1);
+        // 超过keepAliveTimeout的空闲连接在租用时被丢弃，下次下载新建连接
+        Thread.sleep(300);
+        downloadTimes(1);
+        assertEquals(2, server.requests.get());
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void withoutKeepAliveEachDownloadOpensItsOwnConnection() throws Exception {
+        client = new DownloadClient(profile(false));
+        downloadTimes(3);
+        assertEquals(3, server.connections.get());
+        assertEquals(0, client.getPoolStats().getAvailable());
+    }
+
+    @Test
+    public void keepAliveNeedsPositiveEvictionSettings() {
+        DownloadProfile profile = profile(true);
+        profile.getPoolConfig().setEvictInterval(0);
+        try {
+            client = new DownloadClient(profile);
+            fail("evictInterval 0 should be rejected in keep-alive mode.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void poolLimitsMustBeConsistent() {
+        DownloadProfile profile = profile(false);
+        profile.getPoolConfig().setMaxTotal(2);
+        try {
+            client = new DownloadClient(profile);
+            fail("maxTotal < maxPerRoute should be rejected.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("maxPerRoute"));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.Backoff;
+import org.apache.http.ConnectionClosedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * maxRetry重试的测试: 暂时性错误按退避策略重试，连接中断后从已写入的位置以Range续传
+ *
+ * @author pf-miles
+ */
+public class DownloadClientRetryTest {
+    private static final int LEN = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = new byte[LEN];
+    private RangeHttpServer server;
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(23).nextBytes(content);
+        server = new RangeHttpServer(content);
+        client = new DownloadClient(new DownloadProfile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    private AsyncHttpClientDownloadParam param(int maxRetry) throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl(server.url());
+        p.setTargetFile(tmp.newFile());
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        p.setMaxRetry(maxRetry);
+        p.setRetryBackoff(Backoff.fixed(20));
+        return p;
+    }
+
+    @Test
+    public void retriesTransientErrorsUntilSuccess() throws Exception {
+        server.failNext.set(2);
+        AsyncHttpClientDownloadParam p = param(3);
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        assertEquals(3, server.requests.get());
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    @Test
+    public void givesUpAfterMaxRetry() throws Exception {
+        server.failNext.set(5);
+        AsyncHttpClientDownloadResult r = client.download(param(1)).get(30, TimeUnit.SECONDS);
+        assertEquals(22, r.getErrCode());
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void noRetryWhenBackoffExceedsTheRemainingBudget() throws Exception {
+        server.failNext.set(5);
+        AsyncHttpClientDownloadParam p = param(3);
+        p.setTotalTimeout(1);
+        p.setRetryBackoff(Backoff.fixed(2000));
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(22, r.getErrCode());
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void resumesFromTheWrittenOffsetAfterConnectionDrop() throws Exception {
+        server.dropNext.set(1);
+        server.dropAfter = 256 * 1024;
+        AsyncHttpClientDownloadParam p = param(2);
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        // 中断的请求、续传前校验validator的探测请求，及剩余部分的Range请求
+        assertEquals(3, server.requests.get());
+        // 重试只请求尚未写入的部分
+        String range = server.lastRange;
+        assertTrue("Range: " + range, range != null && range.startsWith("bytes="));
+        long resumedAt = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+        assertTrue("Resumed at: " + resumedAt, resumedAt > 0 && resumedAt <= 256 * 1024);
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    @Test
+    public void onlyTransientErrorsAreRetryable() {
+        assertTrue(DownloadClient.isRetryable(new HttpNot200Exception(503, "503")));
+        assertTrue(DownloadClient.isRetryable(new HttpNot200Exception(429, "429")));
+        assertTrue(DownloadClient.isRetryable(new ExecutionException(new ConnectException("refused"))));
+        assertTrue(DownloadClient.isRetryable(new ConnectionClosedException("closed")));
+        assertTrue(DownloadClient.isRetryable(new LowSpeedException("slow")));
+        assertFalse(DownloadClient.isRetryable(new HttpNot200Exception(404, "404")));
+        assertFalse(DownloadClient.isRetryable(new IllegalStateException("bug")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分段并行下载的内容正确性及服务端忽略Range时的回退测试
+ *
+ * @author pf-miles
+ */
+public class DownloadClientSegmentedTest {
+    private static final int LEN = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = new byte[LEN];
+    private RangeHttpServer server;
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        server = new RangeHttpServer(content);
+        client = new DownloadClient(new DownloadProfile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    private AsyncHttpClientDownloadParam param() throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl(server.url());
+        p.setTargetFile(new File(tmp.getRoot(), "f.bin"));
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        p.setSegmentedOn(true);
+        p.setMinSegmentSize(64 * 1024);
+        return p;
+    }
+
+    private void assertDownloaded(AsyncHttpClientDownloadParam p) throws Exception {
+        AsyncHttpClientDownloadResult result = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(result.getErrMsg(), 0, result.getErrCode());
+        assertEquals(LEN, result.getFileSize());
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    @Test
+    public void downloadsAllChunksIntoPlace() throws Exception {
+        assertDownloaded(param());
+        // 1个探测请求加上至少maxSegments * SegmentScheduler.CHUNKS_PER_CONNECTION个分块请求
+        assertTrue("Requests: " + server.requests.get(),
+                server.requests.get() >= 1 + 8 * SegmentScheduler.CHUNKS_PER_CONNECTION);
+        assertTrue(server.peakConcurrent.get() >= 2);
+    }
+
+    @Test
+    public void fallsBackToSingleConnectionWhenRangeIsIgnored() throws Exception {
+        server.acceptRanges = false;
+        assertDownloaded(param());
+        assertEquals(1, server.requests.get());
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 按DownloadProfile创建的独立DownloadClient，及以默认client工作的静态AsyncHttpClientDownloadUtil的测试
+ *
+ * @author pf-miles
+ */
+public class DownloadProfileTest {
+    private static final int LEN = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private RangeHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] content = new byte[LEN];
+        new Random(20).nextBytes(content);
+        server = new RangeHttpServer(content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        AsyncHttpClientDownloadUtil.shutdown();
+        server.close();
+    }
+
+    private AsyncHttpClientDownloadParam param() throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl(server.url());
+        p.setTargetFile(tmp.newFile());
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        return p;
+    }
+
+    private static void assertSuccess(AsyncHttpClientDownloadResult r) {
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        assertEquals(LEN, r.getFileSize());
+    }
+
+    private static DownloadProfile profile(String name, String userAgent) {
+        DownloadProfile profile = new DownloadProfile();
+        profile.setName(name);
+        profile.setUserAgent(userAgent);
+        return profile;
+    }
+
+    private static boolean threadExists(String name) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals(name));
+    }
+
+    @Test
+    public void clientsWithDifferentProfilesAreIndependent() throws Exception {
+        DownloadClient a = new DownloadClient(profile("profile-a", "agent-a"));
+        DownloadClient b = new DownloadClient(profile("profile-b", "agent-b"));
+        try {
+            assertTrue(threadExists("profile-a-io-reactor"));
+            assertTrue(threadExists("profile-b-io-reactor"));
+
+            assertSuccess(a.download(param()).get(30, TimeUnit.SECONDS));
+            assertEquals("agent-a", server.lastUserAgent);
+            assertSuccess(b.download(param()).get(30, TimeUnit.SECONDS));
+            assertEquals("agent-b", server.lastUserAgent);
+
+            // 下载参数中的userAgent优先于profile
+            AsyncHttpClientDownloadParam p = param();
+            p.setUserAgent("agent-param");
+            assertSuccess(a.download(p).get(30, TimeUnit.SECONDS));
+            assertEquals("agent-param", server.lastUserAgent);
+
+            // 关闭一个client不影响另一个
+            a.shutdown();
+            assertSuccess(b.download(param()).get(30, TimeUnit.SECONDS));
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+    }
+
+    @Test
+    public void illegalProfilesAreRejected() {
+        DownloadProfile blankName = profile(" ", "agent");
+        DownloadProfile noTimeout = profile("p", "agent");
+        noTimeout.setSocketTimeout(0);
+        DownloadProfile negativeSpeed = profile("p", "agent");
+        negativeSpeed.setMaxDownloadSpeed(-1);
+        for (DownloadProfile profile : new DownloadProfile[]{null, blankName, noTimeout, negativeSpeed}) {
+            try {
+                new DownloadClient(profile).shutdown();
+                fail("Profile should be rejected.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void staticFacadeCreatesItsDefaultClientOnFirstDownload() throws Exception {
+        assertNull(AsyncHttpClientDownloadUtil.getPoolStats());
+        assertTrue(AsyncHttpClientDownloadUtil.getRoutePoolStats().isEmpty());
+
+        // 未指定默认profile时按首次下载参数生成，totalTimeout不大于connectTimeout时超时被限制为至少1s而不是报错
+        AsyncHttpClientDownloadParam legacy = param();
+        legacy.setConnectTimeout(30);
+        legacy.setTotalTimeout(10);
+        legacy.setUserAgent("legacy-agent");
+        assertSuccess(AsyncHttpClientDownloadUtil.download(legacy).get(30, TimeUnit.SECONDS));
+        assertEquals("legacy-agent", server.lastUserAgent);
+        assertEquals(0, AsyncHttpClientDownloadUtil.getPoolStats().getLeased());
+
+        // 后续参数中client层面的配置与首次不同时被识别出来并警告，下载照常进行
+        AsyncHttpClientDownloadParam same = param();
+        same.setConnectTimeout(30);
+        same.setTotalTimeout(10);
+        same.setUserAgent("legacy-agent");
+        assertNull(AsyncHttpClientDownloadUtil.profileMismatch(same));
+        AsyncHttpClientDownloadParam later = param();
+        later.setConnectTimeout(5);
+        assertEquals("connectTimeout, totalTimeout, userAgent", AsyncHttpClientDownloadUtil.profileMismatch(later));
+        assertSuccess(AsyncHttpClientDownloadUtil.download(later).get(30, TimeUnit.SECONDS));
+
+        // 默认client创建之后不能再修改其配置
+        try {
+            AsyncHttpClientDownloadUtil.setDefaultProfile(profile("late", "late-agent"));
+            fail("Default profile should not be changed after the first download.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            AsyncHttpClientDownloadUtil.setPoolConfig(new AsyncHttpClientPoolConfig());
+            fail("Pool config should not be changed after the first download.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // shutdown之后重新创建默认client，此时可指定其profile
+        AsyncHttpClientDownloadUtil.shutdown();
+        assertNull(AsyncHttpClientDownloadUtil.getPoolStats());
+        AsyncHttpClientDownloadUtil.setDefaultProfile(profile("facade-profile", "profile-agent"));
+        assertSuccess(AsyncHttpClientDownloadUtil.download(param()).get(30, TimeUnit.SECONDS));
+        assertEquals("profile-agent", server.lastUserAgent);
+        assertTrue(threadExists("facade-profile-io-reactor"));
+        // 默认client的profile由setDefaultProfile指定时不做比较
+        assertNull(AsyncHttpClientDownloadUtil.profileMismatch(legacy));
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import com.github.pfmiles.createmvnkotlinjar.impl.TokenBucket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 下载限速的测试: 令牌桶的计费，单次下载(含分段下载各分段合计)及client全局的maxDownloadSpeed
+ *
+ * @author pf-miles
+ */
+public class DownloadThrottleTest {
+    private static final int LEN = 1024 * 1024;
+    // 限速2MB/s时下载LEN至少需要的时长(扣除桶容量即0.1秒的初始突发)，ms
+    private static final long MIN_MILLIS = 400;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = new byte[LEN];
+    private RangeHttpServer server;
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(24).nextBytes(content);
+        server = new RangeHttpServer(content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null)
+            client.shutdown();
+        server.close();
+    }
+
+    private AsyncHttpClientDownloadParam param(int maxDownloadSpeed) throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl(server.url());
+        p.setTargetFile(tmp.newFile());
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        p.setMaxDownloadSpeed(maxDownloadSpeed);
+        return p;
+    }
+
+    private void assertDownloaded(AsyncHttpClientDownloadParam p, AsyncHttpClientDownloadResult r) throws IOException {
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void tokenBucketAllowsBurstThenDebt() {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        assertEquals(100, bucket.available());
+        bucket.consume(300);
+        assertTrue(bucket.available() < 0);
+        // 欠账200个令牌，按每秒1000个补充
+        long wait = bucket.nanosUntil(1);
+        assertTrue("Wait: " + wait, wait > TimeUnit.MILLISECONDS.toNanos(150)
+                && wait <= TimeUnit.MILLISECONDS.toNanos(201));
+        assertNull(DownloadThrottle.bucketOf(0));
+        assertEquals(DownloadThrottle.QUANTUM, DownloadThrottle.bucketOf(1).getCapacity());
+        assertNull(DownloadThrottle.of(null, null));
+    }
+
+    @Test
+    public void perDownloadSpeedIsEnforced() throws Exception {
+        client = new DownloadClient(new DownloadProfile());
+        AsyncHttpClientDownloadParam p = param(2048);
+        long start = System.nanoTime();
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        long elapsed = millisSince(start);
+        assertDownloaded(p, r);
+        assertTrue("Elapsed: " + elapsed, elapsed >= MIN_MILLIS);
+    }
+
+    @Test
+    public void segmentsShareTheDownloadsSpeedLimit() throws Exception {
+        client = new DownloadClient(new DownloadProfile());
+        AsyncHttpClientDownloadParam p = param(2048);
+        p.setSegmentedOn(true);
+        p.setMinSegmentSize(64 * 1024);
+        long start = System.nanoTime();
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        long elapsed = millisSince(start);
+        assertDownloaded(p, r);
+        assertTrue(server.peakConcurrent.get() > 1);
+        assertTrue("Elapsed: " + elapsed, elapsed >= MIN_MILLIS);
+    }
+
+    @Test
+    public void clientWideSpeedIsSharedByAllDownloads() throws Exception {
+        DownloadProfile profile = new DownloadProfile();
+        profile.setMaxDownloadSpeed(2048);
+        client = new DownloadClient(profile);
+        AsyncHttpClientDownloadParam a = param(0);
+        AsyncHttpClientDownloadParam b = param(0);
+        long start = System.nanoTime();
+        CompletableFuture<AsyncHttpClientDownloadResult> ra = client.download(a);
+        CompletableFuture<AsyncHttpClientDownloadResult> rb = client.download(b);
+        assertDownloaded(a, ra.get(30, TimeUnit.SECONDS));
+        assertDownloaded(b, rb.get(30, TimeUnit.SECONDS));
+        long elapsed = millisSince(start);
+        // 两个下载合计2*LEN，共享2MB/s
+        assertTrue("Elapsed: " + elapsed, elapsed >= 2 * MIN_MILLIS);
+    }
+}
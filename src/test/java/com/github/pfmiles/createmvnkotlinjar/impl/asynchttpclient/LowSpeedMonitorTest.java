@@ -0,0 +1,110 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 低速检测的测试: 滑动窗口内速度低于lowSpeedWaterline时放弃下载，因限速暂停的时长不计入速度统计
+ *
+ * @author pf-miles
+ */
+public class LowSpeedMonitorTest {
+    private static final int LEN = 512 * 1024;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = new byte[LEN];
+    private RangeHttpServer server;
+    private DownloadClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(25).nextBytes(content);
+        server = new RangeHttpServer(content);
+        client = new DownloadClient(new DownloadProfile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    private AsyncHttpClientDownloadParam param(long waterline) throws IOException {
+        AsyncHttpClientDownloadParam p = new AsyncHttpClientDownloadParam();
+        p.setUrl(server.url());
+        p.setTargetFile(tmp.newFile());
+        p.setHeaders(new ArrayList<>());
+        p.setMaxFileSize(100L << 20);
+        p.setTotalTimeout(60);
+        p.setLowSpeedLimitOn(true);
+        p.setLowSpeedWaterline(waterline);
+        p.setLowSpeedTimeLimit(1);
+        return p;
+    }
+
+    @Test
+    public void slowDownloadIsAborted() throws Exception {
+        server.bytesPerSecond = 8 * 1024;
+        long start = System.nanoTime();
+        AsyncHttpClientDownloadResult r = client.download(param(64 * 1024)).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), -4, r.getErrCode());
+        // 以1秒的窗口检测，无需等到整个文件以低速传完
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void slowSegmentedDownloadIsAborted() throws Exception {
+        server.bytesPerSecond = 4 * 1024;
+        AsyncHttpClientDownloadParam p = param(64 * 1024);
+        p.setSegmentedOn(true);
+        p.setMinSegmentSize(64 * 1024);
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), -4, r.getErrCode());
+    }
+
+    @Test
+    public void downloadAboveTheWaterlineCompletes() throws Exception {
+        server.bytesPerSecond = 256 * 1024;
+        AsyncHttpClientDownloadParam p = param(32 * 1024);
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    @Test
+    public void throttlePausesAreNotCountedAsLowSpeed() throws Exception {
+        // 限速128KB/s远低于低速水位线512KB/s，但暂停读取的时长不计入速度统计
+        AsyncHttpClientDownloadParam p = param(512 * 1024);
+        p.setMaxDownloadSpeed(128);
+        AsyncHttpClientDownloadResult r = client.download(p).get(30, TimeUnit.SECONDS);
+        assertEquals(r.getErrMsg(), 0, r.getErrCode());
+        assertArrayEquals(content, Files.readAllBytes(p.getTargetFile().toPath()));
+    }
+
+    @Test
+    public void lowSpeedSettingsMustBePositive() throws Exception {
+        AsyncHttpClientDownloadParam p = param(0);
+        try {
+            client.download(p);
+            fail("lowSpeedWaterline 0 should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 租用方取消后才建立完成的连接应被关闭并归还，而不是作为空闲连接留在池中
+ *
+ * @author pf-miles
+ */
+public class OrphanDiscardingConnectionManagerTest {
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("127.0.0.1", 80));
+
+    // 被包装的连接管理器收到的调用，按发生顺序记录
+    private final List<String> calls = new ArrayList<>();
+    private FutureCallback<NHttpClientConnection> leaseCallback;
+    private OrphanDiscardingConnectionManager manager;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        NHttpClientConnectionManager delegate = (NHttpClientConnectionManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{NHttpClientConnectionManager.class}, (proxy, method, args) -> {
+                    calls.add(method.getName());
+                    if (method.getName().equals("requestConnection"))
+                        leaseCallback = (FutureCallback<NHttpClientConnection>) args[5];
+                    return null;
+                });
+        manager = new OrphanDiscardingConnectionManager(delegate);
+    }
+
+    private NHttpClientConnection connection() {
+        return (NHttpClientConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{NHttpClientConnection.class}, (proxy, method, args) -> {
+                    calls.add("conn." + method.getName());
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                });
+    }
+
+    @Test
+    public void connectionIsHandedOverWhenNotCancelled() throws Exception {
+        Future<NHttpClientConnection> f = manager.requestConnection(ROUTE, null, 1000, 1000, TimeUnit.MILLISECONDS,
+                null);
+        NHttpClientConnection conn = connection();
+        leaseCallback.completed(conn);
+        assertSame(conn, f.get(1, TimeUnit.SECONDS));
+        assertFalse(calls.contains("conn.shutdown"));
+        assertFalse(calls.contains("releaseConnection"));
+    }
+
+    @Test
+    public void connectionEstablishedAfterCancelIsClosedAndReleased() {
+        Future<NHttpClientConnection> f = manager.requestConnection(ROUTE, null, 1000, 1000, TimeUnit.MILLISECONDS,
+                null);
+        assertTrue(f.cancel(true));
+        // 取消不传递给内部的租用请求，否则随后建立的连接将被当作空闲连接放回池中
+        assertEquals(1, calls.size());
+        leaseCallback.completed(connection());
+        assertEquals("conn.shutdown", calls.get(1));
+        assertEquals("releaseConnection", calls.get(2));
+    }
+
+    @Test
+    public void failureAndCancellationOfTheLeaseArePropagated() {
+        Future<NHttpClientConnection> failed = manager.requestConnection(ROUTE, null, 1000, 1000,
+                TimeUnit.MILLISECONDS, null);
+        leaseCallback.failed(new RuntimeException("connect refused"));
+        assertTrue(failed.isDone() && !failed.isCancelled());
+        Future<NHttpClientConnection> cancelled = manager.requestConnection(ROUTE, null, 1000, 1000,
+                TimeUnit.MILLISECONDS, null);
+        leaseCallback.cancelled();
+        assertTrue(cancelled.isCancelled());
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的本地http服务端: 以给定内容响应GET请求，支持"Range: bytes=a-b"及keep-alive，可限制每个连接的发送速度，并可注入5xx响应及连接中断
+ *
+ * @author pf-miles
+ */
+class RangeHttpServer implements Closeable {
+    private static final int WRITE_STEP = 8 * 1024;
+
+    private final byte[] content;
+    private final ServerSocket server;
+
+    // 是否支持Range，为false时总是返回完整的200响应
+    volatile boolean acceptRanges = true;
+    // 是否保持连接以处理同一连接上的后续请求，为false时每个响应后关闭连接
+    volatile boolean keepAlive;
+    // 每个连接的发送速度上限, bytes/s，0表示不限制
+    volatile int bytesPerSecond;
+    // 接下来的多少个请求直接以503响应
+    final AtomicInteger failNext = new AtomicInteger();
+    // 接下来的多少个请求在发送dropAfter个body bytes后中断连接
+    final AtomicInteger dropNext = new AtomicInteger();
+    volatile int dropAfter;
+
+    // 收到的请求数、建立过的连接数、当前及曾达到的最大并发连接数
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger peakConcurrent = new AtomicInteger();
+    // 最近一个请求的User-Agent及Range
+    volatile String lastUserAgent;
+    volatile String lastRange;
+
+    RangeHttpServer(byte[] content) throws IOException {
+        this.content = content;
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket s = server.accept();
+                    connections.incrementAndGet();
+                    Thread t = new Thread(() -> serve(s));
+                    t.setDaemon(true);
+                    t.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/f.bin";
+    }
+
+    private void serve(Socket s) {
+        int now = concurrent.incrementAndGet();
+        peakConcurrent.accumulateAndGet(now, Math::max);
+        try (Socket sock = s) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            OutputStream out = sock.getOutputStream();
+            while (respond(in, out)) {
+                // 继续处理同一连接上的下一个请求
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    // 处理一个请求，返回是否保持连接
+    private boolean respond(BufferedReader in, OutputStream out) throws IOException, InterruptedException {
+        String range = null;
+        String line = in.readLine();
+        if (line == null)
+            return false;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            if (line.toLowerCase().startsWith("range:"))
+                range = line.substring(6).trim();
+            else if (line.toLowerCase().startsWith("user-agent:"))
+                lastUserAgent = line.substring(11).trim();
+        }
+        lastRange = range;
+        requests.incrementAndGet();
+        if (failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            out.write("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            return false;
+        }
+        int start = 0;
+        int end = content.length - 1;
+        String head = "HTTP/1.1 200 OK\r\n";
+        if (range != null && acceptRanges) {
+            String[] p = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(p[0]);
+            end = Math.min(end, Integer.parseInt(p[1]));
+            head = "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + end + "/"
+                    + content.length + "\r\n";
+        }
+        int len = end - start + 1;
+        boolean keep = keepAlive;
+        out.write((head + "ETag: \"e1\"\r\nContent-Length: " + len + "\r\nConnection: "
+                + (keep ? "keep-alive" : "close") + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        int limit = dropNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? Math.min(len, dropAfter) : len;
+        long begin = System.nanoTime();
+        for (int i = 0; i < limit; i += WRITE_STEP) {
+            int n = Math.min(WRITE_STEP, limit - i);
+            out.write(content, start + i, n);
+            out.flush();
+            int rate = bytesPerSecond;
+            if (rate > 0) {
+                long due = begin + (i + n) * 1_000_000_000L / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+        }
+        out.flush();
+        return keep && limit == len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
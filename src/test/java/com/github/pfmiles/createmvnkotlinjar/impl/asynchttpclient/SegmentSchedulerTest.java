@@ -0,0 +1,122 @@
+package com.github.pfmiles.createmvnkotlinjar.impl.asynchttpclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SegmentScheduler的分块及自适应并发连接数测试
+ *
+ * @author pf-miles
+ */
+public class SegmentSchedulerTest {
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4);
+    // 模拟固定的总带宽: 同一时刻只传输一个分块，并发的分块排队等待
+    private final ExecutorService link = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+        link.shutdownNow();
+    }
+
+    // 模拟一个分块下载: 各连接互不影响，耗时固定为millis
+    private CompletableFuture<?> independent(long millis) {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        timer.schedule(() -> f.complete(null), millis, TimeUnit.MILLISECONDS);
+        return f;
+    }
+
+    // 模拟一个分块下载: 各连接共享带宽，传输本身耗时millis，并发越多排队越久
+    private CompletableFuture<?> shared(long millis) {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        link.execute(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            f.complete(null);
+        });
+        return f;
+    }
+
+    @Test
+    public void chunkSizeSplitsIntoSeveralChunksPerConnection() {
+        assertEquals(1000, SegmentScheduler.chunkSizeOf(32_000, 10, 8));
+        // 不小于最小分块大小
+        assertEquals(5000, SegmentScheduler.chunkSizeOf(32_000, 5000, 8));
+    }
+
+    @Test
+    public void coversEveryRangeExactlyOnce() throws Exception {
+        List<long[]> fetched = Collections.synchronizedList(new ArrayList<>());
+        SegmentScheduler scheduler = new SegmentScheduler(Arrays.asList(new long[]{0, 25}, new long[]{40, 50}), 10,
+                3, chunk -> {
+            fetched.add(chunk);
+            return CompletableFuture.completedFuture(null);
+        });
+        scheduler.start(2).get(5, TimeUnit.SECONDS);
+        assertEquals(4, scheduler.getChunkCount());
+        fetched.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[][] expected = {{0, 10}, {10, 20}, {20, 25}, {40, 50}};
+        assertEquals(expected.length, fetched.size());
+        for (int i = 0; i < expected.length; i++)
+            assertTrue(Arrays.equals(expected[i], fetched.get(i)));
+    }
+
+    @Test
+    public void growsConnectionsWhileThroughputScales() throws Exception {
+        SegmentScheduler scheduler = new SegmentScheduler(Collections.singletonList(new long[]{0, 64}), 1, 8,
+                chunk -> independent(20));
+        scheduler.start(2).get(10, TimeUnit.SECONDS);
+        assertEquals(8, scheduler.getPeakConnections());
+    }
+
+    @Test
+    public void stopsGrowingWhenBandwidthIsShared() throws Exception {
+        SegmentScheduler scheduler = new SegmentScheduler(Collections.singletonList(new long[]{0, 64}), 1, 8,
+                chunk -> shared(20));
+        // 预先启动模拟链路的线程，避免其启动耗时计入第一轮的吞吐
+        shared(0).get(5, TimeUnit.SECONDS);
+        scheduler.start(2).get(10, TimeUnit.SECONDS);
+        assertTrue("Peak connections: " + scheduler.getPeakConnections(), scheduler.getPeakConnections() < 8);
+    }
+
+    @Test
+    public void failsOnFirstErrorAndCancelsTheRest() throws Exception {
+        List<CompletableFuture<?>> started = Collections.synchronizedList(new ArrayList<>());
+        SegmentScheduler scheduler = new SegmentScheduler(Collections.singletonList(new long[]{0, 8}), 1, 4,
+                chunk -> {
+                    CompletableFuture<Void> f = new CompletableFuture<>();
+                    started.add(f);
+                    return f;
+                });
+        CompletableFuture<Void> ret = scheduler.start(2);
+        assertEquals(2, started.size());
+        started.get(0).completeExceptionally(new IOException("boom"));
+        try {
+            ret.get(5, TimeUnit.SECONDS);
+            fail("Scheduler should have failed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(started.get(1).isCancelled());
+        assertEquals(2, started.size());
+    }
+}